@@ -0,0 +1,91 @@
+package com.fivesoft.umap.benchmark;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.formats.JSONLinesFormat;
+import com.fivesoft.umap.template.MapTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reads a JSON Lines file with {@link JSONLinesFormat#readParallel(Path, MapTemplate,
+ * com.fivesoft.umap.format.FormatReader.Options)} in fork-join pools of growing parallelism.<br>
+ * Sequential reading of the same file with {@link MapTemplate#readAll(InputStream, com.fivesoft.umap.format.Format)}
+ * is the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelLinesBenchmark {
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("name", String.class)
+            .addRequired("score", Double.class)
+            .addRequired("active", Boolean.class)
+            .addRequired("text", String.class)
+            .build();
+
+    @Param({"500000"})
+    public int lines;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private Path file;
+
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("{\"id\":").append(i)
+                    .append(",\"name\":\"user ").append(i).append('"')
+                    .append(",\"score\":").append(i * 0.25)
+                    .append(",\"active\":").append(i % 2 == 0)
+                    .append(",\"text\":\"").append("Lorem ipsum dolor sit amet, \\\"consectetur\\\" ".repeat(1 + i % 3))
+                    .append("\"}\n");
+        }
+        file = Files.createTempFile("umap-bench", ".jsonl");
+        Files.writeString(file, sb, StandardCharsets.UTF_8);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public long readParallel() {
+        //Tasks of the stream run in the pool, which submits the terminal operation
+        return pool.submit(() -> {
+            try (Stream<UMap> maps = new JSONLinesFormat().readParallel(file, TEMPLATE, null)) {
+                return maps.mapToLong(m -> m.<Long>getRequired("id")).sum();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).join();
+    }
+
+    @Benchmark
+    public long readSequential() throws IOException {
+        try (InputStream in = Files.newInputStream(file); Stream<UMap> maps = TEMPLATE.readAll(in, new JSONLinesFormat())) {
+            return maps.mapToLong(m -> m.<Long>getRequired("id")).sum();
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.fivesoft.umap.benchmark;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.formats.JSONFormat;
+import com.fivesoft.umap.template.ArrayTemplate;
+import com.fivesoft.umap.template.MapTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads an array of maps, where 8 of 10 keys of every entry are not present in the template.<br>
+ * Compares skipping unknown keys with reading the same document with a template of all keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnknownKeysBenchmark {
+
+    private static final MapTemplate META = new MapTemplate.Builder()
+            .addRequired("created", Long.class)
+            .addRequired("note", String.class)
+            .build();
+
+    //Two keys of ten
+    private static final ArrayTemplate KNOWN = new ArrayTemplate(new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("name", String.class)
+            .build());
+
+    private static final ArrayTemplate ALL = new ArrayTemplate(new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("name", String.class)
+            .addRequired("email", String.class)
+            .addRequired("city", String.class)
+            .addRequired("score", Double.class)
+            .addRequired("active", Boolean.class)
+            .addRequired("visits", Long.class)
+            .addRequired("bio", String.class)
+            .addArray("tags", 0, false, new MapTemplate.Builder().addRequired("v", String.class).build())
+            .addRequired("meta", META)
+            .build());
+
+    @Param({"10000"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean structuralIndex;
+
+    private byte[] json;
+
+    private FormatReader.Options skipping;
+
+    private FormatReader.Options strict;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                    .append(",\"email\":\"user").append(i).append("@example.com\"")
+                    .append(",\"city\":\"City \\\"").append(i % 97).append("\\\"\"")
+                    .append(",\"score\":").append(i * 0.37)
+                    .append(",\"name\":\"User ").append(i).append('"')
+                    .append(",\"active\":").append(i % 3 == 0)
+                    .append(",\"visits\":").append(i * 31L)
+                    .append(",\"bio\":\"").append("Lorem ipsum {dolor} [sit] amet. ".repeat(4)).append('"')
+                    .append(",\"tags\":[{\"v\":\"a\"},{\"v\":\"b]\"},{\"v\":\"c\"}]")
+                    .append(",\"meta\":{\"created\":").append(1_700_000_000L + i).append(",\"note\":\"}\"}")
+                    .append('}');
+        }
+        json = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        skipping = new JSONFormat.ReaderOptions(true, structuralIndex);
+        strict = new JSONFormat.ReaderOptions(false, structuralIndex);
+    }
+
+    @Benchmark
+    public UArray skipUnknownKeys() throws FormatException {
+        return KNOWN.readFormat(json, new JSONFormat(), skipping);
+    }
+
+    @Benchmark
+    public UArray readAllKeys() throws FormatException {
+        return ALL.readFormat(json, new JSONFormat(), strict);
+    }
+
+}
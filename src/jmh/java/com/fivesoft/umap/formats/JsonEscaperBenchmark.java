@@ -0,0 +1,131 @@
+package com.fivesoft.umap.formats;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JsonEscaper} with the per-char escaping it replaced,
+ * for text without special characters, text with a few of them and text made mostly of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonEscaperBenchmark {
+
+    @Param({"plain", "mixed", "special"})
+    public String text;
+
+    @Param({"16", "1024"})
+    public int length;
+
+    private String value;
+
+    private final Writer out = new NullWriter();
+
+    @Setup
+    public void setup() {
+        String pattern = switch (text) {
+            case "plain" -> "Lorem ipsum dolor sit amet, za\u017c\u00f3\u0142\u0107 ";
+            case "mixed" -> "path/to \"file\"\n";
+            default -> "\"\\/\n\t\u0001";
+        };
+        value = pattern.repeat(length / pattern.length() + 1).substring(0, length);
+    }
+
+    @Benchmark
+    public Writer escaper() throws IOException {
+        out.write('"');
+        JsonEscaper.write(out, value);
+        out.write('"');
+        return out;
+    }
+
+    @Benchmark
+    public Writer encodeString() throws IOException {
+        out.write('"' + encodeString(value) + '"');
+        return out;
+    }
+
+    /**
+     * Escaping of the JSON writer, before it was replaced by {@link JsonEscaper}.
+     */
+    private static String encodeString(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0, length = s.length(); i < length; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append('\\').append(c);
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Discards the output, but reads it, so the writes are not optimized away.
+     */
+    private static final class NullWriter extends Writer {
+
+        private int sum;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                sum += cbuf[i];
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                sum += str.charAt(i);
+            }
+        }
+
+        @Override
+        public void write(int c) {
+            sum += c;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.fivesoft.umap.data;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A string value, which is decoded from its source only when it is accessed for the first time.<br>
+ * Format readers may set it in {@link UMap.Builder} for fields of <code>String</code> type,
+ * to avoid decoding values which are never read. The map decodes it transparently
+ * in {@link UMap#getRequired(String)} and {@link UMap#getOptional(String)}.<br>
+ * When the field has a validator, the value is decoded immediately, while setting it.
+ */
+public abstract class LazyString {
+
+    private volatile String value;
+
+    /**
+     * Decodes the string from its source. Called at most once, unless called concurrently.
+     * @return the decoded string
+     */
+    @NotNull
+    protected abstract String decode();
+
+    /**
+     * Gets the decoded string, decoding it on the first call.
+     * @return the decoded string
+     */
+    @NotNull
+    @Override
+    public final String toString() {
+        String v = value;
+        if (v == null) {
+            value = v = decode();
+        }
+        return v;
+    }
+
+}
@@ -90,7 +90,7 @@ public abstract class UMap extends UObject<MapTemplate>
         if (obj == null) return true;
         if (!isSupportedType(obj.getClass())) return false;
         if (obj instanceof Double && !Double.isFinite((double) obj)) return false;
-        return !(obj instanceof Float) || !(Float.isFinite((float) obj));
+        return !(obj instanceof Float) || Float.isFinite((float) obj);
     }
 
     /**
@@ -119,13 +119,26 @@ public abstract class UMap extends UObject<MapTemplate>
     }
 
     /**
-     * Checks whether the given key exists in this UMap.
+     * Gets the maximum detail level of the keys included in this UMap.<br>
+     * Maps read or built with a limited detail level don't hold values of keys above it.
+     * Such keys are not returned by the iterator and they are skipped, when the map is formatted.
+     *
+     * @return maximum detail level of the keys in this UMap, {@link Integer#MAX_VALUE} if it's not limited
+     */
+    public int getMaxDetailLevel() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether the given key exists in this UMap.<br>
+     * Keys above the maximum detail level of the map (see {@link #getMaxDetailLevel()}) don't exist in it.
      *
      * @param key The key to check.
      * @return Whether the key exists.
      */
     public boolean containsKey(@NotNull String key) {
-        return getTemplate().containsKey(key);
+        Mapping m = getTemplate().get(key);
+        return m != null && m.getDetailLevel() <= getMaxDetailLevel();
     }
 
     /**
@@ -147,6 +160,11 @@ public abstract class UMap extends UObject<MapTemplate>
 
         private final boolean ignoreDuplicateKeys;
 
+        /**
+         * Maximum detail level of required keys, which must be set to build the map.
+         */
+        private final int maxDetailLevel;
+
         /**
          * Creates UMap builder based on the given template.
          *
@@ -154,16 +172,33 @@ public abstract class UMap extends UObject<MapTemplate>
          * @param ignoreUnknownKeys   Whether to ignore unknown keys while building the map.<br>
          *                            When disabled, an exception will be thrown if an unknown key is encountered.
          * @param ignoreDuplicateKeys Whether to ignore duplicate keys while building the map.<br>
+         * @param maxDetailLevel      Maximum detail level of the keys to include in the map.<br>
+         *                            Required keys above this level may be left unset.
          * @throws NullPointerException If the template is null.
          */
         public Builder(@NotNull MapTemplate template,
-                       boolean ignoreUnknownKeys, boolean ignoreDuplicateKeys) {
+                       boolean ignoreUnknownKeys, boolean ignoreDuplicateKeys, int maxDetailLevel) {
             super(template);
             this.ignoreUnknownKeys = ignoreUnknownKeys;
             this.ignoreDuplicateKeys = ignoreDuplicateKeys;
+            this.maxDetailLevel = maxDetailLevel;
             this.missingKeys = new LinkedHashSet<>(template.getMappings().keySet());
         }
 
+        /**
+         * Creates UMap builder based on the given template, including keys of all detail levels.
+         *
+         * @param template            The template to use.
+         * @param ignoreUnknownKeys   Whether to ignore unknown keys while building the map.<br>
+         *                            When disabled, an exception will be thrown if an unknown key is encountered.
+         * @param ignoreDuplicateKeys Whether to ignore duplicate keys while building the map.<br>
+         * @throws NullPointerException If the template is null.
+         */
+        public Builder(@NotNull MapTemplate template,
+                       boolean ignoreUnknownKeys, boolean ignoreDuplicateKeys) {
+            this(template, ignoreUnknownKeys, ignoreDuplicateKeys, Integer.MAX_VALUE);
+        }
+
         /**
          * Creates UMap builder based on the given template. Ignore duplicate keys are disabled by default.
          *
@@ -197,7 +232,7 @@ public abstract class UMap extends UObject<MapTemplate>
          * @throws FieldException If any field error occurs.
          */
         public Builder set(@NotNull String key, @Nullable Object value) throws FieldException {
-            if (!isSupportedObject(value) && !(value instanceof UObject.Builder<?>))
+            if (!isSupportedObject(value) && !(value instanceof UObject.Builder<?>) && !(value instanceof LazyString))
                 throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, key, value);
 
             Mapping m = template.get(key);
@@ -207,6 +242,18 @@ public abstract class UMap extends UObject<MapTemplate>
             }
             Template t = m.getTemplate();
 
+            if (value instanceof LazyString ls) {
+                //Keep the string encoded, unless it has to be parsed or validated right away
+                if (t instanceof PrimitiveTemplate pt && pt.getType() == String.class && pt.getValidator() == null) {
+                    missingKeys.remove(key);
+                    if (data.put(key, ls) != null && !ignoreDuplicateKeys) {
+                        throw new FieldException(FieldException.Reason.DUPLICATED_KEY, key);
+                    }
+                    return this;
+                }
+                value = ls.toString();
+            }
+
             if (value == null) {
                 if (!m.isOptional()) //Nulls only allowed for optional fields
                     throw new FieldException(FieldException.Reason.MISSING_VALUE, key);
@@ -235,6 +282,24 @@ public abstract class UMap extends UObject<MapTemplate>
             return this;
         }
 
+        /**
+         * Marks the given key as omitted, since its detail level exceeds the max detail level of this builder.<br>
+         * Omitted keys are no longer returned by {@link #nextKey()}.
+         *
+         * @param key The key to omit.
+         * @return This builder for chaining.
+         * @throws IllegalArgumentException If there is no such key or its detail level does not exceed the max detail level.
+         */
+        public Builder omit(@NotNull String key) throws IllegalArgumentException {
+            Mapping m = template.get(key);
+            if (m == null)
+                throw new IllegalArgumentException("No such key: " + key);
+            if (m.getDetailLevel() <= maxDetailLevel)
+                throw new IllegalArgumentException("Key does not exceed max detail level: " + key);
+            missingKeys.remove(key);
+            return this;
+        }
+
         /**
          * Builds the UMap with the given data.<br>
          * If any required fields specified in the template are not present, an exception will be thrown.
@@ -256,10 +321,10 @@ public abstract class UMap extends UObject<MapTemplate>
                 Mapping e = template.get(key);
                 if (e == null)
                     throw new RuntimeException("Internal error: missing key in template. Please report this issue.");
-                if (!e.isOptional() && !data.containsKey(key))
+                if (!e.isOptional() && e.getDetailLevel() <= maxDetailLevel && !data.containsKey(key))
                     throw new FieldException(FieldException.Reason.MISSING_KEY, key);
             }
-            return new LinkedUMapImpl(template, data);
+            return new LinkedUMapImpl(template, data, maxDetailLevel);
         }
 
         /**
@@ -275,11 +340,14 @@ public abstract class UMap extends UObject<MapTemplate>
 
     private static class LinkedUMapImpl extends UMap {
         private final Map<String, Object> data;
+        private final int maxDetailLevel;
 
         private LinkedUMapImpl(@NotNull MapTemplate template,
-                               LinkedHashMap<String, Object> src) { //LinkedHashMap preserves order of keys IMPORTANT!!!
+                               LinkedHashMap<String, Object> src, //LinkedHashMap preserves order of keys IMPORTANT!!!
+                               int maxDetailLevel) {
             super(template);
             this.data = Collections.unmodifiableMap(src);
+            this.maxDetailLevel = maxDetailLevel;
         }
 
         /**
@@ -293,10 +361,12 @@ public abstract class UMap extends UObject<MapTemplate>
             if (m.isOptional())
                 throw new IllegalArgumentException("Key is optional: " + key);
             Object o = data.get(key);
+            if (o == null && m.getDetailLevel() > maxDetailLevel)
+                throw new IllegalArgumentException("Key exceeds detail level of the map: " + key);
             if (o == null) //Should not happen, null checks are done in the builder
                 throw new RuntimeException("Internal error: null value for non-optional key. Please report this issue.");
             //noinspection unchecked
-            return (T) o;
+            return (T) resolve(o);
         }
 
         /**
@@ -309,7 +379,15 @@ public abstract class UMap extends UObject<MapTemplate>
             if (!m.isOptional()) throw new IllegalArgumentException("Key is not optional: " + key);
             Object o = data.get(key);
             //noinspection unchecked
-            return (T) (o == null ? m.getDefaultValue() : o);
+            return (T) (o == null ? m.getDefaultValue() : resolve(o));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMaxDetailLevel() {
+            return maxDetailLevel;
         }
 
         /**
@@ -325,7 +403,27 @@ public abstract class UMap extends UObject<MapTemplate>
         @NotNull
         @Override
         public Iterator<Map.Entry<String, Object>> iterator() {
-            return data.entrySet().iterator();
+            Iterator<Map.Entry<String, Object>> it = data.entrySet().iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Map.Entry<String, Object> next() {
+                    Map.Entry<String, Object> e = it.next();
+                    return e.getValue() instanceof LazyString ls ?
+                            new AbstractMap.SimpleImmutableEntry<>(e.getKey(), ls.toString()) : e;
+                }
+            };
+        }
+
+        /**
+         * Decodes the value if it's a {@link LazyString}.
+         */
+        private static Object resolve(Object o) {
+            return o instanceof LazyString ls ? ls.toString() : o;
         }
 
     }
@@ -1,6 +1,8 @@
 package com.fivesoft.umap.data;
 
 import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.format.ByteBufferOutputStream;
+import com.fivesoft.umap.format.ChannelOutputStream;
 import com.fivesoft.umap.format.FormatException;
 import com.fivesoft.umap.format.Format;
 import com.fivesoft.umap.format.FormatWriter;
@@ -11,6 +13,10 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Objects;
 
 public abstract class UObject<T extends Template> {
@@ -52,7 +58,8 @@ public abstract class UObject<T extends Template> {
      * @param out The output stream to write to
      * @param options The options to use, may be null to use default options
      * @param format The format to use
-     * @param detailLevel maximum detail level of the field to include it in the output
+     * @param detailLevel maximum detail level of the field to include it in the output.
+     *                    Maps are written only up to their own maximum detail level, see {@link UMap#getMaxDetailLevel()}
      * @throws IOException If an I/O error occurs while writing to the output stream
      * @throws FormatException If the object cannot be formatted
      */
@@ -65,6 +72,52 @@ public abstract class UObject<T extends Template> {
         writer.flush();
     }
 
+    /**
+     * Writes representation of this object to the specified channel using the specified format.<br>
+     * The output is collected in pooled direct buffers, which are written to the channel in large gathering writes,
+     * without copying them through heap arrays. The channel must be in blocking mode and it's not closed.
+     * @param channel The channel to write to
+     * @param options The options to use, may be null to use default options
+     * @param format The format to use
+     * @param detailLevel maximum detail level of the field to include it in the output
+     * @throws IOException If an I/O error occurs while writing to the channel
+     * @throws FormatException If the object cannot be formatted
+     * @throws java.nio.channels.IllegalBlockingModeException If the channel is in non-blocking mode
+     */
+    public void format(@NotNull WritableByteChannel channel,
+                       @Nullable FormatWriter.Options options,
+                       @NotNull Format format, int detailLevel) throws IOException, FormatException {
+        try (ChannelOutputStream out = new ChannelOutputStream(channel)) {
+            format(out, options, format, detailLevel);
+        }
+    }
+
+    /**
+     * Writes representation of this object into the specified buffer using the specified format.<br>
+     * The representation is written at the current position of the buffer, which is then advanced.
+     * If it doesn't fit, the position is restored and {@link BufferOverflowException} is thrown.
+     * @param buffer The buffer to write to
+     * @param options The options to use, may be null to use default options
+     * @param format The format to use
+     * @param detailLevel maximum detail level of the field to include it in the output
+     * @throws FormatException If the object cannot be formatted
+     * @throws BufferOverflowException If there's not enough space remaining in the buffer
+     */
+    public void format(@NotNull ByteBuffer buffer,
+                       @Nullable FormatWriter.Options options,
+                       @NotNull Format format, int detailLevel) throws FormatException {
+        int position = buffer.position();
+        try {
+            format(new ByteBufferOutputStream(buffer), options, format, detailLevel);
+        } catch (BufferOverflowException e) {
+            buffer.position(position);
+            throw e;
+        } catch (IOException e) {
+            //Writing to a buffer doesn't throw I/O exceptions
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public static abstract class Builder<T extends Template> {
 
         protected final T template;
@@ -0,0 +1,41 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * An output stream writing bytes directly into a byte buffer, starting at its position.<br>
+ * The buffer doesn't grow. Writing more bytes than remaining in the buffer
+ * throws {@link java.nio.BufferOverflowException}.
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferOutputStream(@NotNull ByteBuffer buffer) {
+        this.buffer = Objects.requireNonNull(buffer);
+    }
+
+    /**
+     * Gets the buffer this stream writes to.
+     * @return the buffer
+     */
+    @NotNull
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public void write(int b) {
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) {
+        buffer.put(b, off, len);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * A {@link ByteArrayInputStream} exposing its backing array.<br>
+ * Readers may use it to scan the data in place instead of copying it through {@link #read(byte[], int, int)}.
+ */
+public class BytesInputStream extends ByteArrayInputStream {
+
+    //Whether the backing array is never modified by anyone else
+    private final boolean owned;
+
+    public BytesInputStream(byte @NotNull [] buf) {
+        this(buf, 0, buf.length, false);
+    }
+
+    public BytesInputStream(byte @NotNull [] buf, int offset, int length) {
+        this(buf, offset, length, false);
+    }
+
+    /**
+     * Creates a stream reading the given range of the array.
+     * @param buf    the backing array
+     * @param offset index of the first byte to read
+     * @param length maximum number of bytes to read
+     * @param owned  whether the array is owned by the stream, so it's never modified after the stream is created.
+     *               Readers may then keep references to it in the values they read, instead of copying them.
+     */
+    public BytesInputStream(byte @NotNull [] buf, int offset, int length, boolean owned) {
+        super(buf, offset, length);
+        this.owned = owned;
+    }
+
+    /**
+     * Checks whether the backing array is owned by this stream.<br>
+     * Arrays passed by the caller are not, since the caller may reuse them after the values are read.
+     * @return whether values read from this stream may refer to the backing array
+     */
+    public boolean isOwned() {
+        return owned;
+    }
+
+    /**
+     * Gets the array backing this stream. The array is not copied, so it must not be modified.
+     * @return the backing array
+     */
+    public byte @NotNull [] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Gets the index of the next byte to read from the backing array.
+     * @return the current position in the backing array
+     */
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Gets the index one greater than the last readable byte in the backing array.
+     * @return the end of readable data in the backing array
+     */
+    public int getLimit() {
+        return count;
+    }
+
+    /**
+     * Moves the position of this stream, after the data has been consumed directly from the backing array.
+     * @param position new position, between 0 and {@link #getLimit()}
+     * @throws IllegalArgumentException if the position is out of range
+     */
+    public void seek(int position) {
+        if (position < 0 || position > count) {
+            throw new IllegalArgumentException("Position out of range: " + position);
+        }
+        pos = position;
+    }
+
+}
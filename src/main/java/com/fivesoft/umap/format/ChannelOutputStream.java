@@ -0,0 +1,156 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * An output stream collecting bytes in direct byte buffers, which are written to a channel,
+ * when all of them are full or the stream is flushed.<br>
+ * Full buffers are written at once by {@link GatheringByteChannel#write(ByteBuffer[], int, int)},
+ * if the channel supports it. Direct buffers are written by the channel without copying them again,
+ * and they are taken from a shared pool, so they are allocated only once.<br>
+ * Closing this stream returns its buffers to the pool, but it doesn't close the channel.
+ * This class is not thread-safe.
+ */
+public final class ChannelOutputStream extends OutputStream {
+
+    static final int BUFFER_SIZE = 65536;
+    //Maximum number of buffers written by a single gathering write
+    static final int MAX_BUFFERS = 16;
+
+    //Free buffers shared by all streams
+    private static final ArrayBlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(64);
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer[] buffers = new ByteBuffer[MAX_BUFFERS];
+    //Number of buffers taken from the pool
+    private int allocated;
+    //Index of the buffer being filled
+    private int index = -1;
+    private boolean closed;
+
+    /**
+     * Creates a new stream writing to the given channel.
+     * @param channel the channel to write to
+     * @throws IllegalBlockingModeException if the channel is in non-blocking mode
+     */
+    public ChannelOutputStream(@NotNull WritableByteChannel channel) {
+        this.channel = Objects.requireNonNull(channel);
+        if (channel instanceof SelectableChannel sc && !sc.isBlocking()) {
+            throw new IllegalBlockingModeException();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ByteBuffer buf = index >= 0 ? buffers[index] : null;
+        if (buf == null || !buf.hasRemaining()) {
+            buf = nextBuffer();
+        }
+        buf.put((byte) b);
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ByteBuffer buf = index >= 0 ? buffers[index] : null;
+        while (len > 0) {
+            if (buf == null || !buf.hasRemaining()) {
+                buf = nextBuffer();
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes all collected bytes to the channel.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        if (index < 0) {
+            return;
+        }
+        for (int i = 0; i <= index; i++) {
+            buffers[i].flip();
+        }
+        if (channel instanceof GatheringByteChannel gc) {
+            int first = 0;
+            while (first <= index) {
+                gc.write(buffers, first, index + 1 - first);
+                while (first <= index && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        } else {
+            for (int i = 0; i <= index; i++) {
+                while (buffers[i].hasRemaining()) {
+                    channel.write(buffers[i]);
+                }
+            }
+        }
+        for (int i = 0; i <= index; i++) {
+            buffers[i].clear();
+        }
+        index = 0;
+    }
+
+    /**
+     * Flushes the stream and returns its buffers to the pool. The channel is not closed.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            for (int i = 0; i < allocated; i++) {
+                buffers[i].clear();
+                POOL.offer(buffers[i]);
+                buffers[i] = null;
+            }
+            allocated = 0;
+            index = -1;
+        }
+    }
+
+    /**
+     * Moves to the next empty buffer. When all buffers are full, they are written to the channel first.
+     */
+    private ByteBuffer nextBuffer() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        if (index + 1 < allocated) {
+            return buffers[++index];
+        }
+        if (allocated == MAX_BUFFERS) {
+            flush();
+            return buffers[0];
+        }
+        ByteBuffer buf = POOL.poll();
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buffers[allocated] = buf;
+        index = allocated++;
+        return buf;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * An input stream of already decoded characters.<br>
+ * {@link TextFormatReader} reads the characters directly, through a {@link CharSequenceReader},
+ * without encoding them to bytes and decoding them back.
+ * Other readers read bytes of the characters, encoded with the default charset, when the stream is first read.
+ */
+public class CharSequenceInputStream extends InputStream {
+
+    @NotNull
+    private final CharSequence chars;
+    //Encoded only if the stream is read as bytes
+    private InputStream bytes;
+
+    public CharSequenceInputStream(@NotNull CharSequence chars) {
+        this.chars = Objects.requireNonNull(chars);
+    }
+
+    /**
+     * Gets the characters of this stream.
+     * @return the characters
+     */
+    @NotNull
+    public CharSequence getChars() {
+        return chars;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return getBytes().read();
+    }
+
+    @Override
+    public int read(byte @NotNull [] b, int off, int len) throws IOException {
+        return getBytes().read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return getBytes().available();
+    }
+
+    @NotNull
+    private InputStream getBytes() {
+        if (bytes == null) {
+            bytes = new ByteArrayInputStream(chars.toString().getBytes());
+        }
+        return bytes;
+    }
+
+}
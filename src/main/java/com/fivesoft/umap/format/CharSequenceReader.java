@@ -0,0 +1,84 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Reader;
+import java.util.Objects;
+
+/**
+ * A reader of a {@link CharSequence}, which accesses the characters by index.<br>
+ * Text format readers may use {@link #getChars()} and {@link #getPosition()} to scan the characters in place.
+ * This class is not thread-safe.
+ */
+public class CharSequenceReader extends Reader {
+
+    @NotNull
+    private final CharSequence chars;
+    private int pos;
+
+    public CharSequenceReader(@NotNull CharSequence chars) {
+        this.chars = Objects.requireNonNull(chars);
+    }
+
+    /**
+     * Gets the characters read by this reader.
+     * @return the characters
+     */
+    @NotNull
+    public CharSequence getChars() {
+        return chars;
+    }
+
+    /**
+     * Gets the index of the next character to read.
+     * @return the current position
+     */
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Moves the position of this reader, after the characters have been consumed directly.
+     * @param position new position, between 0 and the length of the characters
+     * @throws IllegalArgumentException if the position is out of range
+     */
+    public void seek(int position) {
+        if (position < 0 || position > chars.length()) {
+            throw new IllegalArgumentException("Position out of range: " + position);
+        }
+        pos = position;
+    }
+
+    @Override
+    public int read() {
+        return pos < chars.length() ? chars.charAt(pos++) : -1;
+    }
+
+    @Override
+    public int read(char @NotNull [] cbuf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        int n = Math.min(len, chars.length() - pos);
+        if (n <= 0) {
+            return len == 0 ? 0 : -1;
+        }
+        if (chars instanceof String s) {
+            s.getChars(pos, pos + n, cbuf, off);
+        } else {
+            for (int i = 0; i < n; i++) {
+                cbuf[off + i] = chars.charAt(pos + i);
+            }
+        }
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
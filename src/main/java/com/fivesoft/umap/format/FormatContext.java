@@ -1,12 +1,20 @@
 package com.fivesoft.umap.format;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class FormatContext {
 
+    /**
+     * Number of int slots available at every depth (see {@link #getDepthInt(int)}).
+     */
+    public static final int DEPTH_SLOTS = 2;
+
     private final Map<String, Object> extras = new HashMap<>();
     private int depth;
+    //Int slots of all depths, DEPTH_SLOTS per depth
+    private int[] depthInts = new int[DEPTH_SLOTS * 8];
 
     public void putExtra(String key, Object value) {
         extras.put(key, value);
@@ -21,6 +29,41 @@ public class FormatContext {
         return (T) extras.get(key);
     }
 
+    /**
+     * Gets an int stored for the current depth in the given slot.<br>
+     * Unlike extras, slots take no allocations or hash lookups, so readers and writers may use them
+     * to keep state of every value, for example a position in the array being read.
+     * Slots are 0, until set, and they're not cleared, when the depth changes,
+     * so a slot should be reset, when the value using it ends.
+     * @param slot the slot, from 0 (inclusive) to {@link #DEPTH_SLOTS} (exclusive)
+     * @return the stored value or 0, if it was not set
+     */
+    public int getDepthInt(int slot) {
+        int i = depthIndex(slot);
+        return i < depthInts.length ? depthInts[i] : 0;
+    }
+
+    /**
+     * Stores an int for the current depth in the given slot.
+     * @param slot  the slot, from 0 (inclusive) to {@link #DEPTH_SLOTS} (exclusive)
+     * @param value the value to store
+     * @see #getDepthInt(int)
+     */
+    public void setDepthInt(int slot, int value) {
+        int i = depthIndex(slot);
+        if(i >= depthInts.length){
+            depthInts = Arrays.copyOf(depthInts, Math.max(depthInts.length * 2, i + DEPTH_SLOTS));
+        }
+        depthInts[i] = value;
+    }
+
+    private int depthIndex(int slot) {
+        if(slot < 0 || slot >= DEPTH_SLOTS || depth < 0){
+            throw new IndexOutOfBoundsException("Slot " + slot + " at depth " + depth);
+        }
+        return depth * DEPTH_SLOTS + slot;
+    }
+
     public int getDepth() {
         return depth;
     }
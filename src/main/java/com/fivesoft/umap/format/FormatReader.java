@@ -1,5 +1,6 @@
 package com.fivesoft.umap.format;
 
+import com.fivesoft.umap.data.LazyString;
 import com.fivesoft.umap.data.UArray;
 import com.fivesoft.umap.data.UMap;
 import com.fivesoft.umap.exception.FieldException;
@@ -10,6 +11,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 public abstract class FormatReader implements AutoCloseable {
@@ -26,13 +30,29 @@ public abstract class FormatReader implements AutoCloseable {
      */
     public abstract void readRootStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException;
 
+    /**
+     * Reads the start of the root array from the input stream.<br>
+     * Called instead of {@link #readRootStart(InputStream, ReaderContext)}, when the root object is an array.
+     * Entries of the array are then read with {@link #nextValueToken(InputStream, ReaderContext, String, Class, boolean, boolean)}.<br>
+     * Default implementation calls {@link #readRootStart(InputStream, ReaderContext)},
+     * which is enough for formats, which do not mark the start of the root object.
+     *
+     * @param in      the input stream to read from
+     * @param context for the current reading operation.
+     * @throws IOException     if an I/O error occurs while reading from the input stream
+     * @throws FormatException if the root array start token cannot be read since it is not in the expected format
+     */
+    public void readRootArrayStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
+        readRootStart(in, context);
+    }
+
     /**
      * Advances the input stream to the next key token and returns it.<br>
      *
      * @param in          the input stream to read from
      * @param context     for the current reading operation. Implementation may use this to access options,
      *                    other data and store and retrieve custom temporary extras.
-     * @param expectedKey the key that is expected to be read next.
+     * @param expectedKey the key that is expected to be read next or null, when all keys of the template are already read.
      *                    Typically used by formats, which does not store exact
      *                    key names and relies on templates. (for example, binary formats)
      * @return the key read from the input stream or null, when there are no more keys to read
@@ -41,13 +61,35 @@ public abstract class FormatReader implements AutoCloseable {
      */
     @Nullable
     public abstract String nextKeyToken(@NotNull InputStream in, @NotNull ReaderContext context,
-                                        @NotNull String expectedKey) throws IOException, FormatException;
+                                        @Nullable String expectedKey) throws IOException, FormatException;
+
+    /**
+     * Skips the value of a key returned by {@link #nextKeyToken(InputStream, ReaderContext, String)}.<br>
+     * Called for keys, which are not present in the template (when {@link Options#ignoreUnknownKeys} is enabled),
+     * and for keys above {@link Options#maxDetailLevel}.<br>
+     * Nested maps and arrays are skipped entirely. Implementations should not create tokens or decode strings
+     * of the skipped value, since it's going to be discarded anyway.<br>
+     * Default implementation throws {@link FormatException}.
+     *
+     * @param in      the input stream to read from
+     * @param context for the current reading operation.
+     * @param mapping mapping of the skipped key or null, when the key is not present in the template.
+     *                Formats relying on templates may use it to find the size of the value.
+     * @return true if the skipped value was the last one in the enclosing map
+     * @throws IOException     if an I/O error occurs while reading from the input stream
+     * @throws FormatException if the value cannot be skipped since it is not in the expected format
+     */
+    public boolean skipValue(@NotNull InputStream in, @NotNull ReaderContext context,
+                             @Nullable Mapping mapping) throws IOException, FormatException {
+        throw new FormatException("Skipping values is not supported by format reader: " + getClass().getName());
+    }
 
     /**
      * Advances the input stream to the next value token and returns it.<br>
      * The returned token may be a value token, or a special token indicating the start of a map or array.<br>
      * When returning token with value, it must be a {@link PrimitiveTemplate} value, NOT complex UMap object like {@link UMap} or {@link UArray}.<br>
      * The returned value may have a type different from the expected type, but it must be convertible to it.<br>
+     * String values may be returned as {@link LazyString}, to decode them only when they are accessed.<br>
      * For example:
      * <ul>
      *     <li>When expectedType is <code>Integer.class</code> returned value may be <code>(int) 5</code>, but also can be <code>(String) "5"</code> or (double) 5.0</li>
@@ -91,6 +133,36 @@ public abstract class FormatReader implements AutoCloseable {
      */
     public abstract void readRootEnd(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException;
 
+    /**
+     * Checks whether the input stream contains another root object, after the previously read one.<br>
+     * Used to read sequences of root objects (for example, JSON Lines) one at a time, with the same reader.
+     * Implementations should only consume separators between root objects (for example, whitespace),
+     * and keep the data they have already buffered for the next reading operation.<br>
+     * Default implementation throws {@link FormatException}.
+     *
+     * @param in the input stream to read from
+     * @return true if another root object can be read, false at the end of the input stream
+     * @throws IOException     if an I/O error occurs while reading from the input stream
+     * @throws FormatException if the format does not support sequences of root objects
+     */
+    public boolean hasNextRoot(@NotNull InputStream in) throws IOException, FormatException {
+        throw new FormatException("Reading sequences is not supported by format reader: " + getClass().getName());
+    }
+
+
+    /**
+     * Creates a framer, which finds ends of root maps of the given template in incrementally received bytes.
+     * Required by {@link PushReader}.<br>
+     * Default implementation throws {@link FormatException}.
+     *
+     * @param template the template of root maps
+     * @return a new framer
+     * @throws FormatException if the format does not support push reading
+     */
+    @NotNull
+    public RootFramer createRootFramer(@NotNull MapTemplate template) throws FormatException {
+        throw new FormatException("Push reading is not supported by format reader: " + getClass().getName());
+    }
 
     @NotNull
     public static UMap readFormat(@NotNull InputStream in,
@@ -104,6 +176,68 @@ public abstract class FormatReader implements AutoCloseable {
         return readFormat(in, reader, template, new ReaderContext(options), true);
     }
 
+    @NotNull
+    public static UArray readArray(@NotNull InputStream in,
+                                   @NotNull FormatReader reader,
+                                   @NotNull ArrayTemplate template,
+                                   @NotNull Options options) throws IOException, FormatException {
+        Objects.requireNonNull(in, "Input stream cannot be null");
+        Objects.requireNonNull(reader, "Format reader cannot be null");
+        Objects.requireNonNull(template, "Template cannot be null");
+        Objects.requireNonNull(options, "Options cannot be null");
+        return readArray(in, reader, template, new ReaderContext(options), true);
+    }
+
+    /**
+     * Lazily reads entries of the root array from the input stream.<br>
+     * Every entry is returned by the iterator as soon as it's read, without building the whole {@link UArray}.
+     * This way, only the currently read entry is held in memory, regardless of the array length.<br>
+     * Since the iterator cannot throw checked exceptions, {@link IOException} is wrapped
+     * in {@link UncheckedIOException} and {@link FormatException} in {@link UncheckedFormatException}.
+     *
+     * @param in       the input stream to read from
+     * @param reader   the reader
+     * @param template the template of the root array
+     * @param options  the reading options
+     * @return iterator over entries of the array
+     */
+    @NotNull
+    public static Iterator<Object> readEntries(@NotNull InputStream in,
+                                               @NotNull FormatReader reader,
+                                               @NotNull ArrayTemplate template,
+                                               @NotNull Options options) {
+        Objects.requireNonNull(in, "Input stream cannot be null");
+        Objects.requireNonNull(reader, "Format reader cannot be null");
+        Objects.requireNonNull(template, "Template cannot be null");
+        Objects.requireNonNull(options, "Options cannot be null");
+        return new EntryIterator(in, reader, template, new ReaderContext(options));
+    }
+
+    /**
+     * Lazily reads a sequence of root maps from the input stream, for example, records of a JSON Lines file.<br>
+     * Maps are read one at a time, when requested by the returned iterator, with the same reader.
+     * This way, only the currently read map is held in memory, and reader buffers are reused between maps.<br>
+     * Since the iterator cannot throw checked exceptions, {@link IOException} is wrapped
+     * in {@link UncheckedIOException} and {@link FormatException} in {@link UncheckedFormatException}.
+     *
+     * @param in       the input stream to read from
+     * @param reader   the reader, which supports {@link #hasNextRoot(InputStream)}
+     * @param template the template of every map in the sequence
+     * @param options  the reading options
+     * @return iterator over maps of the sequence
+     */
+    @NotNull
+    public static Iterator<UMap> readSequence(@NotNull InputStream in,
+                                              @NotNull FormatReader reader,
+                                              @NotNull MapTemplate template,
+                                              @NotNull Options options) {
+        Objects.requireNonNull(in, "Input stream cannot be null");
+        Objects.requireNonNull(reader, "Format reader cannot be null");
+        Objects.requireNonNull(template, "Template cannot be null");
+        Objects.requireNonNull(options, "Options cannot be null");
+        return new SequenceIterator(in, reader, template, options);
+    }
+
     @NotNull
     private static UMap readFormat(@NotNull InputStream in,
                                    @NotNull FormatReader reader,
@@ -115,21 +249,34 @@ public abstract class FormatReader implements AutoCloseable {
             reader.readRootStart(in, context);
         }
         context.incrementDepth();
+        context.setCurrentTemplate(template);
         int minDepth = context.getDepth();
 
-        UMap.Builder b = new UMap.Builder(template);
-        String expectedKey;
+        Options options = context.getOptions();
+        UMap.Builder b = new UMap.Builder(template, false, false, options.maxDetailLevel);
+        boolean ignoreUnknownKeys = options.ignoreUnknownKeys;
         String currentKey;
         Mapping m;
         Template t;
-        while ((expectedKey = b.nextKey()) != null &&
-                (currentKey = reader.nextKeyToken(in, context, expectedKey)) != null) {
-            System.out.println("currentKey: " + currentKey);
+        //Read keys until the reader reports the end of the map
+        while ((currentKey = reader.nextKeyToken(in, context, b.nextKey())) != null) {
             m = template.get(currentKey);
-            //Make sure mapping exists, if not it seems to be an internal UMap error
             if (m == null) {
-                throw new RuntimeException("Internal error: Mapping not found for key: " +
-                        currentKey + ". Please report this bug.");
+                if (!ignoreUnknownKeys) {
+                    throw new FieldException(FieldException.Reason.UNKNOWN_KEY, currentKey);
+                }
+                if (reader.skipValue(in, context, null)) {
+                    break;
+                }
+                continue;
+            }
+            if (m.getDetailLevel() > options.maxDetailLevel) {
+                //Skip value without parsing it
+                b.omit(currentKey);
+                if (reader.skipValue(in, context, m)) {
+                    break;
+                }
+                continue;
             }
             t = m.getTemplate();
 
@@ -137,15 +284,15 @@ public abstract class FormatReader implements AutoCloseable {
             ValueToken token = reader.nextValueToken(in, context, currentKey,
                     getExpectedValueType(m.getTemplate()), m.isOptional(), false);
 
-            System.out.println("currentValueToken: " + token);
-
             if(token == null)
-                return b.build();
+                break;
 
             if (token.isMap()) {
                 //Read a nested map
                 if (t instanceof MapTemplate mt) {
                     b.set(currentKey, readFormat(in, reader, mt, context, false));
+                    //Restore current template, changed by the nested map
+                    context.setCurrentTemplate(template);
                 } else {
                     throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, currentKey);
                 }
@@ -153,6 +300,21 @@ public abstract class FormatReader implements AutoCloseable {
                 //Read a nested array
                 if (t instanceof ArrayTemplate at) {
                     b.set(currentKey, readArray(in, reader, at, context, false));
+                    context.setCurrentTemplate(template);
+                } else {
+                    throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, currentKey);
+                }
+            } else if (token.isPrimitive()) {
+                //Read primitive value held in a primitive slot of the token
+                if (t instanceof PrimitiveTemplate pt) {
+                    b.set(currentKey, primitiveValue(token, pt, currentKey));
+                } else {
+                    throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, currentKey);
+                }
+            } else if (token.value instanceof LazyString ls) {
+                //Builder keeps the string encoded, when possible
+                if (t instanceof PrimitiveTemplate) {
+                    b.set(currentKey, ls);
                 } else {
                     throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, currentKey);
                 }
@@ -174,7 +336,7 @@ public abstract class FormatReader implements AutoCloseable {
                         "' returned by format: " + reader.getClass());
             }
             if (context.getDepth() < minDepth || token.isLast)
-                return b.build();
+                break;
         }
         context.decrementDepth();
 
@@ -191,7 +353,7 @@ public abstract class FormatReader implements AutoCloseable {
                                     boolean isRoot) throws IOException, FormatException {
 
         if (isRoot) {
-            reader.readRootStart(in, context);
+            reader.readRootArrayStart(in, context);
         }
         context.incrementDepth();
         int minDepth = context.getDepth();
@@ -204,33 +366,10 @@ public abstract class FormatReader implements AutoCloseable {
         while ((ct = reader.nextValueToken(in, context, null, getExpectedValueType(et),
                 false, //UMap does not support null array values
                 true)) != null) {
-            System.out.println("currentValueToken arr: " + ct);
-            if (ct.isMap()) {
-                if(et instanceof MapTemplate mt) {
-                    b.add(readFormat(in, reader, mt, context, false));
-                } else {
-                    throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
-                }
-            } else if (ct.isArray()) {
-                if (et instanceof ArrayTemplate at) {
-                    b.add(readArray(in, reader, at, context, false));
-                } else {
-                    throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
-                }
-            } else if (ct.value == null) {
-                throw new FieldException(FieldException.Reason.INVALID_VALUE, "#" + i, "null entry in array");
-            } else if (UMap.isSupportedObject(ct.value)) {
-                if(et instanceof PrimitiveTemplate pt) {
-                    b.add(pt.parseValue(ct.value, "#" + i));
-                } else {
-                    throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
-                }
-            } else {
-                throw new FormatImplException("Unsupported value token: '" + ct +
-                        "' returned by format: " + reader.getClass());
-            }
+            b.add(readEntry(in, reader, et, context, ct, i));
             if (context.getDepth() < minDepth || ct.isLast)
-                return b.build();
+                break;
+            i++;
         }
 
         context.decrementDepth();
@@ -240,6 +379,94 @@ public abstract class FormatReader implements AutoCloseable {
         return b.build();
     }
 
+    /**
+     * Reads an array entry, which starts with the given token.
+     */
+    @NotNull
+    private static Object readEntry(@NotNull InputStream in,
+                                    FormatReader reader,
+                                    Template et,
+                                    ReaderContext context,
+                                    ValueToken ct,
+                                    int i) throws IOException, FormatException {
+        if (ct.isMap()) {
+            if(et instanceof MapTemplate mt) {
+                return readFormat(in, reader, mt, context, false);
+            } else {
+                throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
+            }
+        } else if (ct.isArray()) {
+            if (et instanceof ArrayTemplate at) {
+                return readArray(in, reader, at, context, false);
+            } else {
+                throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
+            }
+        } else if (ct.isPrimitive()) {
+            if(et instanceof PrimitiveTemplate pt) {
+                return primitiveValue(ct, pt, "#" + i);
+            } else {
+                throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
+            }
+        } else if (ct.value instanceof LazyString ls) {
+            if(et instanceof PrimitiveTemplate pt) {
+                return pt.parseValue(ls.toString(), "#" + i);
+            } else {
+                throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
+            }
+        } else if (ct.value == null) {
+            throw new FieldException(FieldException.Reason.INVALID_VALUE, "#" + i, "null entry in array");
+        } else if (UMap.isSupportedObject(ct.value)) {
+            if(et instanceof PrimitiveTemplate pt) {
+                return pt.parseValue(ct.value, "#" + i);
+            } else {
+                throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, "#" + i);
+            }
+        } else {
+            throw new FormatImplException("Unsupported value token: '" + ct +
+                    "' returned by format: " + reader.getClass());
+        }
+    }
+
+
+    /**
+     * Gets a value of the token held in a primitive slot as an object of the template type.<br>
+     * When the token already has the template type, the value is boxed directly.
+     * Otherwise, the value is coerced the same way as a string value read from the input.
+     */
+    private static Object primitiveValue(ValueToken token, PrimitiveTemplate template, String key) {
+        Class<?> type = template.getType();
+        switch (token.getType()) {
+            case ValueToken.TYPE_LONG:
+                long l = token.longValue;
+                if (type == Long.class) {
+                    return l;
+                } else if (type == Integer.class) {
+                    if (l == (int) l) return (int) l;
+                } else if (type == Short.class) {
+                    if (l == (short) l) return (short) l;
+                } else if (type == Byte.class) {
+                    if (l == (byte) l) return (byte) l;
+                } else if (type == Double.class) {
+                    return (double) l;
+                } else if (type == Float.class) {
+                    return (float) l;
+                }
+                break;
+            case ValueToken.TYPE_DOUBLE:
+                if (type == Double.class) {
+                    return token.doubleValue;
+                } else if (type == Float.class) {
+                    return (float) token.doubleValue;
+                }
+                break;
+            case ValueToken.TYPE_BOOLEAN:
+                if (type == Boolean.class) {
+                    return token.booleanValue;
+                }
+                break;
+        }
+        return template.parseValue(String.valueOf(token.getValue()), key);
+    }
 
     private static Class<?> getExpectedValueType(Template t) {
         if (t instanceof PrimitiveTemplate pt) {
@@ -259,10 +486,20 @@ public abstract class FormatReader implements AutoCloseable {
         @NotNull
         public final String encoding;
         public final boolean ignoreUnknownKeys;
+        /**
+         * Maximum detail level of the fields to read. Values of fields above this level are skipped,
+         * and the fields are left unset in the resulting map, even if they are required.
+         */
+        public final int maxDetailLevel;
 
-        public Options(@NotNull String encoding, boolean ignoreUnknownKeys) {
+        public Options(@NotNull String encoding, boolean ignoreUnknownKeys, int maxDetailLevel) {
             this.encoding = Objects.requireNonNull(encoding);
             this.ignoreUnknownKeys = ignoreUnknownKeys;
+            this.maxDetailLevel = maxDetailLevel;
+        }
+
+        public Options(@NotNull String encoding, boolean ignoreUnknownKeys) {
+            this(encoding, ignoreUnknownKeys, Integer.MAX_VALUE);
         }
 
         public Options(boolean ignoreUnknownKeys) {
@@ -279,6 +516,129 @@ public abstract class FormatReader implements AutoCloseable {
 
     }
 
+    private static final class SequenceIterator implements Iterator<UMap> {
+
+        private final InputStream in;
+        private final FormatReader reader;
+        private final MapTemplate template;
+        private final Options options;
+        //Result of the last hasNextRoot() call, null if the next map has to be checked again
+        private Boolean hasNext;
+
+        private SequenceIterator(InputStream in, FormatReader reader, MapTemplate template, Options options) {
+            this.in = in;
+            this.reader = reader;
+            this.template = template;
+            this.options = options;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    hasNext = reader.hasNextRoot(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (FormatException e) {
+                    throw new UncheckedFormatException(e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public UMap next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            try {
+                //Every map gets a fresh context, so nothing is carried over from the previous one
+                return readFormat(in, reader, template, new ReaderContext(options), true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (FormatException e) {
+                throw new UncheckedFormatException(e);
+            }
+        }
+
+    }
+
+    private static final class EntryIterator implements Iterator<Object> {
+
+        private final InputStream in;
+        private final FormatReader reader;
+        private final Template entryTemplate;
+        private final ReaderContext context;
+        private final Class<?> entryType;
+        private int minDepth = -1;
+        private int index;
+        //Token of the next entry, already read by hasNext()
+        private ValueToken next;
+        private boolean finished;
+
+        private EntryIterator(InputStream in, FormatReader reader, ArrayTemplate template, ReaderContext context) {
+            this.in = in;
+            this.reader = reader;
+            this.entryTemplate = template.getEntryTemplate();
+            this.context = context;
+            this.entryType = getExpectedValueType(entryTemplate);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            try {
+                if (minDepth < 0) {
+                    reader.readRootArrayStart(in, context);
+                    context.incrementDepth();
+                    minDepth = context.getDepth();
+                }
+                next = reader.nextValueToken(in, context, null, entryType, false, true);
+                if (next == null) {
+                    finish();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (FormatException e) {
+                throw new UncheckedFormatException(e);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ValueToken ct = next;
+            next = null;
+            try {
+                Object entry = readEntry(in, reader, entryTemplate, context, ct, index++);
+                if (context.getDepth() < minDepth || ct.isLast) {
+                    finish();
+                }
+                return entry;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (FormatException e) {
+                throw new UncheckedFormatException(e);
+            }
+        }
+
+        private void finish() throws IOException, FormatException {
+            finished = true;
+            context.decrementDepth();
+            reader.readRootEnd(in, context);
+        }
+
+    }
+
     public static final class MapStart {
         private MapStart() {
         }
@@ -80,7 +80,30 @@ public abstract class FormatWriter implements AutoCloseable {
 
     public abstract void flush() throws IOException;
 
+    /**
+     * Checks if the length passed to {@link #writeArrayStart(OutputStream, WriterContext, int)} is written to the output.
+     * If so, arrays can be written by {@link SequenceWriter} only when their length is known in advance.
+     * @return true, if the format needs the length of arrays before their entries
+     */
+    public boolean requiresArrayLength() {
+        return false;
+    }
+
 
+    /**
+     * Writes the given object using the given writer.<br>
+     * Mappings above the detail level are skipped. A map is also written only up to its own maximum
+     * detail level (see {@link UMap#getMaxDetailLevel()}), since it holds no values above it.
+     * So a map read with a limited detail level can be written with any greater one.
+     * @param object      the object to write
+     * @param writer      the writer to use
+     * @param context     the context of the writing operation
+     * @param out         the output stream to write to
+     * @param detailLevel maximum detail level of the mappings to write
+     * @param isRoot      whether the object is the root object
+     * @throws IOException     if an I/O error occurs while writing to the output stream
+     * @throws FormatException if the object cannot be formatted
+     */
     public static void format(@NotNull UObject<?> object,
                               @NotNull FormatWriter writer,
                               @NotNull WriterContext context,
@@ -96,10 +119,11 @@ public abstract class FormatWriter implements AutoCloseable {
             UMap map = (UMap) object;
             int mkl = mt.getMaxKeyLength();
             context.setMaxKeyLength(mkl);
+            context.setCurrentTemplate(mt);
 
             writer.writeMapStart(out, context);
             context.incrementDepth();
-            Iterator<Mapping> it = mt.limitDetailLevel(detailLevel).iterator();
+            Iterator<Mapping> it = mt.limitDetailLevel(Math.min(detailLevel, map.getMaxDetailLevel())).iterator();
 
             int i = 0; //Index of the current mapping
             while(it.hasNext()){
@@ -110,13 +134,15 @@ public abstract class FormatWriter implements AutoCloseable {
                 @Nullable Object value = optional ? map.getOptional(keyName) : map.getRequired(keyName);
                 boolean valueAssigned = value != null;
                 //Write mapping prefix (typically a key name)
+                context.setCurrentMapping(m);
                 writer.writeMappingPrefix(out, context, keyName, m.isOptional(), valueAssigned, i, last);
                 //Write actual value
                 if(value instanceof UObject<?> uo){
                     //Complex value
                     format(uo, writer, context, out, detailLevel, false);
-                    //Restore max key length, may possibly be changed by nested mappings
+                    //Restore max key length and template, may possibly be changed by nested mappings
                     context.setMaxKeyLength(mkl);
+                    context.setCurrentTemplate(mt);
                 } else if(value != null){
                     //Primitive value
                     writer.writePrimitiveValue(out, context, value);
@@ -125,9 +151,12 @@ public abstract class FormatWriter implements AutoCloseable {
                     writer.writeValueNull(out, context);
                 }
                 //Write mapping suffix (typically a value separator)
+                //Restore current mapping, may possibly be changed by nested mappings
+                context.setCurrentMapping(m);
                 writer.writeMappingSuffix(out, context, keyName, m.isOptional(), valueAssigned, i, last);
                 i++;
             }
+            context.setCurrentMapping(null);
             context.decrementDepth();
             writer.writeMapEnd(out, context);
         } else if(template instanceof ArrayTemplate){
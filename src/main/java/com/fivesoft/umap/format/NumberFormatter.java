@@ -0,0 +1,318 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+
+/**
+ * Formats numbers into char arrays, without allocating strings.<br>
+ * Integers are formatted as by {@link Long#toString(long)}.
+ * Floating point numbers are formatted in the layout of {@link Double#toString(double)} and
+ * {@link Float#toString(float)}, with the shortest digits which parse back to the same value
+ * (Schubfach algorithm, by Raffaello Giulietti). This is what newer JDKs print,
+ * while older ones may print one or two more digits for some values.
+ */
+public final class NumberFormatter {
+
+    /**
+     * Maximum number of chars written by any of the methods.
+     */
+    public static final int MAX_LENGTH = 26;
+
+    private static final long MASK_63 = 0x7FFF_FFFF_FFFF_FFFFL;
+
+    //Range of decimal exponents covered by the table of powers of ten
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+
+    private static final int DOUBLE_P = 53;
+    private static final int DOUBLE_Q_MIN = -1074;
+    private static final long DOUBLE_C_MIN = 1L << 52;
+    private static final long DOUBLE_C_TINY = 3;
+
+    private static final int FLOAT_P = 24;
+    private static final int FLOAT_Q_MIN = -149;
+    private static final long FLOAT_C_MIN = 1L << 23;
+    private static final long FLOAT_C_TINY = 8;
+
+    private NumberFormatter() {}
+
+    /**
+     * Formats a long in decimal.
+     * @param value the value
+     * @param buf   the buffer, with at least {@link #MAX_LENGTH} chars available from the offset
+     * @param off   the offset to start writing at
+     * @return the offset after the last written char
+     */
+    public static int formatLong(long value, char @NotNull [] buf, int off) {
+        //Digits are computed from the negative value, so Long.MIN_VALUE doesn't overflow
+        long q = value;
+        if (value < 0) {
+            buf[off++] = '-';
+        } else {
+            q = -value;
+        }
+        int len = 1;
+        for (long t = q; t <= -10; t /= 10) {
+            len++;
+        }
+        int end = off + len;
+        for (int i = end - 1; i >= off; i--) {
+            buf[i] = (char) ('0' - q % 10);
+            q /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Formats a double as {@link Double#toString(double)}, with the shortest round-trip digits.
+     * @param value the value
+     * @param buf   the buffer, with at least {@link #MAX_LENGTH} chars available from the offset
+     * @param off   the offset to start writing at
+     * @return the offset after the last written char
+     */
+    public static int formatDouble(double value, char @NotNull [] buf, int off) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & (DOUBLE_C_MIN - 1);
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        if (bq == 0x7FF) {
+            return special(t != 0, bits < 0, buf, off);
+        }
+        if (bits < 0) {
+            buf[off++] = '-';
+        }
+        if (bq != 0) {
+            int mq = -DOUBLE_Q_MIN + 1 - bq;
+            long c = DOUBLE_C_MIN | t;
+            //Integers are exact
+            if (0 < mq && mq < DOUBLE_P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return writeDecimal(f, 0, buf, off);
+                }
+            }
+            return toDecimal(-mq, c, 0, DOUBLE_C_MIN, DOUBLE_Q_MIN, buf, off);
+        }
+        if (t != 0) {
+            //Subnormal
+            return t < DOUBLE_C_TINY ?
+                    toDecimal(DOUBLE_Q_MIN, 10 * t, -1, DOUBLE_C_MIN, DOUBLE_Q_MIN, buf, off) :
+                    toDecimal(DOUBLE_Q_MIN, t, 0, DOUBLE_C_MIN, DOUBLE_Q_MIN, buf, off);
+        }
+        return zero(buf, off);
+    }
+
+    /**
+     * Formats a float as {@link Float#toString(float)}, with the shortest round-trip digits.
+     * @param value the value
+     * @param buf   the buffer, with at least {@link #MAX_LENGTH} chars available from the offset
+     * @param off   the offset to start writing at
+     * @return the offset after the last written char
+     */
+    public static int formatFloat(float value, char @NotNull [] buf, int off) {
+        int bits = Float.floatToRawIntBits(value);
+        long t = bits & (FLOAT_C_MIN - 1);
+        int bq = (bits >>> 23) & 0xFF;
+        if (bq == 0xFF) {
+            return special(t != 0, bits < 0, buf, off);
+        }
+        if (bits < 0) {
+            buf[off++] = '-';
+        }
+        if (bq != 0) {
+            int mq = -FLOAT_Q_MIN + 1 - bq;
+            long c = FLOAT_C_MIN | t;
+            if (0 < mq && mq < FLOAT_P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return writeDecimal(f, 0, buf, off);
+                }
+            }
+            return toDecimal(-mq, c, 0, FLOAT_C_MIN, FLOAT_Q_MIN, buf, off);
+        }
+        if (t != 0) {
+            return t < FLOAT_C_TINY ?
+                    toDecimal(FLOAT_Q_MIN, 10 * t, -1, FLOAT_C_MIN, FLOAT_Q_MIN, buf, off) :
+                    toDecimal(FLOAT_Q_MIN, t, 0, FLOAT_C_MIN, FLOAT_Q_MIN, buf, off);
+        }
+        return zero(buf, off);
+    }
+
+    /**
+     * Finds the shortest decimal in the rounding interval of <code>c * 2^q</code> and writes it.
+     */
+    private static int toDecimal(int q, long c, int dk, long cMin, int qMin, char[] buf, int off) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != cMin || q == qMin) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            //The interval is asymmetric at powers of two
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long[] g = Pow10.G;
+        int i = (k - K_MIN) << 1;
+        long g1 = g[i];
+        long g0 = g[i + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            //Try one digit less than the precision
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return writeDecimal(upin ? sp10 : tp10, k, buf, off);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return writeDecimal(uin ? s : t, k + dk, buf, off);
+        }
+        //Both are in the interval, take the closest one
+        long cmp = vb - (s + t << 1);
+        return writeDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, off);
+    }
+
+    /**
+     * Computes <code>g * cp / 2^127</code> rounded to odd.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    //floor(e * log10(2))
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    //floor(e * log10(2) + log10(3/4))
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    //floor(e * log2(10))
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    /**
+     * Writes <code>f * 10^e</code> in the layout of {@link Double#toString(double)}.<br>
+     * Values from 10^-3 (inclusive) to 10^7 (exclusive) are written plainly, others in the computerized
+     * scientific notation. There's always at least one digit after the decimal point.
+     */
+    private static int writeDecimal(long f, int e, char[] buf, int off) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int len = 1;
+        for (long t = f; t >= 10; t /= 10) {
+            len++;
+        }
+        //Exponent of the first digit, plus one
+        int exp = len + e;
+        if (0 < exp && exp <= 7) {
+            if (len <= exp) {
+                off = writeDigits(f, len, buf, off);
+                for (int i = len; i < exp; i++) {
+                    buf[off++] = '0';
+                }
+                buf[off++] = '.';
+                buf[off++] = '0';
+                return off;
+            }
+            //Make room for the decimal point
+            int end = writeDigits(f, len, buf, off + 1);
+            System.arraycopy(buf, off + 1, buf, off, exp);
+            buf[off + exp] = '.';
+            return end;
+        }
+        if (-3 < exp && exp <= 0) {
+            buf[off++] = '0';
+            buf[off++] = '.';
+            for (int i = exp; i < 0; i++) {
+                buf[off++] = '0';
+            }
+            return writeDigits(f, len, buf, off);
+        }
+        int end = writeDigits(f, len, buf, off + 1);
+        buf[off] = buf[off + 1];
+        buf[off + 1] = '.';
+        if (len == 1) {
+            buf[end++] = '0';
+        }
+        buf[end++] = 'E';
+        return formatLong(exp - 1, buf, end);
+    }
+
+    private static int writeDigits(long f, int len, char[] buf, int off) {
+        int end = off + len;
+        for (int i = end - 1; i >= off; i--) {
+            buf[i] = (char) ('0' + f % 10);
+            f /= 10;
+        }
+        return end;
+    }
+
+    private static int special(boolean nan, boolean negative, char[] buf, int off) {
+        String s = nan ? "NaN" : negative ? "-Infinity" : "Infinity";
+        s.getChars(0, s.length(), buf, off);
+        return off + s.length();
+    }
+
+    private static int zero(char[] buf, int off) {
+        buf[off++] = '0';
+        buf[off++] = '.';
+        buf[off++] = '0';
+        return off;
+    }
+
+    /**
+     * Table of <code>g = floor(10^-k * 2^-r) + 1</code> for each k, where r is chosen so that
+     * <code>2^125 <= g < 2^126</code>, split into the high and low 63 bits.<br>
+     * It's computed once, when the first floating point number is formatted.
+     */
+    private static final class Pow10 {
+
+        private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+        static {
+            BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+            for (int k = K_MIN; k <= K_MAX; k++) {
+                int r = flog2pow10(-k) - 125;
+                BigInteger num = k <= 0 ? BigInteger.TEN.pow(-k) : BigInteger.ONE;
+                BigInteger den = k <= 0 ? BigInteger.ONE : BigInteger.TEN.pow(k);
+                if (r < 0) {
+                    num = num.shiftLeft(-r);
+                } else {
+                    den = den.shiftLeft(r);
+                }
+                BigInteger g = num.divide(den).add(BigInteger.ONE);
+                int i = (k - K_MIN) << 1;
+                G[i] = g.shiftRight(63).longValue();
+                G[i + 1] = g.and(mask).longValue();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.fivesoft.umap.format;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.template.MapTemplate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking reader of root maps, which is fed with chunks of input, as they arrive.<br>
+ * Chunks may be split at any byte. Received bytes are buffered, until the format's {@link RootFramer}
+ * finds the end of a root map. The map is then read from memory and passed to the consumer,
+ * so {@link #feed(ByteBuffer)} never blocks on I/O. A single chunk may complete many maps.<br>
+ * For example, for a NIO server:
+ * <pre>
+ * PushReader reader = new PushReader(new JSONFormat(), template, null, map -&gt; handle(map));
+ * while (channel.read(buffer) != -1) {
+ *     buffer.flip();
+ *     reader.feed(buffer);
+ *     buffer.clear();
+ * }
+ * reader.endOfInput();
+ * </pre>
+ * This class is not thread-safe.
+ */
+public final class PushReader {
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final MapTemplate template;
+    private final FormatReader.Options options;
+    private final Consumer<UMap> consumer;
+    private final FormatReader reader;
+    private final RootFramer framer;
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    //Start of the current root map in the buffer
+    private int start;
+    //End of received bytes in the buffer
+    private int limit;
+    private boolean ended;
+
+    /**
+     * Creates a new push reader.
+     * @param format   the format of the input
+     * @param template the template of every map in the input
+     * @param options  the reading options or null to use defaults
+     * @param consumer receives maps, as soon as they are read
+     * @throws FormatException if the format does not support push reading
+     */
+    public PushReader(@NotNull Format format,
+                      @NotNull MapTemplate template,
+                      FormatReader.@Nullable Options options,
+                      @NotNull Consumer<UMap> consumer) throws FormatException {
+        Objects.requireNonNull(format, "Format cannot be null");
+        this.template = Objects.requireNonNull(template, "Template cannot be null");
+        this.options = FormatReader.Options.getOrDefault(options);
+        this.consumer = Objects.requireNonNull(consumer, "Consumer cannot be null");
+        this.reader = format.createReader(new BytesInputStream(buf, 0, 0), this.options);
+        this.framer = reader.createRootFramer(template);
+    }
+
+    /**
+     * Feeds the next chunk of input. All remaining bytes of the chunk are consumed.<br>
+     * Maps completed by the chunk are passed to the consumer before this method returns.
+     * @param chunk the chunk of input
+     * @throws FormatException if the input is not in the expected format
+     * @throws IllegalStateException if {@link #endOfInput()} has already been called
+     */
+    public void feed(@NotNull ByteBuffer chunk) throws FormatException {
+        if (ended) {
+            throw new IllegalStateException("End of input has already been reached");
+        }
+        int n = chunk.remaining();
+        if (n == 0) {
+            return;
+        }
+        ensureCapacity(n);
+        chunk.get(buf, limit, n);
+        limit += n;
+        readCompleted();
+    }
+
+    /**
+     * Signals the end of input.
+     * @throws FormatException if the input ends in the middle of a map
+     */
+    public void endOfInput() throws FormatException {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        readCompleted();
+        if (framer.hasStarted()) {
+            throw new FormatException("Unexpected end of input. The last map is incomplete.");
+        }
+    }
+
+    private void readCompleted() throws FormatException {
+        int length;
+        while ((length = framer.scan(buf, start, limit)) >= 0) {
+            //Every map gets its own copy of bytes, since lazily decoded values may refer to them
+            byte[] data = Arrays.copyOfRange(buf, start, start + length);
+            start += length;
+            framer.reset();
+            try {
+                consumer.accept(FormatReader.readFormat(new BytesInputStream(data, 0, data.length, true),
+                        reader, template, options));
+            } catch (IOException e) {
+                //This should never happen
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        int size = limit - start;
+        if (limit + n <= buf.length) {
+            return;
+        }
+        if (size + n <= buf.length) {
+            //Drop bytes of already read maps
+            System.arraycopy(buf, start, buf, 0, size);
+        } else {
+            byte[] grown = new byte[Math.max(buf.length * 2, size + n)];
+            System.arraycopy(buf, start, grown, 0, size);
+            buf = grown;
+        }
+        start = 0;
+        limit = size;
+    }
+
+}
@@ -1,8 +1,12 @@
 package com.fivesoft.umap.format;
 
+import com.fivesoft.umap.template.MapTemplate;
+import org.jetbrains.annotations.Nullable;
+
 public class ReaderContext extends FormatContext {
 
     private final FormatReader.Options options;
+    private MapTemplate currentTemplate;
 
     public ReaderContext(FormatReader.Options options) {
         this.options = FormatReader.Options.getOrDefault(options);
@@ -12,4 +16,17 @@ public class ReaderContext extends FormatContext {
         return options;
     }
 
+    /**
+     * Gets the template of the map currently being read.
+     * @return the template of the current map or null if no map is being read
+     */
+    @Nullable
+    public MapTemplate getCurrentTemplate() {
+        return currentTemplate;
+    }
+
+    void setCurrentTemplate(@Nullable MapTemplate currentTemplate) {
+        this.currentTemplate = currentTemplate;
+    }
+
 }
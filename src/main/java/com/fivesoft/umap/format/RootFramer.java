@@ -0,0 +1,36 @@
+package com.fivesoft.umap.format;
+
+/**
+ * Finds the end of a root object in a byte buffer, which is filled incrementally.<br>
+ * Used by {@link PushReader} to detect, when all bytes of a root object have been received,
+ * so the object can be read without blocking. The framer keeps its state between calls,
+ * so already scanned bytes are not scanned again, when more bytes arrive.<br>
+ * Created by {@link FormatReader#createRootFramer(com.fivesoft.umap.template.MapTemplate)}.
+ */
+public abstract class RootFramer {
+
+    /**
+     * Continues scanning the current root object.<br>
+     * The buffer always contains all received bytes of the object, starting at <code>from</code>.
+     * Since the buffer may be moved between calls, implementations must keep positions relative to <code>from</code>.
+     *
+     * @param buf  the buffer
+     * @param from index of the first byte of the root object (or of separators before it)
+     * @param to   index one greater than the last received byte
+     * @return length of the root object, counted from <code>from</code>, or -1 if more bytes are needed
+     * @throws FormatException if the bytes cannot be a start of a root object
+     */
+    public abstract int scan(byte[] buf, int from, int to) throws FormatException;
+
+    /**
+     * Checks whether any bytes of a root object have been scanned, apart from separators.
+     * @return true if a root object has started, but it's not complete yet
+     */
+    public abstract boolean hasStarted();
+
+    /**
+     * Resets the framer after a complete root object, to scan the next one.
+     */
+    public abstract void reset();
+
+}
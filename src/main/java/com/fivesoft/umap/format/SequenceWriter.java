@@ -0,0 +1,174 @@
+package com.fivesoft.umap.format;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.data.UObject;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.template.ArrayTemplate;
+import com.fivesoft.umap.template.PrimitiveTemplate;
+import com.fivesoft.umap.template.Template;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Writes a root array entry by entry, without building a {@link com.fivesoft.umap.data.UArray} first.<br>
+ * The array is started in the constructor, every entry is written as soon as it is passed
+ * to {@link #write(Object)}, and the array is ended by {@link #close()}. So only a single entry
+ * has to be kept in memory at a time. For example, to export rows of a database cursor:
+ * <pre>
+ * try (SequenceWriter writer = new SequenceWriter(out, new JSONFormat(), template, null)) {
+ *     while (cursor.next()) {
+ *         writer.write(toMap(cursor));
+ *     }
+ * }
+ * </pre>
+ * The output is the same, as if the entries were formatted as a single array.
+ * Some formats (see {@link FormatWriter#requiresArrayLength()}) write the length of the array
+ * before its entries, so it must be known in advance.<br>
+ * This class is not thread-safe.
+ */
+public final class SequenceWriter implements AutoCloseable {
+
+    private final OutputStream out;
+    private final ArrayTemplate template;
+    private final FormatWriter writer;
+    private final WriterContext context;
+    private final int detailLevel;
+    //Expected number of entries or -1, if unknown
+    private final int length;
+
+    private int count;
+    private boolean closed;
+
+    /**
+     * Creates a new sequence writer and writes the start of the array.
+     * @param out         the output stream to write to
+     * @param format      the format to use
+     * @param template    the template of the array
+     * @param options     the options to use, may be null to use default options
+     * @param detailLevel maximum detail level of the fields to include them in the output
+     * @param length      the number of entries, which will be written, or -1 if unknown
+     * @throws IOException     if an I/O error occurs while writing to the output stream
+     * @throws FormatException if the length is unknown, but the format requires it
+     */
+    public SequenceWriter(@NotNull OutputStream out,
+                          @NotNull Format format,
+                          @NotNull ArrayTemplate template,
+                          FormatWriter.@Nullable Options options,
+                          int detailLevel, int length) throws IOException, FormatException {
+        this.out = Objects.requireNonNull(out, "Output stream cannot be null");
+        this.template = Objects.requireNonNull(template, "Template cannot be null");
+        this.writer = Objects.requireNonNull(format, "Format cannot be null").createWriter(out, options);
+        this.context = new WriterContext(options);
+        this.detailLevel = detailLevel;
+        this.length = Math.max(-1, length);
+        if (this.length < 0 && writer.requiresArrayLength()) {
+            throw new FormatException("Format " + format.getName() + " requires the length of the array to be known in advance.");
+        }
+        writer.writeRootStart(out, context);
+        writer.writeArrayStart(out, context, this.length);
+        context.incrementDepth();
+    }
+
+    /**
+     * Creates a new sequence writer of an array with unknown length, including fields of all detail levels.
+     * @param out      the output stream to write to
+     * @param format   the format to use
+     * @param template the template of the array
+     * @param options  the options to use, may be null to use default options
+     * @throws IOException     if an I/O error occurs while writing to the output stream
+     * @throws FormatException if the format requires the length of the array
+     */
+    public SequenceWriter(@NotNull OutputStream out,
+                          @NotNull Format format,
+                          @NotNull ArrayTemplate template,
+                          FormatWriter.@Nullable Options options) throws IOException, FormatException {
+        this(out, format, template, options, Integer.MAX_VALUE, -1);
+    }
+
+    /**
+     * Writes the next entry of the array.<br>
+     * The entry must match the entry template of the array, as in {@link com.fivesoft.umap.data.UArray.Builder#add(Object)}.
+     * For example, a {@link UMap} for an array of maps or a number for an array of numbers.
+     * @param value the entry to write
+     * @throws IOException     if an I/O error occurs while writing to the output stream
+     * @throws FormatException if the entry cannot be formatted
+     * @throws FieldException  if the entry does not match the template
+     * @throws IllegalStateException if the writer is closed or all the declared entries are already written
+     */
+    public void write(@NotNull Object value) throws IOException, FormatException {
+        Objects.requireNonNull(value, "Array value cannot be null.");
+        if (closed) {
+            throw new IllegalStateException("Sequence writer is closed");
+        }
+        if (length >= 0 && count >= length) {
+            throw new IllegalStateException("All " + length + " entries are already written");
+        }
+        Template et = template.getEntryTemplate();
+        if (value instanceof UObject.Builder<?> b) {
+            if (!et.matchesTemplate(b.getTemplate())) {
+                throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, null, value);
+            }
+            value = b.build();
+        } else if (et instanceof PrimitiveTemplate pt) {
+            value = pt.parseValue(value);
+        } else if (!et.matchesValue(value)) {
+            throw new FieldException(FieldException.Reason.VALUE_TYPE_MISMATCH, null, value);
+        }
+
+        //The previous entry is not the last one
+        if (count > 0) {
+            writer.writeEntrySuffix(out, context, count - 1, false);
+        }
+        writer.writeEntryPrefix(out, context, count, count == length - 1);
+        if (value instanceof UObject<?> uo) {
+            FormatWriter.format(uo, writer, context, out, detailLevel, false);
+        } else {
+            writer.writePrimitiveValue(out, context, value);
+        }
+        count++;
+    }
+
+    /**
+     * Gets the number of entries written so far.
+     * @return the number of written entries
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Flushes the entries written so far to the output stream.
+     * @throws IOException if an I/O error occurs
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Writes the end of the array and flushes the writer. The output stream is not closed.
+     * @throws IOException     if an I/O error occurs while writing to the output stream
+     * @throws FormatException if fewer entries were written, than declared
+     */
+    @Override
+    public void close() throws IOException, FormatException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (length >= 0 && count != length) {
+            throw new FormatException("Expected " + length + " entries, but " + count + " were written");
+        }
+        if (count > 0) {
+            writer.writeEntrySuffix(out, context, count - 1, true);
+        }
+        context.decrementDepth();
+        writer.writeArrayEnd(out, context, count);
+        writer.writeRootEnd(out, context);
+        writer.flush();
+    }
+
+}
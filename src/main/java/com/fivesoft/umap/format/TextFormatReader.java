@@ -3,6 +3,7 @@ package com.fivesoft.umap.format;
 import java.io.*;
 import java.util.Objects;
 
+import com.fivesoft.umap.template.Mapping;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -12,7 +13,7 @@ import org.jetbrains.annotations.Nullable;
 public abstract class TextFormatReader extends FormatReader {
 
     private final String encoding;
-    private InputStreamReader _cachedReader;
+    private Reader _cachedReader;
     private int _cacheHashCode;
     private boolean closed;
 
@@ -38,14 +39,35 @@ public abstract class TextFormatReader extends FormatReader {
 
     public abstract void readRootStart(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException;
 
+    /**
+     * Reads the start of the root array. See {@link FormatReader#readRootArrayStart(InputStream, ReaderContext)}.
+     */
+    public void readRootArrayStart(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException {
+        readRootStart(in, context);
+    }
+
     public abstract @Nullable String nextKey(@NotNull Reader in, @NotNull ReaderContext context,
-                                             @NotNull String expectedKey) throws IOException, FormatException;
+                                             @Nullable String expectedKey) throws IOException, FormatException;
 
     public abstract @Nullable ValueToken nextValueToken(@NotNull Reader in, @NotNull ReaderContext context, @NotNull String key,
                                                     @NotNull Class<?> valueType, boolean optional, boolean inArray) throws IOException, FormatException;
 
     public abstract void readRootEnd(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException;
 
+    /**
+     * Skips the value of a key. See {@link FormatReader#skipValue(InputStream, ReaderContext, Mapping)}.
+     */
+    public boolean skipValue(@NotNull Reader in, @NotNull ReaderContext context,
+                             @Nullable Mapping mapping) throws IOException, FormatException {
+        throw new FormatException("Skipping values is not supported by format reader: " + getClass().getName());
+    }
+
+    /**
+     * Checks whether there is another root object. See {@link FormatReader#hasNextRoot(InputStream)}.
+     */
+    public boolean hasNextRoot(@NotNull Reader in) throws IOException, FormatException {
+        throw new FormatException("Reading sequences is not supported by format reader: " + getClass().getName());
+    }
 
     @Override
     public void readRootStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
@@ -53,10 +75,21 @@ public abstract class TextFormatReader extends FormatReader {
     }
 
     @Override
-    public @Nullable String nextKeyToken(@NotNull InputStream in, @NotNull ReaderContext context, @NotNull String expectedKey) throws IOException, FormatException {
+    public void readRootArrayStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
+        readRootArrayStart(getReader(in), context);
+    }
+
+    @Override
+    public @Nullable String nextKeyToken(@NotNull InputStream in, @NotNull ReaderContext context, @Nullable String expectedKey) throws IOException, FormatException {
         return nextKey(getReader(in), context, expectedKey);
     }
 
+    @Override
+    public boolean skipValue(@NotNull InputStream in, @NotNull ReaderContext context,
+                             @Nullable Mapping mapping) throws IOException, FormatException {
+        return skipValue(getReader(in), context, mapping);
+    }
+
     @Override
     public @Nullable ValueToken nextValueToken(@NotNull InputStream in, @NotNull ReaderContext context, @NotNull String key,
                                            @NotNull Class<?> valueType, boolean optional, boolean inArray) throws IOException, FormatException {
@@ -68,6 +101,19 @@ public abstract class TextFormatReader extends FormatReader {
         readRootEnd(getReader(in), context);
     }
 
+    @Override
+    public boolean hasNextRoot(@NotNull InputStream in) throws IOException, FormatException {
+        return hasNextRoot(getReader(in));
+    }
+
+    /**
+     * Checks whether this reader has been closed.
+     * @return true if {@link #close()} has been called
+     */
+    protected boolean isClosed() {
+        return closed;
+    }
+
     @Override
     public void close() {
         closed = true;
@@ -82,7 +128,9 @@ public abstract class TextFormatReader extends FormatReader {
         }
         synchronized (encoding) {
             if(_cachedReader == null || _cacheHashCode != in.hashCode()){
-                _cachedReader = new InputStreamReader(in);
+                //Characters are read directly, without encoding them to bytes
+                _cachedReader = in instanceof CharSequenceInputStream cs ? new CharSequenceReader(cs.getChars()) :
+                        new InputStreamReader(in, encoding);
                 _cacheHashCode = in.hashCode();
             }
             return _cachedReader;
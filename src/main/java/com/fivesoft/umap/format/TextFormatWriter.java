@@ -1,8 +1,14 @@
 package com.fivesoft.umap.format;
 
+import com.fivesoft.umap.template.KeyEncoding;
+import com.fivesoft.umap.template.Mapping;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.Objects;
 
 /**
@@ -11,9 +17,12 @@ import java.util.Objects;
 public abstract class TextFormatWriter extends FormatWriter {
 
     private final String encoding;
-    private OutputStreamWriter _cachedWriter;
-    private int _cacheHashCode;
+    private final boolean utf8;
+    private Writer _cachedWriter;
+    private OutputStream _cachedOut;
     private boolean closed;
+    //Scratch buffer for formatting numbers
+    private final char[] numberBuffer = new char[NumberFormatter.MAX_LENGTH];
 
     /**
      * Creates a new instance of TextFormatWriter with the specified encoding.
@@ -23,12 +32,13 @@ public abstract class TextFormatWriter extends FormatWriter {
     public TextFormatWriter(@NotNull String encoding) {
         this.encoding = Objects.requireNonNull(encoding);
         //Check if the encoding is supported
+        Charset charset;
         try {
-            //Maybe there is a more elegant way to do this??
-            new OutputStreamWriter(new ByteArrayOutputStream(), encoding);
-        } catch (UnsupportedEncodingException e) {
+            charset = Charset.forName(encoding);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
             throw new IllegalArgumentException("Unsupported encoding: " + encoding);
         }
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
     }
 
     /**
@@ -164,6 +174,46 @@ public abstract class TextFormatWriter extends FormatWriter {
         writeArrayEnd(getWriter(out), context, length);
     }
 
+    /**
+     * Gets the key encoded with the given encoding.<br>
+     * When the key belongs to the current mapping of the context, the key is cached in the mapping,
+     * so it's encoded only once per template.
+     * @param context  the context of the current writing operation
+     * @param key      the key name
+     * @param encoding the encoding
+     * @return the encoded key
+     */
+    @NotNull
+    protected static <T> T getEncodedKey(@NotNull WriterContext context, @NotNull String key,
+                                         @NotNull KeyEncoding<T> encoding) {
+        Mapping m = context.getCurrentMapping();
+        //noinspection StringEquality
+        return m != null && m.getName() == key ? m.getEncodedKey(encoding) : encoding.encode(key);
+    }
+
+    /**
+     * Writes a long in decimal, without creating a string.
+     */
+    protected final void writeNumber(@NotNull Writer writer, long value) throws IOException {
+        writer.write(numberBuffer, 0, NumberFormatter.formatLong(value, numberBuffer, 0));
+    }
+
+    /**
+     * Writes a double as {@link Double#toString(double)} does, but with the shortest
+     * round-trip digits (see {@link NumberFormatter}), without creating a string.
+     */
+    protected final void writeNumber(@NotNull Writer writer, double value) throws IOException {
+        writer.write(numberBuffer, 0, NumberFormatter.formatDouble(value, numberBuffer, 0));
+    }
+
+    /**
+     * Writes a float as {@link Float#toString(float)} does, but with the shortest
+     * round-trip digits (see {@link NumberFormatter}), without creating a string.
+     */
+    protected final void writeNumber(@NotNull Writer writer, float value) throws IOException {
+        writer.write(numberBuffer, 0, NumberFormatter.formatFloat(value, numberBuffer, 0));
+    }
+
     protected void writeSpace(@NotNull Writer writer) throws IOException {
         writer.write(' ');
     }
@@ -228,10 +278,8 @@ public abstract class TextFormatWriter extends FormatWriter {
 
     @Override
     public void flush() throws IOException {
-        synchronized (encoding) {
-            if(_cachedWriter != null){
-                _cachedWriter.flush();
-            }
+        if(_cachedWriter != null){
+            _cachedWriter.flush();
         }
     }
 
@@ -239,21 +287,29 @@ public abstract class TextFormatWriter extends FormatWriter {
     public void close() {
         closed = true;
         _cachedWriter = null;
-        _cacheHashCode = 0;
+        _cachedOut = null;
     }
 
+    /**
+     * Gets the writer encoding chars to the given stream.<br>
+     * The writer is created once and reused as long as the same stream is passed.
+     * UTF-8 is encoded by {@link Utf8StreamWriter}, other encodings by {@link OutputStreamWriter}.
+     * This writer is not thread-safe, so the lookup is not synchronized.
+     */
     private Writer getWriter(@NotNull OutputStream out) throws IOException {
-        Objects.requireNonNull(out);
-        if(closed){
-            throw new IOException("Writer is closed");
-        }
-        synchronized (encoding) {
-            if(_cachedWriter == null || _cacheHashCode != out.hashCode()){
-                _cachedWriter = new OutputStreamWriter(out);
-                _cacheHashCode = out.hashCode();
+        if(out != _cachedOut){
+            Objects.requireNonNull(out);
+            if(closed){
+                throw new IOException("Writer is closed");
+            }
+            if(_cachedWriter != null){
+                //Don't lose chars buffered for the previous stream
+                _cachedWriter.flush();
             }
-            return _cachedWriter;
+            _cachedWriter = utf8 ? new Utf8StreamWriter(out) : new OutputStreamWriter(out, encoding);
+            _cachedOut = out;
         }
+        return _cachedWriter;
     }
 
 }
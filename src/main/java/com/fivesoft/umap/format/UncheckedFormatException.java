@@ -0,0 +1,23 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * Wraps a {@link FormatException} with an unchecked exception.<br>
+ * Thrown by lazy readers, like {@link FormatReader#readSequence(java.io.InputStream, FormatReader,
+ * com.fivesoft.umap.template.MapTemplate, FormatReader.Options)}, which cannot throw checked exceptions.
+ */
+public class UncheckedFormatException extends RuntimeException {
+
+    public UncheckedFormatException(@NotNull FormatException cause) {
+        super(Objects.requireNonNull(cause).getMessage(), cause);
+    }
+
+    @Override
+    public FormatException getCause() {
+        return (FormatException) super.getCause();
+    }
+
+}
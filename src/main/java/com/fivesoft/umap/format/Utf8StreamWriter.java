@@ -0,0 +1,248 @@
+package com.fivesoft.umap.format;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A writer encoding characters as UTF-8 directly into a byte buffer, which is written
+ * to the output stream in large blocks.<br>
+ * Unlike {@link java.io.OutputStreamWriter}, it doesn't go through a {@link java.nio.charset.CharsetEncoder},
+ * and ASCII characters are copied to the buffer one by one in a tight loop.
+ * Malformed surrogates are replaced with <code>'?'</code>, as the default encoder does.<br>
+ * The buffer is taken from a per-thread pool when the first character is written,
+ * and returned to it on {@link #flush()}, so short-lived writers don't allocate it every time.<br>
+ * This class is not thread-safe.
+ */
+public final class Utf8StreamWriter extends Writer {
+
+    static final int BUFFER_SIZE = 16384;
+
+    //One spare buffer per thread
+    private static final ThreadLocal<byte[]> POOL = new ThreadLocal<>();
+
+    private final OutputStream out;
+    private byte[] buf;
+    private int pos;
+    //High surrogate written at the end of the last call, waiting for its pair
+    private char pendingHigh;
+
+    public Utf8StreamWriter(@NotNull OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Gets the stream this writer writes to.
+     * @return the output stream
+     */
+    @NotNull
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (c < 0x80 && pendingHigh == 0) {
+            if (buf == null || pos == buf.length) {
+                flushBuffer();
+            }
+            buf[pos++] = (byte) c;
+        } else {
+            write(String.valueOf((char) c), 0, 1);
+        }
+    }
+
+    @Override
+    public void write(char @NotNull [] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        int i = off;
+        if (pendingHigh != 0 && i < end) {
+            i = writePending(cbuf[i], i);
+        }
+        byte[] b = buf;
+        int p = pos;
+        while (i < end) {
+            if (b == null || b.length - p < 4) {
+                pos = p;
+                flushBuffer();
+                b = buf;
+                p = 0;
+            }
+            //ASCII fast path
+            int limit = Math.min(end, i + b.length - p);
+            char c;
+            while (i < limit && (c = cbuf[i]) < 0x80) {
+                b[p++] = (byte) c;
+                i++;
+            }
+            if (i < end && b.length - p >= 4) {
+                c = cbuf[i];
+                if (c >= 0x80) {
+                    if (Character.isHighSurrogate(c) && i + 1 == end) {
+                        pendingHigh = c;
+                        i++;
+                    } else {
+                        char next = i + 1 < end ? cbuf[i + 1] : 0;
+                        p = encode(b, p, c, next);
+                        i += Character.isSurrogatePair(c, next) ? 2 : 1;
+                    }
+                }
+            }
+        }
+        pos = p;
+    }
+
+    @Override
+    public void write(@NotNull String str, int off, int len) throws IOException {
+        int end = off + len;
+        int i = off;
+        if (pendingHigh != 0 && i < end) {
+            i = writePending(str.charAt(i), i);
+        }
+        byte[] b = buf;
+        int p = pos;
+        while (i < end) {
+            if (b == null || b.length - p < 4) {
+                pos = p;
+                flushBuffer();
+                b = buf;
+                p = 0;
+            }
+            //ASCII fast path
+            int limit = Math.min(end, i + b.length - p);
+            char c;
+            while (i < limit && (c = str.charAt(i)) < 0x80) {
+                b[p++] = (byte) c;
+                i++;
+            }
+            if (i < end && b.length - p >= 4) {
+                c = str.charAt(i);
+                if (c >= 0x80) {
+                    if (Character.isHighSurrogate(c) && i + 1 == end) {
+                        pendingHigh = c;
+                        i++;
+                    } else {
+                        char next = i + 1 < end ? str.charAt(i + 1) : 0;
+                        p = encode(b, p, c, next);
+                        i += Character.isSurrogatePair(c, next) ? 2 : 1;
+                    }
+                }
+            }
+        }
+        pos = p;
+    }
+
+    @Override
+    public void write(@NotNull String str) throws IOException {
+        write(str, 0, str.length());
+    }
+
+    /**
+     * Writes bytes, which are already encoded as UTF-8.
+     * @param bytes the encoded bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeBytes(byte @NotNull [] bytes) throws IOException {
+        if (pendingHigh != 0) {
+            pendingHigh = 0;
+            write('?');
+        }
+        if (buf == null || buf.length - pos < bytes.length) {
+            flushBuffer();
+            if (bytes.length > buf.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and flushes it.
+     * The buffer is returned to the pool, so it doesn't stay referenced by an idle writer.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        if (buf != null) {
+            if (pos > 0) {
+                out.write(buf, 0, pos);
+                pos = 0;
+            }
+            POOL.set(buf);
+            buf = null;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pendingHigh != 0) {
+            pendingHigh = 0;
+            write('?');
+        }
+        flush();
+        out.close();
+    }
+
+    /**
+     * Completes the pending high surrogate with the given char.
+     * @return the index of the next char to write
+     */
+    private int writePending(char next, int i) throws IOException {
+        char high = pendingHigh;
+        pendingHigh = 0;
+        if (buf == null || buf.length - pos < 4) {
+            flushBuffer();
+        }
+        pos = encode(buf, pos, high, next);
+        return Character.isLowSurrogate(next) ? i + 1 : i;
+    }
+
+    /**
+     * Writes the buffered bytes to the stream, taking a buffer from the pool if there's none yet.
+     */
+    private void flushBuffer() throws IOException {
+        if (buf == null) {
+            byte[] b = POOL.get();
+            if (b != null) {
+                POOL.remove();
+            } else {
+                b = new byte[BUFFER_SIZE];
+            }
+            buf = b;
+        } else if (pos > 0) {
+            out.write(buf, 0, pos);
+        }
+        pos = 0;
+    }
+
+    /**
+     * Encodes a non-ASCII char, using the next char if it completes a surrogate pair.
+     * At least 4 bytes must be available in the buffer.
+     * @return the new position in the buffer
+     */
+    private static int encode(byte[] b, int p, char c, char next) {
+        if (c < 0x800) {
+            b[p++] = (byte) (0xC0 | (c >> 6));
+            b[p++] = (byte) (0x80 | (c & 0x3F));
+        } else if (!Character.isSurrogate(c)) {
+            b[p++] = (byte) (0xE0 | (c >> 12));
+            b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            b[p++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogatePair(c, next)) {
+            int cp = Character.toCodePoint(c, next);
+            b[p++] = (byte) (0xF0 | (cp >> 18));
+            b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            b[p++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            b[p++] = '?';
+        }
+        return p;
+    }
+
+}
@@ -4,25 +4,71 @@ import java.util.Objects;
 
 public class ValueToken {
 
+    /**
+     * Token holding an object value (or null) in {@link #value}.
+     */
+    public static final int TYPE_VALUE = 0;
+    /**
+     * Token marking the start of a map.
+     */
+    public static final int TYPE_MAP = 1;
+    /**
+     * Token marking the start of an array.
+     */
+    public static final int TYPE_ARRAY = 2;
+    /**
+     * Token holding an integral number in {@link #longValue}.
+     */
+    public static final int TYPE_LONG = 3;
+    /**
+     * Token holding a floating point number in {@link #doubleValue}.
+     */
+    public static final int TYPE_DOUBLE = 4;
+    /**
+     * Token holding a boolean in {@link #booleanValue}.
+     */
+    public static final int TYPE_BOOLEAN = 5;
 
-    private static final ValueToken MAP = new ValueToken(false, 1);
-    private static final ValueToken ARRAY = new ValueToken(false, 2);
-    private static final ValueToken MAP_LAST = new ValueToken(true, 1);
-    private static final ValueToken ARRAY_LAST = new ValueToken(true, 2);
+    private static final ValueToken MAP = new ValueToken(false, TYPE_MAP);
+    private static final ValueToken ARRAY = new ValueToken(false, TYPE_ARRAY);
+    private static final ValueToken MAP_LAST = new ValueToken(true, TYPE_MAP);
+    private static final ValueToken ARRAY_LAST = new ValueToken(true, TYPE_ARRAY);
+    private static final ValueToken TRUE = new ValueToken(TYPE_BOOLEAN, 0, 0, true, false);
+    private static final ValueToken FALSE = new ValueToken(TYPE_BOOLEAN, 0, 0, false, false);
+    private static final ValueToken TRUE_LAST = new ValueToken(TYPE_BOOLEAN, 0, 0, true, true);
+    private static final ValueToken FALSE_LAST = new ValueToken(TYPE_BOOLEAN, 0, 0, false, true);
 
     public final Object value;
+    public final long longValue;
+    public final double doubleValue;
+    public final boolean booleanValue;
     public final boolean isLast;
     private final int type;
 
 
     public ValueToken(Object value, boolean isLast) {
         this.value = value;
+        this.longValue = 0;
+        this.doubleValue = 0;
+        this.booleanValue = false;
         this.isLast = isLast;
-        this.type = 0;
+        this.type = TYPE_VALUE;
     }
 
     public ValueToken(boolean isLast, int type) {
         this.value = null;
+        this.longValue = 0;
+        this.doubleValue = 0;
+        this.booleanValue = false;
+        this.isLast = isLast;
+        this.type = type;
+    }
+
+    private ValueToken(int type, long longValue, double doubleValue, boolean booleanValue, boolean isLast) {
+        this.value = null;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.booleanValue = booleanValue;
         this.isLast = isLast;
         this.type = type;
     }
@@ -35,12 +81,79 @@ public class ValueToken {
         return isLast ? ARRAY_LAST : ARRAY;
     }
 
+    /**
+     * Creates a token holding an integral number, without boxing it.
+     * @param value the number
+     * @param isLast whether the value is the last one in the enclosing map or array
+     * @return the token of type {@link #TYPE_LONG}
+     */
+    public static ValueToken ofLong(long value, boolean isLast) {
+        return new ValueToken(TYPE_LONG, value, 0, false, isLast);
+    }
+
+    /**
+     * Creates a token holding a floating point number, without boxing it.
+     * @param value the number
+     * @param isLast whether the value is the last one in the enclosing map or array
+     * @return the token of type {@link #TYPE_DOUBLE}
+     */
+    public static ValueToken ofDouble(double value, boolean isLast) {
+        return new ValueToken(TYPE_DOUBLE, 0, value, false, isLast);
+    }
+
+    /**
+     * Gets a token holding a boolean.
+     * @param value the boolean
+     * @param isLast whether the value is the last one in the enclosing map or array
+     * @return the token of type {@link #TYPE_BOOLEAN}
+     */
+    public static ValueToken ofBoolean(boolean value, boolean isLast) {
+        if (isLast) {
+            return value ? TRUE_LAST : FALSE_LAST;
+        }
+        return value ? TRUE : FALSE;
+    }
+
     public boolean isMap() {
-        return type == 1;
+        return type == TYPE_MAP;
     }
 
     public boolean isArray() {
-        return type == 2;
+        return type == TYPE_ARRAY;
+    }
+
+    /**
+     * Checks whether the value of this token is held in one of primitive slots:
+     * {@link #longValue}, {@link #doubleValue} or {@link #booleanValue}.
+     * @return true for tokens of type {@link #TYPE_LONG}, {@link #TYPE_DOUBLE} and {@link #TYPE_BOOLEAN}
+     */
+    public boolean isPrimitive() {
+        return type >= TYPE_LONG;
+    }
+
+    /**
+     * Gets the type of this token.
+     * @return one of <code>TYPE_*</code> constants
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Gets the value of this token, boxing it when held in a primitive slot.
+     * @return the value of this token or null for map and array tokens
+     */
+    public Object getValue() {
+        switch (type) {
+            case TYPE_LONG:
+                return longValue;
+            case TYPE_DOUBLE:
+                return doubleValue;
+            case TYPE_BOOLEAN:
+                return booleanValue;
+            default:
+                return value;
+        }
     }
 
     @Override
@@ -48,18 +161,18 @@ public class ValueToken {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ValueToken that = (ValueToken) o;
-        return isLast == that.isLast && type == that.type && Objects.equals(value, that.value);
+        return isLast == that.isLast && type == that.type && Objects.equals(getValue(), that.getValue());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value, isLast, type);
+        return Objects.hash(getValue(), isLast, type);
     }
 
     @Override
     public String toString() {
         return "ValueToken{" +
-                "value=" + value +
+                "value=" + getValue() +
                 ", isLast=" + isLast +
                 ", type=" + type +
                 '}';
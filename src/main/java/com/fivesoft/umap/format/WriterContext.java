@@ -1,10 +1,14 @@
 package com.fivesoft.umap.format;
 
+import com.fivesoft.umap.template.MapTemplate;
+import com.fivesoft.umap.template.Mapping;
 import org.jetbrains.annotations.Nullable;
 
 public class WriterContext extends FormatContext {
     private final FormatWriter.Options options;
     private int maxKeyLength = -1;
+    private Mapping currentMapping;
+    private MapTemplate currentTemplate;
 
     public WriterContext(@Nullable FormatWriter.Options options) {
         this.options = FormatWriter.Options.getOrDefault(options);
@@ -22,4 +26,31 @@ public class WriterContext extends FormatContext {
         this.maxKeyLength = maxKeyLength;
     }
 
+    /**
+     * Gets the mapping, which key is currently being written.
+     * Writers may use it to get keys encoded once per template (see {@link Mapping#getEncodedKey}).
+     * @return the current mapping or null, if no mapping is being written
+     */
+    @Nullable
+    public Mapping getCurrentMapping() {
+        return currentMapping;
+    }
+
+    void setCurrentMapping(@Nullable Mapping currentMapping) {
+        this.currentMapping = currentMapping;
+    }
+
+    /**
+     * Gets the template of the map currently being written.
+     * @return the template of the current map or null if no map is being written
+     */
+    @Nullable
+    public MapTemplate getCurrentTemplate() {
+        return currentTemplate;
+    }
+
+    void setCurrentTemplate(@Nullable MapTemplate currentTemplate) {
+        this.currentTemplate = currentTemplate;
+    }
+
 }
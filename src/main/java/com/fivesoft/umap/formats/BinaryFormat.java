@@ -3,12 +3,21 @@ package com.fivesoft.umap.formats;
 import com.fivesoft.umap.data.UArray;
 import com.fivesoft.umap.data.UMap;
 import com.fivesoft.umap.format.*;
+import com.fivesoft.umap.template.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
 
 public class BinaryFormat implements Format {
 
@@ -17,15 +26,149 @@ public class BinaryFormat implements Format {
     public static final String[] EXTENSIONS = new String[]{"ubin"};
     public static final byte PREFIX_NULL = 0;
     public static final byte PREFIX_VAL = 1;
+    /**
+     * First byte of every root value in the compact encoding.
+     */
+    public static final byte HEADER_COMPACT = (byte) 0xC1;
+    /**
+     * First byte of every root value with sized containers.
+     * Combined with {@link #HEADER_COMPACT} by bitwise or, when both are used.
+     */
+    public static final byte HEADER_SIZED = (byte) 0xC2;
+    /**
+     * First byte of every root value in the indexed layout.
+     * Combined with other headers by bitwise or, when they are used.
+     */
+    public static final byte HEADER_INDEXED = (byte) 0xC4;
+
+    //Results of fixedSize for values without fixed size
+    static final int LENGTH_PREFIXED = -1;
+    static final int VARINT = 0;
+
+    //Size of read and write buffers
+    private static final int BUFFER_SIZE = 8192;
+
+    //Big-endian views of byte arrays
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle CHAR = MethodHandles.byteArrayViewVarHandle(char[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    //Whether ints, longs and lengths are written as varints
+    private final boolean compact;
+    //Whether nested maps and arrays are prefixed with their length in bytes
+    private final boolean sized;
+    //Whether maps start with a table of offsets of their values
+    private final boolean indexed;
+
+    /**
+     * Creates a binary format with fixed size ints and longs.
+     */
+    public BinaryFormat() {
+        this(false);
+    }
+
+    /**
+     * Creates a binary format.
+     * @param compact whether the compact encoding should be used. Ints and longs are then written as
+     *                ZigZag-encoded LEB128 varints, and lengths of strings and arrays as unsigned varints,
+     *                so small numbers take a single byte. Every root value starts with {@link #HEADER_COMPACT}.
+     *                Data written in one encoding cannot be read in the other.
+     */
+    public BinaryFormat(boolean compact) {
+        this(compact, false);
+    }
+
+    /**
+     * Creates a binary format.
+     * @param compact whether the compact encoding should be used, see {@link #BinaryFormat(boolean)}
+     * @param sized   whether every nested map and array should be prefixed with its length in bytes
+     *                (4 bytes, big-endian, also in the compact encoding). Readers then skip values of unknown keys
+     *                or above the maximum detail level at once, instead of decoding them.
+     *                Writers keep the whole root value in memory, until its last nested container ends.
+     *                Every root value starts with {@link #HEADER_SIZED}.
+     */
+    public BinaryFormat(boolean compact, boolean sized) {
+        this(compact, sized, false);
+    }
+
+    /**
+     * Creates a binary format.
+     * @param compact whether the compact encoding should be used, see {@link #BinaryFormat(boolean)}
+     * @param sized   whether nested containers should be sized, see {@link #BinaryFormat(boolean, boolean)}
+     * @param indexed whether the indexed layout should be used. Every map then starts with the number of mappings
+     *                of its template and the length of its values in bytes, followed by a table of offsets
+     *                of the values, one per mapping, in the order of {@link MapTemplate#indexOf(String)}.
+     *                Offsets are 4 bytes, big-endian, relative to the end of the table,
+     *                and -1 for values above the detail level of the output.
+     *                Single fields can then be read without decoding the whole map, see {@link #view(ByteBuffer, MapTemplate)}.
+     *                Writers keep the whole root value in memory. Every root value starts with {@link #HEADER_INDEXED}.
+     */
+    public BinaryFormat(boolean compact, boolean sized, boolean indexed) {
+        this.compact = compact;
+        this.sized = sized;
+        this.indexed = indexed;
+    }
+
+    /**
+     * Checks if this format uses the compact encoding.
+     * @return true, if ints, longs and lengths are written as varints
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Checks if nested maps and arrays are prefixed with their length in bytes.
+     * @return true, if containers are sized
+     */
+    public boolean isSized() {
+        return sized;
+    }
+
+    /**
+     * Checks if this format uses the indexed layout.
+     * @return true, if maps start with a table of offsets of their values
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Creates a map, which reads its values straight from the given buffer, when they are accessed.<br>
+     * The buffer must hold a root map written in the indexed layout, starting at its position.
+     * Only the header and the offset table of the root map are checked here. Every value is then decoded
+     * on its first access, nested maps are returned as views as well. Strings and arrays are copied out of
+     * the buffer, so the map must not be used after the content of the buffer changes.
+     * The position and limit of the buffer are not changed.
+     * @param buffer   the buffer holding the map
+     * @param template the template of the map
+     * @return a view of the map
+     * @throws FormatException if the buffer doesn't start with a map of the given template in the indexed layout
+     * @throws IllegalStateException if this format doesn't use the indexed layout
+     */
+    @NotNull
+    public UMap view(@NotNull ByteBuffer buffer, @NotNull MapTemplate template) throws FormatException {
+        if(!indexed){
+            throw new IllegalStateException("Only maps in the indexed layout can be viewed.");
+        }
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int p = b.position();
+        byte header = header(compact, sized, true);
+        if(p >= b.limit() || b.get(p) != header){
+            throw new FormatException("Missing header of the binary encoding: " + Integer.toHexString(header & 0xFF));
+        }
+        return new BinaryMapView(b, template, p + 1, compact, sized);
+    }
 
     @Override
     public @NotNull FormatReader createReader(@NotNull InputStream in, FormatReader.@Nullable Options options) {
-        return BINARY_FORMAT_READER;
+        return new BinaryFormatReader(compact, sized, indexed);
     }
 
     @Override
     public @NotNull FormatWriter createWriter(@NotNull OutputStream out, FormatWriter.@Nullable Options options) {
-        return BINARY_FORMAT_WRITER;
+        return new BinaryFormatWriter(compact, sized, indexed);
     }
 
     @Override
@@ -43,88 +186,150 @@ public class BinaryFormat implements Format {
         return MIME_TYPE;
     }
 
-    private static final FormatWriter BINARY_FORMAT_WRITER = new FormatWriter() {
+    /**
+     * Writes values into a buffer, which is written to the output stream in blocks.
+     * Multi-byte values are stored big-endian, through byte array views.
+     */
+    private static final class BinaryFormatWriter extends FormatWriter {
+
+        //Context slot with the position of the length of the container being written
+        private static final int SLOT_LENGTH_POSITION = 0;
+
+        private final boolean compact;
+        private final boolean sized;
+        private final boolean indexed;
+        private final byte header;
+        private byte[] buf = new byte[BUFFER_SIZE];
+        private int pos;
+        //Stream the buffered bytes belong to
+        private OutputStream out;
+        //Number of sized containers and indexed maps, which are not ended yet. The buffer can't be flushed until their lengths are set
+        private int open;
+        //Positions of offset tables of the maps being written, the innermost one last
+        private int[] tables = new int[8];
+        private int tableCount;
+
+        private BinaryFormatWriter(boolean compact, boolean sized, boolean indexed) {
+            this.compact = compact;
+            this.sized = sized;
+            this.indexed = indexed;
+            this.header = header(compact, sized, indexed);
+        }
 
         @Override
         public void writeMappingPrefix(@NotNull OutputStream out, @NotNull WriterContext context, @NotNull String key,
                                        boolean optional, boolean valueAssigned, int index, boolean last) throws IOException {
+            if(indexed){
+                int table = tables[tableCount - 1];
+                int bodyStart = table + 8 + 4 * (int) INT.get(buf, table);
+                INT.set(buf, table + 8 + 4 * context.getCurrentTemplate().indexOf(key), pos - bodyStart);
+            }
             if(optional){
-                out.write(valueAssigned ? PREFIX_VAL : PREFIX_NULL);
+                reserve(out, 1);
+                buf[pos++] = valueAssigned ? PREFIX_VAL : PREFIX_NULL;
             }
         }
 
         @Override
-        public void writeValueString(@NotNull OutputStream out, @NotNull WriterContext context, @NotNull String value) throws IOException, FormatException {
-            byte[] bytes = value.getBytes();
-            writeValueInt(out, context, bytes.length);
-            out.write(bytes);
+        public void writeValueString(@NotNull OutputStream out, @NotNull WriterContext context, @NotNull String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeLength(out, bytes.length);
+            if(open == 0 && bytes.length >= buf.length){
+                //Too long to be worth copying
+                flushBuffer();
+                out.write(bytes);
+                return;
+            }
+            reserve(out, bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
         }
 
         @Override
         public void writeValueBoolean(@NotNull OutputStream out, @NotNull WriterContext context, boolean value) throws IOException {
-            out.write(value ? 1 : 0);
+            reserve(out, 1);
+            buf[pos++] = (byte) (value ? 1 : 0);
         }
 
         @Override
         public void writeValueByte(@NotNull OutputStream out, @NotNull WriterContext context, byte value) throws IOException {
-            out.write(value);
+            reserve(out, 1);
+            buf[pos++] = value;
         }
 
         @Override
         public void writeValueShort(@NotNull OutputStream out, @NotNull WriterContext context, short value) throws IOException {
-            out.write(value >>> 8);
-            out.write(value);
+            reserve(out, 2);
+            SHORT.set(buf, pos, value);
+            pos += 2;
         }
 
         @Override
         public void writeValueInt(@NotNull OutputStream out, @NotNull WriterContext context, int value) throws IOException {
-            out.write(value >>> 24);
-            out.write(value >>> 16);
-            out.write(value >>> 8);
-            out.write(value);
+            if(compact){
+                writeVarLong(out, Integer.toUnsignedLong((value << 1) ^ (value >> 31)));
+            } else {
+                writeFixedInt(out, value);
+            }
         }
 
         @Override
         public void writeValueLong(@NotNull OutputStream out, @NotNull WriterContext context, long value) throws IOException {
-            out.write((int)(value >>> 56));
-            out.write((int)(value >>> 48));
-            out.write((int)(value >>> 40));
-            out.write((int)(value >>> 32));
-            out.write((int)(value >>> 24));
-            out.write((int)(value >>> 16));
-            out.write((int)(value >>> 8));
-            out.write((int)value);
+            if(compact){
+                writeVarLong(out, (value << 1) ^ (value >> 63));
+            } else {
+                writeFixedLong(out, value);
+            }
         }
 
         @Override
-        public void writeValueFloat(@NotNull OutputStream out, @NotNull WriterContext context, float value) throws IOException, FormatException {
-            writeValueInt(out, context, Float.floatToIntBits(value));
+        public void writeValueFloat(@NotNull OutputStream out, @NotNull WriterContext context, float value) throws IOException {
+            writeFixedInt(out, Float.floatToIntBits(value));
         }
 
         @Override
-        public void writeValueDouble(@NotNull OutputStream out, @NotNull WriterContext context, double value) throws IOException, FormatException {
-            writeValueLong(out, context, Double.doubleToLongBits(value));
+        public void writeValueDouble(@NotNull OutputStream out, @NotNull WriterContext context, double value) throws IOException {
+            writeFixedLong(out, Double.doubleToLongBits(value));
         }
 
         @Override
         public void writeValueChar(@NotNull OutputStream out, @NotNull WriterContext context, char value) throws IOException {
-            out.write(value >>> 8);
-            out.write(value);
+            reserve(out, 2);
+            CHAR.set(buf, pos, value);
+            pos += 2;
+        }
+
+        @Override
+        public void writeArrayStart(@NotNull OutputStream out, @NotNull WriterContext context, int length) throws IOException {
+            startContainer(out, context);
+            writeLength(out, length);
         }
 
         @Override
-        public void writeArrayStart(@NotNull OutputStream out, @NotNull WriterContext context, int length) throws IOException, FormatException {
-            writeValueInt(out, context, length);
+        public boolean requiresArrayLength() {
+            return true;
         }
 
         @Override
         public void writeValueNull(@NotNull OutputStream out, @NotNull WriterContext context) {}
         @Override
-        public void writeMapStart(@NotNull OutputStream out, @NotNull WriterContext context) {}
+        public void writeMapStart(@NotNull OutputStream out, @NotNull WriterContext context) throws IOException {
+            startContainer(out, context);
+            if(indexed){
+                startTable(out, context.getCurrentTemplate().size());
+            }
+        }
         @Override
-        public void writeMapEnd(@NotNull OutputStream out, @NotNull WriterContext context) {}
+        public void writeMapEnd(@NotNull OutputStream out, @NotNull WriterContext context) {
+            if(indexed){
+                endTable();
+            }
+            endContainer(context);
+        }
         @Override
-        public void writeArrayEnd(@NotNull OutputStream out, @NotNull WriterContext context, int length) {}
+        public void writeArrayEnd(@NotNull OutputStream out, @NotNull WriterContext context, int length) {
+            endContainer(context);
+        }
         @Override
         public void writeMappingSuffix(@NotNull OutputStream out, @NotNull WriterContext context, @NotNull String key,
                                        boolean optional, boolean valueAssigned, int index, boolean last) {}
@@ -133,26 +338,178 @@ public class BinaryFormat implements Format {
         @Override
         public void writeEntrySuffix(@NotNull OutputStream out, @NotNull WriterContext context, int index, boolean last) {}
         @Override
-        public void writeRootStart(@NotNull OutputStream out, @NotNull WriterContext context) {}
+        public void writeRootStart(@NotNull OutputStream out, @NotNull WriterContext context) throws IOException {
+            if(header != 0){
+                reserve(out, 1);
+                buf[pos++] = header;
+            }
+        }
         @Override
         public void writeRootEnd(@NotNull OutputStream out, @NotNull WriterContext context) {}
 
 
         @Override
-        public void flush() {}
+        public void flush() throws IOException {
+            flushBuffer();
+            if(out != null){
+                out.flush();
+            }
+        }
 
         @Override
-        public void close() {}
+        public void close() throws IOException {
+            flushBuffer();
+            out = null;
+        }
+
+        /**
+         * Reserves the length of a nested container, which is set when the container ends.
+         * Root containers have no length.
+         */
+        private void startContainer(@NotNull OutputStream out, @NotNull WriterContext context) throws IOException {
+            if(sized && context.getDepth() > 0){
+                reserve(out, 4);
+                context.setDepthInt(SLOT_LENGTH_POSITION, pos);
+                pos += 4;
+                open++;
+            }
+        }
+
+        private void endContainer(@NotNull WriterContext context) {
+            if(sized && context.getDepth() > 0){
+                int lengthPosition = context.getDepthInt(SLOT_LENGTH_POSITION);
+                INT.set(buf, lengthPosition, pos - lengthPosition - 4);
+                open--;
+            }
+        }
+
+        /**
+         * Writes the header of an indexed map, with all the offsets set to -1.
+         * They are set when the values are written, and the length of the values when the map ends.
+         */
+        private void startTable(@NotNull OutputStream out, int mappings) throws IOException {
+            int size = 8 + 4 * mappings;
+            reserve(out, size);
+            if(tableCount == tables.length){
+                tables = Arrays.copyOf(tables, tableCount * 2);
+            }
+            tables[tableCount++] = pos;
+            INT.set(buf, pos, mappings);
+            Arrays.fill(buf, pos + 4, pos + size, (byte) -1);
+            pos += size;
+            open++;
+        }
+
+        private void endTable() {
+            int table = tables[--tableCount];
+            int bodyStart = table + 8 + 4 * (int) INT.get(buf, table);
+            INT.set(buf, table + 4, pos - bodyStart);
+            open--;
+        }
+
+        private void writeFixedInt(@NotNull OutputStream out, int value) throws IOException {
+            reserve(out, 4);
+            INT.set(buf, pos, value);
+            pos += 4;
+        }
 
-    };
+        private void writeFixedLong(@NotNull OutputStream out, long value) throws IOException {
+            reserve(out, 8);
+            LONG.set(buf, pos, value);
+            pos += 8;
+        }
 
-    private static final FormatReader BINARY_FORMAT_READER = new FormatReader() {
+        /**
+         * Writes an unsigned LEB128 varint, 7 bits per byte, least significant first.
+         */
+        private void writeVarLong(@NotNull OutputStream out, long value) throws IOException {
+            reserve(out, 10);
+            while((value & ~0x7FL) != 0){
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
 
-        public static final String EXTRA_ARR_LENGTH_PREFIX = "extra_arr_length$";
-        public static final String EXTRA_ARR_INDEX_PREFIX = "extra_arr_index$";
+        private void writeLength(@NotNull OutputStream out, int length) throws IOException {
+            if(compact){
+                writeVarLong(out, length);
+            } else {
+                writeFixedInt(out, length);
+            }
+        }
+
+        /**
+         * Makes room for the given number of bytes in the buffer.
+         * When the stream changes, bytes buffered for the previous one are written first.
+         */
+        private void reserve(@NotNull OutputStream out, int n) throws IOException {
+            if(out != this.out){
+                flushBuffer();
+                this.out = out;
+            }
+            if(buf.length - pos < n){
+                if(open > 0){
+                    buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+                } else {
+                    flushBuffer();
+                }
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if(open > 0){
+                //Lengths of open containers are not known yet
+                return;
+            }
+            if(pos > 0){
+                out.write(buf, 0, pos);
+                pos = 0;
+            }
+            if(buf.length > BUFFER_SIZE){
+                //Don't keep a buffer grown for a large value
+                buf = new byte[BUFFER_SIZE];
+            }
+        }
+
+    }
+
+    /**
+     * Reads values from a buffer. {@link BytesInputStream} is read directly from its backing array,
+     * and its position is moved past the root value at its end.<br>
+     * Other streams are read only by the bytes the next value needs, so they are never read past the end
+     * of the root value and the next one can be read from the same stream by another reader.
+     * Unbuffered streams should be wrapped in a {@link java.io.BufferedInputStream}.
+     */
+    private static final class BinaryFormatReader extends FormatReader {
+
+        //Context slot with the number of entries left in the array being read
+        private static final int SLOT_ARR_REMAINING = 0;
+
+        private final boolean compact;
+        private final boolean sized;
+        private final boolean indexed;
+        private final byte header;
+        private final byte[] block = new byte[BUFFER_SIZE];
+        //Buffer being read, either the block or the backing array of the bytes stream
+        private byte[] buf = block;
+        private int pos;
+        private int limit;
+        //Stream the buffered bytes come from
+        private InputStream in;
+        //The stream, when it is read directly from its backing array, otherwise null
+        private BytesInputStream bytes;
+
+        private BinaryFormatReader(boolean compact, boolean sized, boolean indexed) {
+            this.compact = compact;
+            this.sized = sized;
+            this.indexed = indexed;
+            this.header = header(compact, sized, indexed);
+        }
 
         @Override
-        public @NotNull String nextKeyToken(@NotNull InputStream in, @NotNull ReaderContext context, @NotNull String expectedKey) {
+        public @Nullable String nextKeyToken(@NotNull InputStream in, @NotNull ReaderContext context, @Nullable String expectedKey) {
+            //Keys are not stored, map ends when all keys of the template are read
             return expectedKey;
         }
 
@@ -161,29 +518,19 @@ public class BinaryFormat implements Format {
                                                    @NotNull Class<?> valueType, boolean optional, boolean inArray) throws IOException, FormatException {
             boolean isLast;
             if(inArray){
-                int depth = context.getDepth();
-                final String extraArrLengthKey = EXTRA_ARR_LENGTH_PREFIX + depth;
-                final String extraArrIndexKey = EXTRA_ARR_INDEX_PREFIX + depth;
-
-                Integer length = context.getExtra(extraArrLengthKey);
-                Integer index = context.getExtra(extraArrIndexKey);
-                if(index == null){
-                    index = 0;
-                    length = readInt(in);
-                    context.putExtra(extraArrLengthKey, length);
-                    context.putExtra(extraArrIndexKey, index);
-                } else {
-                    index++;
-                    context.putExtra(extraArrIndexKey, index);
-                }
-                if(index >= length){
-                    return null;
-                }
-                isLast = index == length - 1;
-                if(isLast){
-                    context.removeExtra(extraArrLengthKey);
-                    context.removeExtra(extraArrIndexKey);
+                //Number of entries left in the array at this depth, 0 before the array is started
+                int remaining = context.getDepthInt(SLOT_ARR_REMAINING);
+                if(remaining == 0){
+                    remaining = readLength(in);
+                    if(remaining == 0){
+                        //Empty array
+                        return null;
+                    }
                 }
+                remaining--;
+                isLast = remaining == 0;
+                //After the last entry the slot is 0 again, so it is free for the next array at this depth
+                context.setDepthInt(SLOT_ARR_REMAINING, remaining);
             } else {
                 isLast = false;
             }
@@ -204,9 +551,9 @@ public class BinaryFormat implements Format {
             } else if(valueType == Short.class){
                 return new ValueToken(readShort(in), isLast);
             } else if(valueType == Integer.class){
-                return new ValueToken(readInt(in), isLast);
+                return new ValueToken(compact ? readZigZagInt(in) : readFixedInt(in), isLast);
             } else if(valueType == Long.class){
-                return new ValueToken(readLong(in), isLast);
+                return new ValueToken(compact ? readZigZagLong(in) : readFixedLong(in), isLast);
             } else if(valueType == Float.class){
                 return new ValueToken(readFloat(in), isLast);
             } else if(valueType == Double.class){
@@ -214,8 +561,11 @@ public class BinaryFormat implements Format {
             } else if(valueType == Character.class){
                 return new ValueToken(readChar(in), isLast);
             } else if(UMap.class.isAssignableFrom(valueType)){
+                skipContainerLength(in);
+                skipTable(in);
                 return ValueToken.map(isLast);
             } else if(UArray.class.isAssignableFrom(valueType)){
+                skipContainerLength(in);
                 return ValueToken.array(isLast);
             } else {
                 throw new FormatException("Unsupported value type: " + valueType);
@@ -223,84 +573,616 @@ public class BinaryFormat implements Format {
         }
 
         @Override
-        public void readRootStart(@NotNull InputStream in, @NotNull ReaderContext context) {}
+        public boolean skipValue(@NotNull InputStream in, @NotNull ReaderContext context,
+                                 @Nullable Mapping mapping) throws IOException, FormatException {
+            if(mapping == null){
+                throw new FormatException("Keys are not stored in binary format, so there are no unknown keys to skip.");
+            }
+            if(!mapping.isOptional() || readByte(in) != PREFIX_NULL){
+                skip(in, mapping.getTemplate());
+            }
+            //Maps have no end marker, keys are read until all keys of the template are read
+            return false;
+        }
+
         @Override
-        public void readRootEnd(@NotNull InputStream in, @NotNull ReaderContext context) {}
+        public @NotNull RootFramer createRootFramer(@NotNull MapTemplate template) throws FormatException {
+            if(template.size() == 0){
+                throw new FormatException("Maps of an empty template take no bytes, so they cannot be framed.");
+            }
+            return new BinaryRootFramer(template, compact, sized, indexed);
+        }
 
         @Override
-        public void close() {}
+        public boolean hasNextRoot(@NotNull InputStream in) throws IOException {
+            attach(in);
+            if(pos < limit){
+                return true;
+            }
+            if(bytes != null){
+                return false;
+            }
+            //Read a single byte, which is kept for the next root value
+            pos = 0;
+            limit = Math.max(0, in.read(buf, 0, 1));
+            return limit > 0;
+        }
 
-        private int readInt(@NotNull InputStream in) throws IOException, FormatException {
-            int b1 = in.read();
-            int b2 = in.read();
-            int b3 = in.read();
-            int b4 = in.read();
-            if(b1 == -1 || b2 == -1 || b3 == -1 || b4 == -1){
-                throw new FormatException("Unexpected end of stream");
+        @Override
+        public void readRootStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
+            readRootArrayStart(in, context);
+            skipTable(in);
+        }
+        @Override
+        public void readRootArrayStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
+            if(header != 0 && readByte(in) != header){
+                throw new FormatException("Missing header of the binary encoding: " + Integer.toHexString(header & 0xFF));
             }
-            return (b1 << 24) | (b2 << 16) | (b3 << 8) | b4;
-        }
-        private long readLong(@NotNull InputStream in) throws IOException, FormatException {
-            long b1 = in.read();
-            long b2 = in.read();
-            long b3 = in.read();
-            long b4 = in.read();
-            long b5 = in.read();
-            long b6 = in.read();
-            long b7 = in.read();
-            long b8 = in.read();
-            if(b1 == -1 || b2 == -1 || b3 == -1 || b4 == -1 || b5 == -1 || b6 == -1 || b7 == -1 || b8 == -1){
-                throw new FormatException("Unexpected end of stream");
+        }
+        @Override
+        public void readRootEnd(@NotNull InputStream in, @NotNull ReaderContext context) {
+            if(bytes != null){
+                //Consume the root value from the stream, the next one is read from its new position
+                bytes.seek(pos);
+                detach();
             }
-            return (b1 << 56) | (b2 << 48) | (b3 << 40) | (b4 << 32) | (b5 << 24) | (b6 << 16) | (b7 << 8) | b8;
+        }
+
+        @Override
+        public void close() {}
+
+        private int readFixedInt(@NotNull InputStream in) throws IOException, FormatException {
+            require(in, 4);
+            int v = (int) INT.get(buf, pos);
+            pos += 4;
+            return v;
+        }
+        private long readFixedLong(@NotNull InputStream in) throws IOException, FormatException {
+            require(in, 8);
+            long v = (long) LONG.get(buf, pos);
+            pos += 8;
+            return v;
         }
         private short readShort(@NotNull InputStream in) throws IOException, FormatException {
-            int b1 = in.read();
-            int b2 = in.read();
-            if(b1 == -1 || b2 == -1){
-                throw new FormatException("Unexpected end of stream");
-            }
-            return (short)((b1 << 8) | b2);
+            require(in, 2);
+            short v = (short) SHORT.get(buf, pos);
+            pos += 2;
+            return v;
         }
         private char readChar(@NotNull InputStream in) throws IOException, FormatException {
-            int b1 = in.read();
-            int b2 = in.read();
-            if(b1 == -1 || b2 == -1){
-                throw new FormatException("Unexpected end of stream");
-            }
-            return (char)((b1 << 8) | b2);
+            require(in, 2);
+            char v = (char) CHAR.get(buf, pos);
+            pos += 2;
+            return v;
         }
         private byte readByte(@NotNull InputStream in) throws IOException, FormatException {
-            int b = in.read();
-            if(b == -1){
-                throw new FormatException("Unexpected end of stream");
-            }
-            return (byte)b;
+            require(in, 1);
+            return buf[pos++];
         }
         private float readFloat(@NotNull InputStream in) throws IOException, FormatException {
-            return Float.intBitsToFloat(readInt(in));
+            return Float.intBitsToFloat(readFixedInt(in));
         }
         private double readDouble(@NotNull InputStream in) throws IOException, FormatException {
-            return Double.longBitsToDouble(readLong(in));
+            return Double.longBitsToDouble(readFixedLong(in));
         }
         private boolean readBoolean(@NotNull InputStream in) throws IOException, FormatException {
             return readByte(in) != 0;
         }
 
-        private String readString(@NotNull InputStream in) throws IOException, FormatException {
-            int length = readInt(in);
-            byte[] bytes = new byte[length];
-            int read = in.read(bytes);
-            if(read == -1){
+        /**
+         * Reads an unsigned LEB128 varint.
+         */
+        private long readVarLong(@NotNull InputStream in) throws IOException, FormatException {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7){
+                byte b = readByte(in);
+                value |= (long) (b & 0x7F) << shift;
+                if(b >= 0){
+                    return value;
+                }
+            }
+            throw new FormatException("Malformed varint");
+        }
+
+        private int readZigZagInt(@NotNull InputStream in) throws IOException, FormatException {
+            long v = readVarLong(in);
+            if(v >>> 32 != 0){
+                throw new FormatException("Varint out of int range: " + Long.toUnsignedString(v));
+            }
+            int zz = (int) v;
+            return (zz >>> 1) ^ -(zz & 1);
+        }
+
+        private long readZigZagLong(@NotNull InputStream in) throws IOException, FormatException {
+            long zz = readVarLong(in);
+            return (zz >>> 1) ^ -(zz & 1);
+        }
+
+        /**
+         * Skips the length of a nested container, which is not needed to read it.
+         */
+        private void skipContainerLength(@NotNull InputStream in) throws IOException, FormatException {
+            if(sized){
+                readFixedInt(in);
+            }
+        }
+
+        /**
+         * Skips the header of an indexed map, values are read in order without it.
+         */
+        private void skipTable(@NotNull InputStream in) throws IOException, FormatException {
+            if(indexed){
+                int mappings = readFixedInt(in);
+                readFixedInt(in);
+                if(mappings < 0){
+                    throw new FormatException("Invalid number of mappings: " + mappings);
+                }
+                skipBytes(in, 4L * mappings);
+            }
+        }
+
+        /**
+         * Reads a length of a string or an array.
+         */
+        private int readLength(@NotNull InputStream in) throws IOException, FormatException {
+            long length = compact ? readVarLong(in) : readFixedInt(in);
+            if(length < 0 || length > Integer.MAX_VALUE){
+                throw new FormatException("Invalid length: " + length);
+            }
+            return (int) length;
+        }
+
+        /**
+         * Makes sure the buffer holds at least the given number of bytes (up to its size), reading them if necessary.
+         * Only the missing bytes are read, so the stream is not read past the value.
+         */
+        private void require(@NotNull InputStream in, int n) throws IOException, FormatException {
+            attach(in);
+            if(limit - pos >= n){
+                return;
+            }
+            if(bytes != null){
+                //The backing array holds all bytes of the stream
                 throw new FormatException("Unexpected end of stream");
             }
-            if(read != length){
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+            while(limit < n){
+                int read = in.read(buf, limit, n - limit);
+                if(read == -1){
+                    throw new FormatException("Unexpected end of stream");
+                }
+                limit += read;
+            }
+        }
+
+        /**
+         * Starts reading the given stream, if it is not being read already.
+         * When the stream changes, bytes buffered from the previous one are dropped.
+         */
+        private void attach(@NotNull InputStream in) {
+            if(in == this.in){
+                return;
+            }
+            this.in = in;
+            if(in instanceof BytesInputStream bis){
+                bytes = bis;
+                buf = bis.getBuffer();
+                pos = bis.getPosition();
+                limit = bis.getLimit();
+            } else {
+                bytes = null;
+                buf = block;
+                pos = limit = 0;
+            }
+        }
+
+        /**
+         * Stops reading the current stream, so the next read starts from its current position.
+         */
+        private void detach() {
+            in = null;
+            bytes = null;
+            buf = block;
+            pos = limit = 0;
+        }
+
+        /**
+         * Skips a value of the given template. Strings and arrays of fixed size values
+         * are skipped at once, using their length prefixes.
+         */
+        private void skip(@NotNull InputStream in, @NotNull Template template) throws IOException, FormatException {
+            if(sized && !(template instanceof PrimitiveTemplate)){
+                //Nested containers are skipped at once
+                int length = readFixedInt(in);
+                if(length < 0){
+                    throw new FormatException("Invalid length: " + length);
+                }
+                skipBytes(in, length);
+            } else if(indexed && template instanceof MapTemplate){
+                //Indexed maps are skipped at once as well
+                int mappings = readFixedInt(in);
+                int length = readFixedInt(in);
+                if(mappings < 0 || length < 0){
+                    throw new FormatException("Invalid header of an indexed map");
+                }
+                skipBytes(in, 4L * mappings + length);
+            } else if(template instanceof MapTemplate mt){
+                for(Mapping m : mt){
+                    if(!m.isOptional() || readByte(in) != PREFIX_NULL){
+                        skip(in, m.getTemplate());
+                    }
+                }
+            } else if(template instanceof ArrayTemplate at){
+                int length = readLength(in);
+                Template et = at.getEntryTemplate();
+                int size = et instanceof PrimitiveTemplate pt ? fixedSize(pt.getType(), compact) : LENGTH_PREFIXED;
+                if(size > 0){
+                    skipBytes(in, (long) length * size);
+                } else {
+                    for(int i = 0; i < length; i++){
+                        skip(in, et);
+                    }
+                }
+            } else if(template instanceof PrimitiveTemplate pt){
+                int size = fixedSize(pt.getType(), compact);
+                if(size == VARINT){
+                    readVarLong(in);
+                } else {
+                    skipBytes(in, size > 0 ? size : readLength(in));
+                }
+            }
+        }
+
+        private void skipBytes(@NotNull InputStream in, long n) throws IOException, FormatException {
+            require(in, 0);
+            //Skip buffered bytes first
+            int buffered = (int) Math.min(n, limit - pos);
+            pos += buffered;
+            n -= buffered;
+            if(n > 0 && bytes != null){
                 throw new FormatException("Unexpected end of stream");
             }
-            return new String(bytes);
+            while(n > 0){
+                long skipped = in.skip(n);
+                if(skipped <= 0){
+                    //Some streams skip nothing before the end, check it by reading
+                    if(in.read() == -1){
+                        throw new FormatException("Unexpected end of stream");
+                    }
+                    skipped = 1;
+                }
+                n -= skipped;
+            }
+        }
+
+        private String readString(@NotNull InputStream in) throws IOException, FormatException {
+            int length = readLength(in);
+            if(length <= BUFFER_SIZE || bytes != null){
+                require(in, length);
+                String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+                pos += length;
+                return value;
+            }
+            //Longer than the buffer, take the buffered part and read the rest directly.
+            //The length may be corrupted, so the array grows with the bytes actually read, instead of being allocated at once
+            byte[] bytes = new byte[Math.min(length, BUFFER_SIZE * 8)];
+            int n = limit - pos;
+            System.arraycopy(buf, pos, bytes, 0, n);
+            pos = limit;
+            while(n < length){
+                if(n == bytes.length){
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+                }
+                int read = in.read(bytes, n, bytes.length - n);
+                if(read == -1){
+                    throw new FormatException("Unexpected end of stream");
+                }
+                n += read;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+    }
+
+
+    /**
+     * Gets the header byte of root values, or 0 if they have no header.
+     */
+    static byte header(boolean compact, boolean sized, boolean indexed) {
+        return (byte) ((compact ? HEADER_COMPACT : 0) | (sized ? HEADER_SIZED : 0) | (indexed ? HEADER_INDEXED : 0));
+    }
+
+    /**
+     * Gets the number of bytes taken by a value of the given type, {@link #LENGTH_PREFIXED}
+     * or {@link #VARINT} if the value has no fixed size.
+     */
+    static int fixedSize(@NotNull Class<?> type, boolean compact) throws FormatException {
+        if(type == String.class){
+            return LENGTH_PREFIXED;
+        } else if(compact && (type == Integer.class || type == Long.class)){
+            return VARINT;
+        } else if(type == Boolean.class || type == Byte.class){
+            return 1;
+        } else if(type == Short.class || type == Character.class){
+            return 2;
+        } else if(type == Integer.class || type == Float.class){
+            return 4;
+        } else if(type == Long.class || type == Double.class){
+            return 8;
+        }
+        throw new FormatException("Unsupported value type: " + type);
+    }
+
+    /**
+     * Finds ends of root maps by walking the template, the same way as they are read.<br>
+     * Every step (an optional value prefix with a length of the value) is taken only when all its bytes
+     * have been received, so incomplete steps are simply repeated, when more bytes arrive.
+     * Strings and arrays of fixed size values are skipped using their lengths.
+     */
+    private static final class BinaryRootFramer extends RootFramer {
+
+        private final MapTemplate template;
+        private final boolean compact;
+        private final boolean sized;
+        private final boolean indexed;
+        private final byte header;
+        //Maps and arrays being scanned, the innermost one on top
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+        //Number of bytes scanned so far, relative to the start of the map
+        private int scanned;
+        //Bytes of the current value, which still have to be skipped
+        private long pendingSkip;
+        private boolean started;
+        private boolean headerScanned;
+        //Length decoded by the last call of scanLength
+        private int length;
+
+        private BinaryRootFramer(@NotNull MapTemplate template, boolean compact, boolean sized, boolean indexed) {
+            this.template = template;
+            this.compact = compact;
+            this.sized = sized;
+            this.indexed = indexed;
+            this.header = header(compact, sized, indexed);
+        }
+
+        @Override
+        public int scan(byte[] buf, int from, int to) throws FormatException {
+            if(!started){
+                if(from == to){
+                    return -1;
+                }
+                started = true;
+                if(!indexed){
+                    stack.push(new Frame(template));
+                }
+            }
+            int p = from + scanned;
+            try {
+                if(header != 0 && !headerScanned){
+                    if(p >= to){
+                        return -1;
+                    }
+                    if(buf[p] != header){
+                        throw new FormatException("Missing header of the binary encoding: " + Integer.toHexString(header & 0xFF));
+                    }
+                    //Indexed root maps are skipped at once, using their lengths
+                    int next = indexed ? scanTable(buf, p + 1, to) : p + 1;
+                    if(next < 0){
+                        return -1;
+                    }
+                    p = next;
+                    headerScanned = true;
+                }
+                while (true) {
+                    if(pendingSkip > 0){
+                        long n = Math.min(pendingSkip, to - p);
+                        p += (int) n;
+                        pendingSkip -= n;
+                        if(pendingSkip > 0){
+                            return -1;
+                        }
+                    }
+                    Frame f = stack.peek();
+                    if(f == null){
+                        return p - from;
+                    }
+                    int next;
+                    if(f.mappings != null){
+                        if(f.current == null){
+                            if(!f.mappings.hasNext()){
+                                stack.pop();
+                                continue;
+                            }
+                            f.current = f.mappings.next();
+                        }
+                        int q = p;
+                        if(f.current.isOptional()){
+                            if(q >= to){
+                                return -1;
+                            }
+                            if(buf[q++] == PREFIX_NULL){
+                                f.current = null;
+                                p = q;
+                                continue;
+                            }
+                        }
+                        next = startValue(f.current.getTemplate(), buf, q, to);
+                        if(next >= 0){
+                            f.current = null;
+                        }
+                    } else {
+                        if(f.remaining == 0){
+                            stack.pop();
+                            continue;
+                        }
+                        next = startValue(f.entryTemplate, buf, p, to);
+                        if(next >= 0){
+                            f.remaining--;
+                        }
+                    }
+                    if(next < 0){
+                        return -1;
+                    }
+                    p = next;
+                }
+            } finally {
+                scanned = p - from;
+            }
+        }
+
+        /**
+         * Starts scanning a value, if its length is available.
+         * @return position after the length of the value, or -1 if more bytes are needed
+         */
+        private int startValue(@NotNull Template t, byte[] buf, int p, int to) throws FormatException {
+            if(sized && !(t instanceof PrimitiveTemplate)){
+                //Nested containers are skipped at once
+                if(p + 4 > to){
+                    return -1;
+                }
+                int length = (int) INT.get(buf, p);
+                if(length < 0){
+                    throw new FormatException("Invalid length: " + length);
+                }
+                pendingSkip = length;
+                return p + 4;
+            }
+            if(indexed && t instanceof MapTemplate){
+                return scanTable(buf, p, to);
+            }
+            if(t instanceof MapTemplate mt){
+                stack.push(new Frame(mt));
+                return p;
+            }
+            int size = t instanceof PrimitiveTemplate pt ? fixedSize(pt.getType(), compact) : LENGTH_PREFIXED;
+            if(size > 0){
+                pendingSkip = size;
+                return p;
+            }
+            if(size == VARINT){
+                return varintEnd(buf, p, to);
+            }
+            p = scanLength(buf, p, to);
+            if(p < 0){
+                return -1;
+            }
+            if(t instanceof ArrayTemplate at){
+                Template et = at.getEntryTemplate();
+                int entrySize = et instanceof PrimitiveTemplate pt ? fixedSize(pt.getType(), compact) : LENGTH_PREFIXED;
+                if(entrySize > 0){
+                    pendingSkip = (long) length * entrySize;
+                } else {
+                    stack.push(new Frame(et, length));
+                }
+            } else {
+                //String
+                pendingSkip = length;
+            }
+            return p;
+        }
+
+        /**
+         * Scans the header of an indexed map, so the whole map is skipped.
+         * @return position after the number of mappings and the length, or -1 if more bytes are needed
+         */
+        private int scanTable(byte[] buf, int p, int to) throws FormatException {
+            if(p + 8 > to){
+                return -1;
+            }
+            int mappings = (int) INT.get(buf, p);
+            int length = (int) INT.get(buf, p + 4);
+            if(mappings < 0 || length < 0){
+                throw new FormatException("Invalid header of an indexed map");
+            }
+            pendingSkip = 4L * mappings + length;
+            return p + 8;
         }
 
-    };
+        /**
+         * Decodes a length of a string or an array into {@link #length}.
+         * @return position after the length, or -1 if more bytes are needed
+         */
+        private int scanLength(byte[] buf, int p, int to) throws FormatException {
+            long value;
+            int end;
+            if(compact){
+                end = varintEnd(buf, p, to);
+                if(end < 0){
+                    return -1;
+                }
+                value = 0;
+                for(int i = p, shift = 0; i < end; i++, shift += 7){
+                    value |= (long) (buf[i] & 0x7F) << shift;
+                }
+            } else {
+                if(p + 4 > to){
+                    return -1;
+                }
+                end = p + 4;
+                value = (int) INT.get(buf, p);
+            }
+            if(value < 0 || value > Integer.MAX_VALUE){
+                throw new FormatException("Invalid length: " + value);
+            }
+            length = (int) value;
+            return end;
+        }
 
+        /**
+         * Finds the end of a varint.
+         * @return position after the varint, or -1 if more bytes are needed
+         */
+        private static int varintEnd(byte[] buf, int p, int to) throws FormatException {
+            for(int i = p; i < to; i++){
+                if(buf[i] >= 0){
+                    return i + 1;
+                }
+                if(i - p == 9){
+                    throw new FormatException("Malformed varint");
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean hasStarted() {
+            return started;
+        }
+
+        @Override
+        public void reset() {
+            stack.clear();
+            scanned = 0;
+            pendingSkip = 0;
+            started = false;
+            headerScanned = false;
+        }
+
+        private static final class Frame {
+
+            //Not null for maps
+            private final Iterator<Mapping> mappings;
+            //Mapping, which value has not been started yet
+            private Mapping current;
+            //Not null for arrays
+            private final Template entryTemplate;
+            private int remaining;
+
+            private Frame(@NotNull MapTemplate template) {
+                this.mappings = template.iterator();
+                this.entryTemplate = null;
+            }
+
+            private Frame(@NotNull Template entryTemplate, int length) {
+                this.mappings = null;
+                this.entryTemplate = entryTemplate;
+                this.remaining = length;
+            }
+
+        }
+
+    }
 
 }
@@ -0,0 +1,338 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.UncheckedFormatException;
+import com.fivesoft.umap.template.ArrayTemplate;
+import com.fivesoft.umap.template.MapTemplate;
+import com.fivesoft.umap.template.Mapping;
+import com.fivesoft.umap.template.PrimitiveTemplate;
+import com.fivesoft.umap.template.Template;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A map reading its values from a buffer in the indexed layout of {@link BinaryFormat}.<br>
+ * Values are found through the offset table of the map, so only the accessed ones are decoded.
+ * Decoded values are kept, so every value is decoded at most once, unless it is accessed concurrently.
+ * Nested maps are views of the same buffer.
+ */
+final class BinaryMapView extends UMap {
+
+    //Marks values, which are null or above the detail level of the map
+    private static final Object ABSENT = new Object();
+
+    //Big-endian buffer, read only with absolute positions
+    private final ByteBuffer buffer;
+    private final boolean compact;
+    private final boolean sized;
+    //Position of the offset table
+    private final int table;
+    //Position of the first value. Offsets are relative to it
+    private final int body;
+    //Position after the last value
+    private final int end;
+    //Decoded values, by positions of their mappings
+    private final Object[] values;
+    private int size = -1;
+    private int maxDetailLevel = Integer.MIN_VALUE;
+
+    /**
+     * Creates a view of a map.
+     * @param position position of the number of mappings of the map
+     * @throws FormatException if the header of the map doesn't match the template or the buffer
+     */
+    BinaryMapView(@NotNull ByteBuffer buffer, @NotNull MapTemplate template, int position,
+                  boolean compact, boolean sized) throws FormatException {
+        super(template);
+        this.buffer = buffer;
+        this.compact = compact;
+        this.sized = sized;
+        if(position < 0 || position + 8L > buffer.limit()){
+            throw new FormatException("Unexpected end of buffer");
+        }
+        int mappings = buffer.getInt(position);
+        if(mappings != template.size()){
+            throw new FormatException("Expected a map of " + template.size() + " mappings, but got: " + mappings);
+        }
+        int length = buffer.getInt(position + 4);
+        long end = position + 8L + 4L * mappings + length;
+        if(length < 0 || end > buffer.limit()){
+            throw new FormatException("Invalid length of a map: " + length);
+        }
+        this.table = position + 8;
+        this.body = table + 4 * mappings;
+        this.end = (int) end;
+        this.values = new Object[mappings];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public <T> T getRequired(@NotNull String key) throws IllegalArgumentException {
+        Objects.requireNonNull(key, "key cannot be null");
+        Mapping m = getTemplate().get(key);
+        if (m == null) throw new IllegalArgumentException("No such key: " + key);
+        if (m.isOptional())
+            throw new IllegalArgumentException("Key is optional: " + key);
+        Object o = value(m);
+        if (o == null)
+            throw new IllegalArgumentException("Key exceeds detail level of the map: " + key);
+        //noinspection unchecked
+        return (T) o;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T getOptional(@NotNull String key) throws IllegalArgumentException {
+        Objects.requireNonNull(key, "key cannot be null");
+        Mapping m = getTemplate().get(key);
+        if (m == null) throw new IllegalArgumentException("No such key: " + key);
+        if (!m.isOptional()) throw new IllegalArgumentException("Key is not optional: " + key);
+        Object o = value(m);
+        //noinspection unchecked
+        return (T) (o == null ? m.getDefaultValue() : o);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        int s = size;
+        if (s < 0) {
+            //Count values, which are present, without decoding them
+            s = 0;
+            int i = 0;
+            for (Mapping m : getTemplate()) {
+                int p = position(m, i++);
+                if (p >= 0 && (!m.isOptional() || buffer.get(p) != BinaryFormat.PREFIX_NULL)) {
+                    s++;
+                }
+            }
+            size = s;
+        }
+        return s;
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * Values above the detail level of the output have no offsets, so the level is found from their mappings.
+     */
+    @Override
+    public int getMaxDetailLevel() {
+        int level = maxDetailLevel;
+        if (level == Integer.MIN_VALUE) {
+            level = Integer.MAX_VALUE;
+            int i = 0;
+            for (Mapping m : getTemplate()) {
+                if (position(m, i++) < 0) {
+                    level = Math.min(level, m.getDetailLevel() - 1);
+                }
+            }
+            maxDetailLevel = level;
+        }
+        return level;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<String, Object>> iterator() {
+        Iterator<Mapping> it = getTemplate().iterator();
+        return new Iterator<>() {
+            private Map.Entry<String, Object> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && it.hasNext()) {
+                    Mapping m = it.next();
+                    Object o = value(m);
+                    if (o != null) {
+                        next = new AbstractMap.SimpleImmutableEntry<>(m.getName(), o);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, Object> e = next;
+                next = null;
+                return e;
+            }
+        };
+    }
+
+    /**
+     * Gets the value of the given mapping, decoding it on the first call.
+     * @return the value or null, if it's null or above the detail level of the map
+     */
+    private Object value(@NotNull Mapping m) {
+        int index = getTemplate().indexOf(m.getName());
+        Object o = values[index];
+        if (o == null) {
+            o = ABSENT;
+            int p = position(m, index);
+            if (p >= 0 && (!m.isOptional() || buffer.get(p++) != BinaryFormat.PREFIX_NULL)) {
+                try {
+                    o = new Decoder(p).read(m.getTemplate(), m.getName());
+                } catch (FormatException e) {
+                    throw new UncheckedFormatException(e);
+                } catch (IndexOutOfBoundsException e) {
+                    throw new UncheckedFormatException(new FormatException("Unexpected end of buffer"));
+                }
+            }
+            values[index] = o;
+        }
+        return o == ABSENT ? null : o;
+    }
+
+    /**
+     * Gets the position of the value of the given mapping, including its optional value prefix.
+     * @return the position or -1, if the value is above the detail level of the map
+     */
+    private int position(@NotNull Mapping m, int index) {
+        int offset = buffer.getInt(table + 4 * index);
+        if (offset == -1) {
+            return -1;
+        }
+        if (offset < 0 || offset >= end - body) {
+            throw new UncheckedFormatException(new FormatException("Invalid offset of value: " + m.getName()));
+        }
+        return body + offset;
+    }
+
+    /**
+     * Decodes values in order, from the given position.
+     */
+    private final class Decoder {
+
+        private int pos;
+
+        private Decoder(int pos) {
+            this.pos = pos;
+        }
+
+        private Object read(@NotNull Template template, String key) throws FormatException {
+            if (template instanceof PrimitiveTemplate pt) {
+                return pt.parseValue(readPrimitive(pt.getType()), key);
+            }
+            if (sized) {
+                //Length of the container is not needed
+                pos += 4;
+            }
+            if (template instanceof MapTemplate mt) {
+                BinaryMapView map = new BinaryMapView(buffer, mt, pos, compact, sized);
+                pos = map.end;
+                return map;
+            } else if (template instanceof ArrayTemplate at) {
+                int length = readLength();
+                Template et = at.getEntryTemplate();
+                UArray.Builder b = new UArray.Builder(at);
+                for (int i = 0; i < length; i++) {
+                    b.add(read(et, "#" + i));
+                }
+                return b.build();
+            }
+            throw new FormatException("Unsupported template: " + template.getClass().getName());
+        }
+
+        private Object readPrimitive(@NotNull Class<?> type) throws FormatException {
+            Object value;
+            if (type == String.class) {
+                int length = readLength();
+                if (length > end - pos) {
+                    throw new FormatException("Invalid length: " + length);
+                }
+                if (buffer.hasArray()) {
+                    value = new String(buffer.array(), buffer.arrayOffset() + pos, length, StandardCharsets.UTF_8);
+                } else {
+                    byte[] bytes = new byte[length];
+                    buffer.get(pos, bytes);
+                    value = new String(bytes, StandardCharsets.UTF_8);
+                }
+                pos += length;
+                return value;
+            } else if (compact && type == Integer.class) {
+                long v = readVarLong();
+                if (v >>> 32 != 0) {
+                    throw new FormatException("Varint out of int range: " + Long.toUnsignedString(v));
+                }
+                int zz = (int) v;
+                return (zz >>> 1) ^ -(zz & 1);
+            } else if (compact && type == Long.class) {
+                long v = readVarLong();
+                return (v >>> 1) ^ -(v & 1);
+            } else if (type == Boolean.class) {
+                value = buffer.get(pos) != 0;
+            } else if (type == Byte.class) {
+                value = buffer.get(pos);
+            } else if (type == Short.class) {
+                value = buffer.getShort(pos);
+            } else if (type == Character.class) {
+                value = buffer.getChar(pos);
+            } else if (type == Integer.class) {
+                value = buffer.getInt(pos);
+            } else if (type == Float.class) {
+                value = buffer.getFloat(pos);
+            } else if (type == Long.class) {
+                value = buffer.getLong(pos);
+            } else if (type == Double.class) {
+                value = buffer.getDouble(pos);
+            } else {
+                throw new FormatException("Unsupported value type: " + type);
+            }
+            pos += BinaryFormat.fixedSize(type, compact);
+            return value;
+        }
+
+        private int readLength() throws FormatException {
+            long length;
+            if (compact) {
+                length = readVarLong();
+            } else {
+                length = buffer.getInt(pos);
+                pos += 4;
+            }
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new FormatException("Invalid length: " + length);
+            }
+            return (int) length;
+        }
+
+        /**
+         * Reads an unsigned LEB128 varint.
+         */
+        private long readVarLong() throws FormatException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get(pos++);
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new FormatException("Malformed varint");
+        }
+
+    }
+
+}
@@ -0,0 +1,497 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.LazyString;
+import com.fivesoft.umap.format.CharSequenceReader;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.ValueToken;
+import com.fivesoft.umap.template.KeyMatcher;
+import com.fivesoft.umap.template.Mapping;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * JSON tokenizer reading decoded characters from a {@link Reader} in blocks
+ * into its own buffer.<br>
+ * When the source is a {@link CharSequenceReader}, all its characters are copied to the buffer once,
+ * and the buffer is never refilled.
+ */
+final class CharJsonTokenizer extends JsonTokenizer {
+
+    private final Reader source;
+    private final char[] buf;
+    //Whether the whole input is in the buffer
+    private final boolean inMemory;
+    private int pos;
+    private int limit;
+
+    //Reused for strings crossing the buffer boundary or containing escape sequences
+    private final StringBuilder scratch = new StringBuilder();
+
+    CharJsonTokenizer(@NotNull Reader source) {
+        this.source = Objects.requireNonNull(source);
+        if (source instanceof CharSequenceReader csr) {
+            this.buf = copyChars(csr.getChars());
+            this.pos = csr.getPosition();
+            this.limit = buf.length;
+            this.inMemory = true;
+            //Characters are consumed from the buffer from now on
+            csr.seek(limit);
+        } else {
+            this.buf = new char[BUFFER_SIZE];
+            this.inMemory = false;
+        }
+    }
+
+    /**
+     * Copies the characters of the given sequence to a new array, without creating an intermediate string.
+     */
+    private static char[] copyChars(@NotNull CharSequence chars) {
+        int length = chars.length();
+        char[] b = new char[length];
+        if (chars instanceof String s) {
+            s.getChars(0, length, b, 0);
+        } else if (chars instanceof StringBuilder sb) {
+            sb.getChars(0, length, b, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                b[i] = chars.charAt(i);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Gets the reader this tokenizer reads from.
+     * @return the source reader
+     */
+    @NotNull
+    Reader getSource() {
+        return source;
+    }
+
+    @Override
+    int peek() throws IOException {
+        final char[] b = buf;
+        while (true) {
+            int p = pos;
+            final int l = limit;
+            while (p < l) {
+                char c = b[p];
+                if (c >= 128 || (CHAR_CLASS[c] & WHITESPACE) == 0) {
+                    pos = p;
+                    return c;
+                }
+                p++;
+            }
+            pos = p;
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    void skip() {
+        pos++;
+    }
+
+    @Override
+    @NotNull
+    String readString() throws IOException, FormatException {
+        final char[] b = buf;
+        int start = pos;
+        int p = start;
+        final int l = limit;
+
+        //Fast path, string without escapes, which fits in the buffer
+        while (p < l) {
+            char c = b[p];
+            if (c < 128 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                if (c == '"') {
+                    pos = p + 1;
+                    return new String(b, start, p - start);
+                }
+                break;
+            }
+            p++;
+        }
+
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        sb.append(b, start, p - start);
+        pos = p;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new FormatException("Unexpected end of input.");
+            }
+            //Copy run of regular characters at once
+            start = pos;
+            p = start;
+            while (p < limit) {
+                char c = b[p];
+                if (c < 128 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                    break;
+                }
+                p++;
+            }
+            sb.append(b, start, p - start);
+            pos = p;
+            if (p >= limit) {
+                continue;
+            }
+            pos++;
+            if (b[p] == '"') {
+                return sb.toString();
+            }
+            //Escape sequence
+            int e = readRaw();
+            if (e == 'u') {
+                int c1 = readRaw(), c2 = readRaw(), c3 = readRaw(), c4 = readRaw();
+                if (c4 == -1) {
+                    throw new FormatException("Unexpected end of input.");
+                }
+                sb.append(decodeUnicodeEscape(c1, c2, c3, c4));
+            } else if (e != -1) {
+                sb.append(decodeEscape(e));
+            } else {
+                throw new FormatException("Unexpected end of input.");
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    LazyString readLazyString() throws FormatException {
+        final char[] b = buf;
+        final int start = pos;
+        final int l = limit;
+        int p = start;
+        boolean escaped = false;
+        while (p < l) {
+            char c = b[p];
+            if (c < 128 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                if (c == '"') {
+                    pos = p + 1;
+                    //Unless the whole input is in the buffer, the buffer is reused, so the string has to be copied
+                    return inMemory ? new JsonString(b, start, p - start, escaped) :
+                            new JsonString(Arrays.copyOfRange(b, start, p), 0, p - start, escaped);
+                }
+                escaped = true;
+                if (p + 1 < l && b[p + 1] == 'u') {
+                    if (p + 5 >= l) {
+                        return null;
+                    }
+                    //Validate now, so decoding the string later never fails
+                    decodeUnicodeEscape(b[p + 2], b[p + 3], b[p + 4], b[p + 5]);
+                    p += 6;
+                } else {
+                    p += 2;
+                }
+                continue;
+            }
+            p++;
+        }
+        return null;
+    }
+
+    @Override
+    @NotNull
+    String readLiteral() throws IOException {
+        final char[] b = buf;
+        int start = pos;
+        int p = start;
+        while (p < limit && !isDelimiter(b[p])) {
+            p++;
+        }
+        pos = p;
+        if (p < limit) {
+            return new String(b, start, p - start);
+        }
+        //Literal crosses the buffer boundary
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        sb.append(b, start, p - start);
+        while (fill()) {
+            p = 0;
+            while (p < limit && !isDelimiter(b[p])) {
+                p++;
+            }
+            sb.append(b, 0, p);
+            pos = p;
+            if (p < limit) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    void skipString() throws IOException, FormatException {
+        final char[] b = buf;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new FormatException("Unexpected end of input.");
+            }
+            int p = pos;
+            final int l = limit;
+            boolean escape = false;
+            while (p < l) {
+                char c = b[p++];
+                if (c < 128 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                    if (c == '"') {
+                        pos = p;
+                        return;
+                    }
+                    //Skip escaped character, possibly in the next block
+                    if (p == l) {
+                        escape = true;
+                        break;
+                    }
+                    p++;
+                }
+            }
+            pos = p;
+            if (escape && readRaw() == -1) {
+                throw new FormatException("Unexpected end of input.");
+            }
+        }
+    }
+
+    @Override
+    void skipContainer() throws IOException, FormatException {
+        final char[] b = buf;
+        int depth = 1;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new FormatException("Unexpected end of input.");
+            }
+            int p = pos;
+            final int l = limit;
+            boolean string = false;
+            while (p < l) {
+                char c = b[p++];
+                if (c < 128 && (CHAR_CLASS[c] & SKIP_SPECIAL) != 0) {
+                    if (c == '"') {
+                        string = true;
+                        break;
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (--depth == 0) {
+                        pos = p;
+                        return;
+                    }
+                }
+            }
+            pos = p;
+            if (string) {
+                skipString();
+            }
+        }
+    }
+
+    @Override
+    boolean skipLiteral() throws IOException {
+        final char[] b = buf;
+        boolean skipped = false;
+        while (true) {
+            int p = pos;
+            while (p < limit && !isDelimiter(b[p])) {
+                p++;
+            }
+            skipped |= p > pos;
+            pos = p;
+            if (p < limit || !fill()) {
+                return skipped;
+            }
+        }
+    }
+
+    @Override
+    boolean matchKey(@NotNull String expected) {
+        final char[] b = buf;
+        final int p = pos;
+        final int end = p + expected.length();
+        //Key chars are never quotes, so a quote right after matching chars closes the key
+        if (end >= limit || b[end] != '"') {
+            return false;
+        }
+        for (int i = p; i < end; i++) {
+            if (b[i] != expected.charAt(i - p)) {
+                return false;
+            }
+        }
+        pos = end + 1;
+        return true;
+    }
+
+    @Override
+    @Nullable
+    Mapping matchKey(@NotNull KeyMatcher matcher) throws IOException {
+        int end = findKeyEnd();
+        if (end < 0) {
+            return null;
+        }
+        Mapping m = matcher.match(buf, pos, end - pos);
+        if (m != null) {
+            pos = end + 1;
+        }
+        return m;
+    }
+
+    @Override
+    int readNumber(boolean integral, boolean floatPrecision) {
+        final char[] b = buf;
+        final int l = limit;
+        int p = pos;
+        boolean negative = p < l && b[p] == '-';
+        if (negative) {
+            p++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        boolean decimal = false;
+        int d;
+
+        int start = p;
+        while (p < l && (d = b[p] - '0') >= 0 && d <= 9) {
+            mantissa = mantissa * 10 + d;
+            p++;
+        }
+        int digits = p - start;
+        if (digits == 0 || digits > MAX_MANTISSA_DIGITS) {
+            return ValueToken.TYPE_VALUE;
+        }
+        if (p < l && b[p] == '.') {
+            decimal = true;
+            start = ++p;
+            while (p < l && (d = b[p] - '0') >= 0 && d <= 9) {
+                mantissa = mantissa * 10 + d;
+                p++;
+            }
+            if (p == start || digits + p - start > MAX_MANTISSA_DIGITS) {
+                return ValueToken.TYPE_VALUE;
+            }
+            exponent = start - p;
+        }
+        if (p < l && (b[p] == 'e' || b[p] == 'E')) {
+            decimal = true;
+            boolean negativeExponent = false;
+            if (++p < l && (b[p] == '-' || b[p] == '+')) {
+                negativeExponent = b[p++] == '-';
+            }
+            start = p;
+            int e = 0;
+            while (p < l && (d = b[p] - '0') >= 0 && d <= 9) {
+                e = e * 10 + d;
+                p++;
+            }
+            if (p == start || p - start > 3) {
+                return ValueToken.TYPE_VALUE;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        //Literal must be followed by a delimiter, otherwise it is not a plain number
+        if (p >= l || !isDelimiter(b[p])) {
+            return ValueToken.TYPE_VALUE;
+        }
+
+        if (!decimal) {
+            if (negative && mantissa == 0 && !integral) {
+                return ValueToken.TYPE_VALUE; //Keep negative zero
+            }
+            longValue = negative ? -mantissa : mantissa;
+            pos = p;
+            return ValueToken.TYPE_LONG;
+        }
+        if (integral) {
+            return ValueToken.TYPE_VALUE;
+        }
+        double v = toDouble(mantissa, exponent, floatPrecision);
+        if (Double.isNaN(v)) {
+            return ValueToken.TYPE_VALUE;
+        }
+        doubleValue = negative ? -v : v;
+        pos = p;
+        return ValueToken.TYPE_DOUBLE;
+    }
+
+    @Override
+    int readBoolean() {
+        final char[] b = buf;
+        final int l = limit;
+        int p = pos;
+        boolean value;
+        if (l - p >= 4 && b[p] == 't' && b[p + 1] == 'r' && b[p + 2] == 'u' && b[p + 3] == 'e') {
+            value = true;
+            p += 4;
+        } else if (l - p >= 5 && b[p] == 'f' && b[p + 1] == 'a' && b[p + 2] == 'l' && b[p + 3] == 's' && b[p + 4] == 'e') {
+            value = false;
+            p += 5;
+        } else {
+            return ValueToken.TYPE_VALUE;
+        }
+        if (p >= l || !isDelimiter(b[p])) {
+            return ValueToken.TYPE_VALUE;
+        }
+        booleanValue = value;
+        pos = p;
+        return ValueToken.TYPE_BOOLEAN;
+    }
+
+    private int readRaw() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        if (inMemory) {
+            return false;
+        }
+        int n = source.read(buf, 0, buf.length);
+        pos = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /**
+     * Finds the closing quote of a plain ASCII key starting at the cursor,
+     * making sure the whole key is in the buffer.
+     * @return index of the closing quote or -1 if the key is too long, is not plain ASCII or input ends
+     */
+    private int findKeyEnd() throws IOException {
+        final char[] b = buf;
+        while (true) {
+            int max = Math.min(limit, pos + MAX_KEY_LENGTH + 1);
+            for (int p = pos; p < max; p++) {
+                char c = b[p];
+                if (c == '"') {
+                    return p;
+                }
+                if (c == '\\' || c >= 128) {
+                    return -1;
+                }
+            }
+            if (max - pos > MAX_KEY_LENGTH || inMemory) {
+                return -1; //Longer than any valid key or input ends
+            }
+            //Key crosses the buffer boundary, move it to the beginning and read more
+            int n = limit - pos;
+            System.arraycopy(b, pos, b, 0, n);
+            pos = 0;
+            limit = n;
+            int r = source.read(b, n, b.length - n);
+            if (r <= 0) {
+                return -1;
+            }
+            limit += r;
+        }
+    }
+
+}
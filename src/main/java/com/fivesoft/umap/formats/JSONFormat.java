@@ -1,10 +1,16 @@
 package com.fivesoft.umap.formats;
 
+import com.fivesoft.umap.data.LazyString;
 import com.fivesoft.umap.format.WriterContext;
 import com.fivesoft.umap.format.*;
+import com.fivesoft.umap.template.KeyEncoding;
+import com.fivesoft.umap.template.MapTemplate;
+import com.fivesoft.umap.template.Mapping;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 public class JSONFormat implements Format {
 
@@ -13,14 +19,27 @@ public class JSONFormat implements Format {
     public static final String MIME_TYPE = "application/json";
     public static final String[] EXTENSIONS = new String[]{"json"};
 
+    //Whether every written root map is terminated with a new line, as in JSON Lines
+    private final boolean lines;
+
+    public JSONFormat() {
+        this(false);
+    }
+
+    JSONFormat(boolean lines) {
+        this.lines = lines;
+    }
+
     @Override
     public @NotNull FormatReader createReader(@NotNull InputStream in, FormatReader.@Nullable Options options) {
-        return new JsonFormatReader(options != null ? options.encoding : DEFAULT_ENCODING);
+        ReaderOptions ro = options instanceof ReaderOptions o ? o : null;
+        return new JsonFormatReader(options != null ? options.encoding : DEFAULT_ENCODING,
+                ro != null && ro.structuralIndex, ro != null && ro.lazyStrings);
     }
 
     @Override
     public @NotNull FormatWriter createWriter(@NotNull OutputStream out, FormatWriter.@Nullable Options options) {
-        return new JsonFormatWriter(options != null ? options.encoding : DEFAULT_ENCODING);
+        return new JsonFormatWriter(options != null ? options.encoding : DEFAULT_ENCODING, lines);
     }
 
     @Override
@@ -38,35 +57,110 @@ public class JSONFormat implements Format {
         return MIME_TYPE;
     }
 
+    /**
+     * Reader options specific to JSON format.
+     */
+    public static class ReaderOptions extends FormatReader.Options {
+
+        /**
+         * Whether UTF-8 input in memory should be parsed in two stages.<br>
+         * First, positions of structural characters of the input (quotes, brackets, colons and commas)
+         * are indexed, eight bytes at a time. Then, the input is parsed using the index to find ends of strings and keys.
+         * This is faster for large documents.<br>
+         * Only byte arrays and {@link BytesInputStream}s are indexed. Other streams are parsed as usual,
+         * so they are not read past the end of the root value and their length doesn't affect memory usage.
+         * Other encodings are parsed as usual as well.
+         */
+        public final boolean structuralIndex;
+
+        /**
+         * Whether values of string fields should be decoded only when they are accessed.<br>
+         * Raw values are kept until then, including escape sequences. Raw values are copied out of the input,
+         * so the input array may be reused after reading. Only arrays owned by their {@link BytesInputStream}
+         * (see {@link BytesInputStream#isOwned()}) are not copied, but values keep the whole array in memory
+         * as long as the map is referenced.<br>
+         * Strings in arrays and strings crossing boundaries of the read buffer are decoded immediately.
+         */
+        public final boolean lazyStrings;
+
+        public ReaderOptions(@NotNull String encoding, boolean ignoreUnknownKeys, int maxDetailLevel,
+                             boolean structuralIndex, boolean lazyStrings) {
+            super(encoding, ignoreUnknownKeys, maxDetailLevel);
+            this.structuralIndex = structuralIndex;
+            this.lazyStrings = lazyStrings;
+        }
+
+        public ReaderOptions(@NotNull String encoding, boolean ignoreUnknownKeys, int maxDetailLevel,
+                             boolean structuralIndex) {
+            this(encoding, ignoreUnknownKeys, maxDetailLevel, structuralIndex, false);
+        }
+
+        public ReaderOptions(@NotNull String encoding, boolean ignoreUnknownKeys, boolean structuralIndex) {
+            this(encoding, ignoreUnknownKeys, Integer.MAX_VALUE, structuralIndex);
+        }
+
+        public ReaderOptions(boolean ignoreUnknownKeys, boolean structuralIndex) {
+            this(DEFAULT_ENCODING, ignoreUnknownKeys, structuralIndex);
+        }
+
+        public ReaderOptions(boolean structuralIndex) {
+            this(false, structuralIndex);
+        }
+
+    }
+
     private static class JsonFormatWriter extends TextFormatWriter {
 
+        //Keys with quotes and a colon, followed by a space when pretty printing
+        private static final KeyEncoding<char[]> KEY = new KeyEncoding<>(k -> ('"' + JsonEscaper.escape(k) + "\":").toCharArray());
+        private static final KeyEncoding<char[]> PRETTY_KEY = new KeyEncoding<>(k -> ('"' + JsonEscaper.escape(k) + "\": ").toCharArray());
+        //The same, already encoded as UTF-8
+        private static final KeyEncoding<byte[]> KEY_UTF8 = new KeyEncoding<>(k -> ('"' + JsonEscaper.escape(k) + "\":").getBytes(StandardCharsets.UTF_8));
+        private static final KeyEncoding<byte[]> PRETTY_KEY_UTF8 = new KeyEncoding<>(k -> ('"' + JsonEscaper.escape(k) + "\": ").getBytes(StandardCharsets.UTF_8));
+
+        private final boolean lines;
+
         /**
          * Creates a new instance of TextFormatWriter with the specified encoding.
          *
          * @param encoding The encoding to use. For example, "UTF-8".
+         * @param lines    Whether the root map should be terminated with a new line.
          * @throws IllegalArgumentException If the specified encoding is not supported or invalid.
          */
-        public JsonFormatWriter(@NotNull String encoding) {
+        public JsonFormatWriter(@NotNull String encoding, boolean lines) {
             super(encoding);
+            this.lines = lines;
         }
 
         @Override
         public void writeRootStart(@NotNull Writer out, @NotNull WriterContext context) throws IOException, FormatException {
             // No root start in JSON
+            if(lines && context.getOptions().pretty){
+                throw new FormatException("JSON Lines records must be written in a single line. Disable pretty printing.");
+            }
         }
 
         @Override
         public void writeRootEnd(@NotNull Writer out, @NotNull WriterContext context) throws IOException, FormatException {
             // No root end in JSON
+            if(lines){
+                out.write('\n');
+            }
         }
 
         @Override
         public void writeMappingPrefix(@NotNull Writer out, @NotNull WriterContext context, @NotNull String key,
                                        boolean optional, boolean valueAssigned, int index, boolean last) throws IOException {
-            writeNewLineIfPretty(out, context);
-            writeIndentationIfPretty(out, context);
-            out.write('"' + encodeString(key) + "\":");
-            writeSpaceIfPretty(out, context);
+            boolean pretty = context.getOptions().pretty;
+            if(pretty){
+                writeNewLine(out);
+                writeIndentation(out, context);
+            }
+            if(out instanceof Utf8StreamWriter w){
+                w.writeBytes(getEncodedKey(context, key, pretty ? PRETTY_KEY_UTF8 : KEY_UTF8));
+            } else {
+                out.write(getEncodedKey(context, key, pretty ? PRETTY_KEY : KEY));
+            }
         }
 
         @Override
@@ -96,7 +190,9 @@ public class JSONFormat implements Format {
 
         @Override
         public void writeValueString(@NotNull Writer out, @NotNull WriterContext context, @NotNull String value) throws IOException {
-            out.write('"' + encodeString(value) + '"');
+            out.write('"');
+            JsonEscaper.write(out, value);
+            out.write('"');
         }
 
         @Override
@@ -121,18 +217,22 @@ public class JSONFormat implements Format {
 
         @Override
         public void writeValueLong(@NotNull Writer out, @NotNull WriterContext context, long value) throws IOException {
-            out.write(String.valueOf(value));
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueFloat(@NotNull Writer out, @NotNull WriterContext context, float value) throws IOException {
-            writeValueDouble(out, context, value);
+            if (Float.isFinite(value)) {
+                writeNumber(out, value);
+            } else {
+                writeValueString(out, context, String.valueOf(value));
+            }
         }
 
         @Override
         public void writeValueDouble(@NotNull Writer out, @NotNull WriterContext context, double value) throws IOException {
             if (Double.isFinite(value)) {
-                out.write(String.valueOf(value));
+                writeNumber(out, value);
             } else {
                 writeValueString(out, context, String.valueOf(value));
             }
@@ -170,214 +270,363 @@ public class JSONFormat implements Format {
             out.write(']');
         }
 
-        private static String encodeString(@NotNull String s){
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0, length = s.length(); i < length; i++) {
-                char c = s.charAt(i);
-                /*
-                 * From RFC 4627, "All Unicode characters may be placed within the
-                 * quotation marks except for the characters that must be escaped:
-                 * quotation mark, reverse solidus, and the control characters
-                 * (U+0000 through U+001F)."
-                 */
-                switch (c) {
-                    case '"':
-                    case '\\':
-                    case '/':
-                        sb.append('\\').append(c);
-                        break;
-                    case '\t':
-                        sb.append("\\t");
-                        break;
-                    case '\b':
-                        sb.append("\\b");
-                        break;
-                    case '\n':
-                        sb.append("\\n");
-                        break;
-                    case '\r':
-                        sb.append("\\r");
-                        break;
-                    case '\f':
-                        sb.append("\\f");
-                        break;
-                    default:
-                        if (c <= 0x1F) {
-                            sb.append(String.format("\\u%04x", (int) c));
-                        } else {
-                            sb.append(c);
-                        }
-                        break;
-                }
-            }
-            return sb.toString();
-        }
-
     }
 
     private static class JsonFormatReader extends TextFormatReader {
 
-        public JsonFormatReader(@NotNull String encoding) {
+        //UTF-8 input is scanned directly as bytes, without decoding it through a Reader
+        private final boolean utf8;
+        //Whether UTF-8 input in memory is indexed before parsing
+        private final boolean indexed;
+        //Whether string values of map fields are decoded on first access
+        private final boolean lazyStrings;
+
+        //Tokenizers for the currently read input, recreated when a different input is passed
+        private CharJsonTokenizer charTokenizer;
+        private Utf8JsonTokenizer utf8Tokenizer;
+
+        public JsonFormatReader(@NotNull String encoding, boolean indexed, boolean lazyStrings) {
             super(encoding);
+            this.utf8 = Charset.forName(encoding).equals(StandardCharsets.UTF_8);
+            this.indexed = indexed;
+            this.lazyStrings = lazyStrings;
         }
 
         @Override
-        public void readRootStart(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException {
-            int c = getFirstNonWhitespaceChar(in);
-            if(c != '{'){
-                throw new FormatException("Missing root bracket.");
+        public void readRootStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
+            if(scanBytes(in)){
+                readRootStart(getTokenizer(in));
+            } else {
+                super.readRootStart(in, context);
+            }
+        }
+
+        @Override
+        public void readRootArrayStart(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
+            if(scanBytes(in)){
+                readRootArrayStart(getTokenizer(in));
+            } else {
+                super.readRootArrayStart(in, context);
+            }
+        }
+
+        @Override
+        public @Nullable String nextKeyToken(@NotNull InputStream in, @NotNull ReaderContext context,
+                                             @Nullable String expectedKey) throws IOException, FormatException {
+            return scanBytes(in) ? nextKey(getTokenizer(in), context, expectedKey) : super.nextKeyToken(in, context, expectedKey);
+        }
+
+        @Override
+        public @Nullable ValueToken nextValueToken(@NotNull InputStream in, @NotNull ReaderContext context, @NotNull String key,
+                                                   @NotNull Class<?> valueType, boolean optional, boolean inArray) throws IOException, FormatException {
+            return scanBytes(in) ? nextValueToken(getTokenizer(in), valueType, lazyStrings && !inArray) :
+                    super.nextValueToken(in, context, key, valueType, optional, inArray);
+        }
+
+        @Override
+        public boolean skipValue(@NotNull InputStream in, @NotNull ReaderContext context,
+                                 @Nullable Mapping mapping) throws IOException, FormatException {
+            return scanBytes(in) ? skipValue(getTokenizer(in)) : super.skipValue(in, context, mapping);
+        }
+
+        @Override
+        public void readRootEnd(@NotNull InputStream in, @NotNull ReaderContext context) throws IOException, FormatException {
+            if(scanBytes(in)){
+                getTokenizer(in).syncSource();
+            } else {
+                super.readRootEnd(in, context);
             }
         }
 
+        @Override
+        public boolean hasNextRoot(@NotNull InputStream in) throws IOException, FormatException {
+            //Root objects may be separated by any whitespace, including new lines of JSON Lines
+            return scanBytes(in) ? getTokenizer(in).peek() != -1 : super.hasNextRoot(in);
+        }
+
+        @Override
+        public void readRootStart(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException {
+            readRootStart(getTokenizer(in));
+        }
+
+        @Override
+        public void readRootArrayStart(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException {
+            readRootArrayStart(getTokenizer(in));
+        }
+
         @Override
         public @Nullable String nextKey(@NotNull Reader in,
                                         @NotNull ReaderContext context,
-                                        @NotNull String expectedKey) throws IOException, FormatException {
-            int c = getFirstNonWhitespaceChar(in);
+                                        @Nullable String expectedKey) throws IOException, FormatException {
+            return nextKey(getTokenizer(in), context, expectedKey);
+        }
+
+        @Override
+        public @Nullable ValueToken nextValueToken(@NotNull Reader in, @NotNull ReaderContext context, @NotNull String key,
+                                               @NotNull Class<?> valueType, boolean optional, boolean inArray) throws IOException, FormatException {
+            return nextValueToken(getTokenizer(in), valueType, lazyStrings && !inArray);
+        }
+
+        @Override
+        public boolean skipValue(@NotNull Reader in, @NotNull ReaderContext context,
+                                 @Nullable Mapping mapping) throws IOException, FormatException {
+            return skipValue(getTokenizer(in));
+        }
+
+        @Override
+        public void readRootEnd(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException {
+
+        }
+
+        @Override
+        public @NotNull RootFramer createRootFramer(@NotNull MapTemplate template) throws FormatException {
+            if(!utf8){
+                throw new FormatException("Push reading of JSON requires UTF-8 encoding.");
+            }
+            return new JsonRootFramer();
+        }
+
+        @Override
+        public boolean hasNextRoot(@NotNull Reader in) throws IOException {
+            return getTokenizer(in).peek() != -1;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            charTokenizer = null;
+            utf8Tokenizer = null;
+        }
+
+        private static void readRootStart(@NotNull JsonTokenizer t) throws IOException, FormatException {
+            if(t.next() != '{'){
+                throw new FormatException("Missing root bracket.");
+            }
+        }
+
+        private static void readRootArrayStart(@NotNull JsonTokenizer t) throws IOException, FormatException {
+            if(t.next() != '['){
+                throw new FormatException("Missing root array bracket.");
+            }
+        }
+
+        @Nullable
+        private static String nextKey(@NotNull JsonTokenizer t, @NotNull ReaderContext context,
+                                      @Nullable String expectedKey) throws IOException, FormatException {
+            int c = t.next();
+            if(c == ',')
+                c = t.next(); // Skip comma from previous entry if any
             if(c == '}')
                 return null; // End of map
-            if(c == ',')
-                c = getFirstNonWhitespaceChar(in); // Skip comma from previous entry if any
 
             if(c != '"'){
-                throw new FormatException("Missing key quote.");
+                throw new FormatException(c == -1 ? "Unexpected end of input." : "Missing key quote.");
             }
-            StringBuilder sb = new StringBuilder();
-            while ((c = in.read()) != -1) {
-                if(c == '"'){
-                    c = getFirstNonWhitespaceChar(in);
-                    if(c != ':'){
-                        throw new FormatException("Missing colon after key.");
-                    }
-                    return sb.toString();
-                }
-                sb.append((char) c);
+            String key;
+            if(expectedKey != null && t.matchKey(expectedKey)){
+                //Keys are written in template order, so the predicted key is almost always the next one
+                key = expectedKey;
+            } else {
+                //Resolve known keys to names of their mappings, without creating new strings
+                MapTemplate template = context.getCurrentTemplate();
+                Mapping m = template != null ? t.matchKey(template.getKeyMatcher()) : null;
+                key = m != null ? m.getName() : t.readString();
+            }
+            if(t.next() != ':'){
+                throw new FormatException("Missing colon after key.");
             }
-            return null;
+            return key;
         }
 
-        @Override
-        public @Nullable ValueToken nextValueToken(@NotNull Reader in, @NotNull ReaderContext context, @NotNull String key,
-                                               @NotNull Class<?> valueType, boolean optional, boolean inArray) throws IOException, FormatException {
-
-            int c = getFirstNonWhitespaceChar(in);
+        @Nullable
+        private static ValueToken nextValueToken(@NotNull JsonTokenizer t, @NotNull Class<?> valueType,
+                                                 boolean lazy) throws IOException, FormatException {
+            int c = t.peek();
+            if(c == ',' || c == ';'){
+                t.skip(); // Skip comma from previous entry if any
+                c = t.peek();
+            }
             if(c == -1)
                 throw new FormatException("Unexpected end of input.");
-            if(c == ',' || c == ';')
-                c = getFirstNonWhitespaceChar(in); // Skip comma from previous entry if any
 
             if(c == '{'){
+                t.skip();
                 return ValueToken.map(false);
             } else if(c == '[') {
+                t.skip();
                 return ValueToken.array(false);
             } else if(c == ']'){
+                t.skip();
                 return null;
             }
 
-            StringBuilder sb = new StringBuilder();
-            String s = null;
-            boolean isLast = false;
+            String s;
             if(c == '"'){
-                //Beginning of string
-                boolean escape = false;
-                while ((c = in.read()) != -1) {
-                    if(escape){
-                        switch (c) {
-                            case 'b':
-                                sb.append('\b');
-                                break;
-                            case 'f':
-                                sb.append('\f');
-                                break;
-                            case 'n':
-                                sb.append('\n');
-                                break;
-                            case 'r':
-                                sb.append('\r');
-                                break;
-                            case 't':
-                                sb.append('\t');
-                                break;
-                            case 'u':
-                                //Unicode escape
-                                StringBuilder hex = new StringBuilder();
-                                for (int i = 0; i < 4; i++) {
-                                    c = in.read();
-                                    if(c == -1){
-                                        throw new FormatException("Unexpected end of input.");
-                                    }
-                                    hex.append((char) c);
-                                }
-                                try {
-                                    sb.append((char) Integer.parseInt(hex.toString(), 16));
-                                } catch (NumberFormatException e) {
-                                    throw new FormatException("Invalid unicode escape sequence: \\u" + hex);
-                                }
-                                break;
-                            default:
-                                sb.append((char) c);
-                                break;
-                        }
-                    } else {
-                        if(c == '"'){
-                            s = sb.toString();
-                            break;
-                        } else if(c == '\\'){
-                            escape = true;
-                        } else {
-                            sb.append((char) c);
-                        }
+                t.skip();
+                if(lazy && valueType == String.class){
+                    LazyString ls = t.readLazyString();
+                    if(ls != null){
+                        return new ValueToken(ls, readValueEnd(t));
                     }
                 }
-                if (s == null) {
-                    throw new FormatException("Unexpected end of input.");
-                }
-
-                c = getFirstNonWhitespaceChar(in);
-                if(c == '}' || c == ']'){
-                    isLast = true;
-                } else if (c != ',' && c != ';' && c != -1) {
-                    throw new FormatException("Unexpected character after string value: " + (char) c);
-                }
+                s = t.readString();
             } else {
-                //Another value type
-                sb.append((char) c);
-                while ((c = in.read()) != -1) {
-                    if(c == ',' || c == ';'){
-                        break;
-                    }
-                    if(Character.isWhitespace(c)){
-                        c = getFirstNonWhitespaceChar(in);
-                    }
-                    if(c == '}' || c == ']'){
-                        isLast = true;
-                        break;
-                    }
-                    sb.append((char) c);
+                //Parse numbers and booleans straight into the token when the template expects them
+                switch (readPrimitive(t, valueType)) {
+                    case ValueToken.TYPE_LONG:
+                        return ValueToken.ofLong(t.longValue, readValueEnd(t));
+                    case ValueToken.TYPE_DOUBLE:
+                        return ValueToken.ofDouble(t.doubleValue, readValueEnd(t));
+                    case ValueToken.TYPE_BOOLEAN:
+                        return ValueToken.ofBoolean(t.booleanValue, readValueEnd(t));
+                }
+                s = t.readLiteral();
+                if(s.isEmpty()){
+                    throw new FormatException("Missing value.");
                 }
-                s = sb.toString();
                 if(s.equalsIgnoreCase("null")){
                     s = null;
                 }
             }
-            return new ValueToken(s, isLast);
+            return new ValueToken(s, readValueEnd(t));
         }
 
-        @Override
-        public void readRootEnd(@NotNull Reader in, @NotNull ReaderContext context) throws IOException, FormatException {
+        private static boolean skipValue(@NotNull JsonTokenizer t) throws IOException, FormatException {
+            int c = t.peek();
+            if(c == '{' || c == '['){
+                t.skip();
+                t.skipContainer();
+            } else if(c == '"'){
+                t.skip();
+                t.skipString();
+            } else if(c == -1){
+                throw new FormatException("Unexpected end of input.");
+            } else if(!t.skipLiteral()){
+                throw new FormatException("Missing value.");
+            }
+            return readValueEnd(t);
+        }
+
+        private static int readPrimitive(@NotNull JsonTokenizer t, @NotNull Class<?> valueType) throws IOException {
+            if(valueType == Integer.class || valueType == Long.class ||
+                    valueType == Short.class || valueType == Byte.class){
+                return t.readNumber(true, false);
+            } else if(valueType == Double.class){
+                return t.readNumber(false, false);
+            } else if(valueType == Float.class){
+                return t.readNumber(false, true);
+            } else if(valueType == Boolean.class){
+                return t.readBoolean();
+            }
+            return ValueToken.TYPE_VALUE;
+        }
+
+        /**
+         * Checks whether the input should be scanned as UTF-8 bytes.
+         * Characters of {@link CharSequenceInputStream} are read as they are, through {@link TextFormatReader}.
+         */
+        private boolean scanBytes(@NotNull InputStream in) {
+            return utf8 && !(in instanceof CharSequenceInputStream);
+        }
+
+        @NotNull
+        private CharJsonTokenizer getTokenizer(@NotNull Reader in) {
+            if(charTokenizer == null || charTokenizer.getSource() != in){
+                charTokenizer = new CharJsonTokenizer(in);
+            }
+            return charTokenizer;
+        }
+
+        @NotNull
+        private Utf8JsonTokenizer getTokenizer(@NotNull InputStream in) throws IOException {
+            if(isClosed()){
+                throw new IOException("Reader is closed");
+            }
+            if(utf8Tokenizer == null || utf8Tokenizer.getSource() != in){
+                utf8Tokenizer = new Utf8JsonTokenizer(in, indexed);
+            }
+            return utf8Tokenizer;
+        }
 
+        /**
+         * Consumes separator or closing bracket after a value.
+         * @return true if the value was the last one in the enclosing map or array
+         */
+        private static boolean readValueEnd(@NotNull JsonTokenizer t) throws IOException, FormatException {
+            int c = t.peek();
+            if(c == '}' || c == ']'){
+                t.skip();
+                return true;
+            } else if(c == ',' || c == ';'){
+                t.skip();
+            } else if(c != -1){
+                throw new FormatException("Unexpected character after value: " + (char) c);
+            }
+            return false;
         }
 
-        private static int getFirstNonWhitespaceChar(@NotNull Reader in) throws IOException {
-            int c;
-            while ((c = in.read()) != -1) {
-                if (!Character.isWhitespace(c)) {
-                    return c;
+    }
+
+    /**
+     * Finds ends of root maps by counting brackets outside of strings.
+     */
+    private static final class JsonRootFramer extends RootFramer {
+
+        //Number of bytes scanned so far, relative to the start of the map
+        private int scanned;
+        private int depth;
+        private boolean started;
+        private boolean inString;
+        private boolean escape;
+
+        @Override
+        public int scan(byte[] buf, int from, int to) throws FormatException {
+            for(int p = from + scanned; p < to; p++){
+                byte c = buf[p];
+                if(inString){
+                    if(escape){
+                        escape = false;
+                    } else if(c == '\\'){
+                        escape = true;
+                    } else if(c == '"'){
+                        inString = false;
+                    }
+                } else if(!started){
+                    //Same whitespace as skipped by the tokenizers, so the same input is accepted
+                    if(JsonTokenizer.isWhitespace(c & 0xFF)){
+                        continue;
+                    }
+                    if(c != '{'){
+                        throw new FormatException("Missing root bracket.");
+                    }
+                    started = true;
+                    depth = 1;
+                } else if(c == '"'){
+                    inString = true;
+                } else if(c == '{' || c == '['){
+                    depth++;
+                } else if((c == '}' || c == ']') && --depth == 0){
+                    return p + 1 - from;
                 }
             }
+            scanned = to - from;
             return -1;
         }
 
+        @Override
+        public boolean hasStarted() {
+            return started;
+        }
+
+        @Override
+        public void reset() {
+            scanned = 0;
+            depth = 0;
+            started = false;
+            inString = false;
+            escape = false;
+        }
+
     }
 
 }
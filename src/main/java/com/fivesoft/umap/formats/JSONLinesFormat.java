@@ -0,0 +1,125 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.template.MapTemplate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * JSON Lines (also known as NDJSON) format. Every line holds a single JSON map.<br>
+ * Each written map is terminated with a new line, so maps written one after another
+ * to the same output stream form a valid JSON Lines file. Pretty printing is not supported.<br>
+ * Reading is the same as in {@link JSONFormat}. Use
+ * {@link com.fivesoft.umap.template.MapTemplate#readAll(java.io.InputStream, com.fivesoft.umap.format.Format,
+ * com.fivesoft.umap.format.FormatReader.Options)} to read all maps of the file lazily.
+ */
+public class JSONLinesFormat extends JSONFormat {
+
+    public static final String NAME = "JSON Lines";
+    public static final String MIME_TYPE = "application/jsonl";
+    public static final String[] EXTENSIONS = new String[]{"jsonl", "ndjson"};
+
+    public JSONLinesFormat() {
+        super(true);
+    }
+
+    /**
+     * Reads all maps of a JSON Lines file in parallel.<br>
+     * The file is memory-mapped and split into ranges aligned to line boundaries,
+     * which are parsed independently by the fork-join pool of the stream (the common pool,
+     * unless the stream is consumed by a task of another {@link java.util.concurrent.ForkJoinPool}).<br>
+     * The returned stream is unordered and must be closed to release the file.
+     * Reading errors are thrown as {@link UncheckedIOException} and
+     * {@link com.fivesoft.umap.format.UncheckedFormatException}.
+     * @param file     the JSON Lines file
+     * @param template the template of every map in the file
+     * @param options  the reading options or null to use defaults
+     * @return parallel stream of the maps of the file
+     * @throws IOException if the file cannot be opened
+     */
+    @NotNull
+    public Stream<UMap> readParallel(@NotNull Path file, @NotNull MapTemplate template,
+                                     FormatReader.@Nullable Options options) throws IOException {
+        return streamFile(file, template, options).unordered();
+    }
+
+    /**
+     * Reads all maps of a JSON Lines file in parallel, the same way as
+     * {@link #readParallel(Path, MapTemplate, FormatReader.Options)}, and collects them to an array
+     * in the order of the file.
+     * @param file     the JSON Lines file
+     * @param template the template of every map in the file
+     * @param options  the reading options or null to use defaults
+     * @return array of the maps of the file
+     * @throws IOException if the file cannot be opened
+     */
+    @NotNull
+    public UArray readArrayParallel(@NotNull Path file, @NotNull MapTemplate template,
+                                    FormatReader.@Nullable Options options) throws IOException {
+        UArray.Builder b = new UArray.Builder(template.asArray());
+        try (Stream<UMap> maps = streamFile(file, template, options)) {
+            //Ranges are still parsed in parallel, only adding to the builder follows the file order
+            maps.forEachOrdered(b::add);
+        }
+        return b.build();
+    }
+
+    @NotNull
+    private Stream<UMap> streamFile(@NotNull Path file, @NotNull MapTemplate template,
+                                    FormatReader.@Nullable Options options) throws IOException {
+        Objects.requireNonNull(template, "Template cannot be null");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return streamChannel(channel, template, options);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a parallel stream of the maps of the channel, which is closed together with the stream.
+     */
+    @NotNull
+    Stream<UMap> streamChannel(@NotNull FileChannel channel, @NotNull MapTemplate template,
+                               FormatReader.@Nullable Options options) throws IOException {
+        options = FormatReader.Options.getOrDefault(options);
+        JsonLinesSpliterator spliterator = new JsonLinesSpliterator(channel, template, this, options,
+                0, channel.size());
+        return StreamSupport.stream(spliterator, true)
+                .onClose(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public @Nullable String getName() {
+        return NAME;
+    }
+
+    @Override
+    public @NotNull String[] getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public @NotNull String getMimeType() {
+        return MIME_TYPE;
+    }
+
+}
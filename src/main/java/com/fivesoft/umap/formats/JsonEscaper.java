@@ -0,0 +1,84 @@
+package com.fivesoft.umap.formats;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Escapes strings written by the {@link JSONFormat} writer.<br>
+ * Escape sequences of ASCII characters are looked up in a table. Runs of characters, which do not need
+ * escaping, are written at once, without copying them to an intermediate buffer.<br>
+ * From RFC 4627, "All Unicode characters may be placed within the quotation marks except for
+ * the characters that must be escaped: quotation mark, reverse solidus, and the control characters
+ * (U+0000 through U+001F)." The solidus is escaped as well.
+ */
+final class JsonEscaper {
+
+    //Escape sequences of ASCII characters, null for characters written as they are
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        for (int c = 0; c <= 0x1F; c++) {
+            ESCAPES[c] = String.format("\\u%04x", c);
+        }
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['/'] = "\\/";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\f'] = "\\f";
+    }
+
+    private JsonEscaper() {
+    }
+
+    /**
+     * Escapes special characters of the string.
+     * @param s the string
+     * @return the escaped string, without quotes
+     */
+    @NotNull
+    static String escape(@NotNull String s) {
+        StringWriter w = new StringWriter(s.length() + 8);
+        try {
+            write(w, s);
+        } catch (IOException e) {
+            //StringWriter never throws
+            throw new UncheckedIOException(e);
+        }
+        return w.toString();
+    }
+
+    /**
+     * Writes the string with its special characters escaped, without quotes.
+     * @param out the writer
+     * @param s   the string
+     */
+    static void write(@NotNull Writer out, @NotNull String s) throws IOException {
+        final String[] escapes = ESCAPES;
+        final int length = s.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            String e;
+            if (c < 128 && (e = escapes[c]) != null) {
+                if (i > start) {
+                    out.write(s, start, i - start);
+                }
+                out.write(e);
+                start = i + 1;
+            }
+        }
+        if (start == 0) {
+            out.write(s);
+        } else if (start < length) {
+            out.write(s, start, length - start);
+        }
+    }
+
+}
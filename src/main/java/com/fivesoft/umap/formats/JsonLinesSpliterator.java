@@ -0,0 +1,221 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.Format;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.template.MapTemplate;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits a range of a JSON Lines file into smaller ranges, which are read in parallel.<br>
+ * Every range starts at the beginning of a line and ends after a new line (or at the end of the file),
+ * so ranges can be parsed independently of each other. Ranges are memory-mapped in windows
+ * of at most {@link #MAX_WINDOW} bytes, when they are read. Every window ends after the last new line,
+ * which fits in it, so lines longer than a window cannot be read.
+ */
+final class JsonLinesSpliterator implements Spliterator<UMap> {
+
+    //Ranges smaller than this are not split any further
+    static final long MIN_SPLIT = 1 << 20;
+    //Memory-mapped buffers are limited to 2 GB
+    static final long MAX_WINDOW = 1 << 30;
+
+    private final FileChannel channel;
+    private final MapTemplate template;
+    private final Format format;
+    private final FormatReader.Options options;
+    //Maximum size of a window in bytes
+    private final long maxWindow;
+
+    //Position of the next unread window
+    private long position;
+    private long end;
+
+    //Maps of the currently read window
+    private Iterator<UMap> window;
+
+    JsonLinesSpliterator(@NotNull FileChannel channel, @NotNull MapTemplate template, @NotNull Format format,
+                         @NotNull FormatReader.Options options, long position, long end) {
+        this(channel, template, format, options, position, end, MAX_WINDOW);
+    }
+
+    JsonLinesSpliterator(@NotNull FileChannel channel, @NotNull MapTemplate template, @NotNull Format format,
+                         @NotNull FormatReader.Options options, long position, long end, long maxWindow) {
+        if (maxWindow <= 0 || maxWindow > MAX_WINDOW) {
+            throw new IllegalArgumentException("Invalid window size: " + maxWindow);
+        }
+        this.channel = channel;
+        this.template = template;
+        this.format = format;
+        this.options = options;
+        this.position = position;
+        this.end = end;
+        this.maxWindow = maxWindow;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super UMap> action) {
+        while (window == null || !window.hasNext()) {
+            if (position >= end) {
+                window = null;
+                return false;
+            }
+            window = nextWindow();
+        }
+        action.accept(window.next());
+        return true;
+    }
+
+    @Override
+    public Spliterator<UMap> trySplit() {
+        long remaining = end - position;
+        if (remaining < MIN_SPLIT * 2) {
+            return null;
+        }
+        long mid;
+        try {
+            mid = lineStart(position + remaining / 2, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (mid >= end) {
+            //The second half is a single line
+            return null;
+        }
+        JsonLinesSpliterator prefix = new JsonLinesSpliterator(channel, template, format, options, position, mid, maxWindow);
+        //This spliterator keeps the suffix, so the encounter order is preserved
+        position = mid;
+        return prefix.windowFrom(this);
+    }
+
+    @Override
+    public long estimateSize() {
+        //Number of bytes left, which is proportional to the number of maps
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * Takes over the window being read by the given spliterator, which is always before the split point.
+     */
+    private JsonLinesSpliterator windowFrom(JsonLinesSpliterator other) {
+        window = other.window;
+        other.window = null;
+        return this;
+    }
+
+    private Iterator<UMap> nextWindow() {
+        try {
+            long start = position;
+            long windowEnd = end - start > maxWindow ? lastLineEnd(start, start + maxWindow) : end;
+            if (windowEnd <= start) {
+                throw new IOException("Line is longer than " + maxWindow + " bytes at position: " + start);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, windowEnd - start);
+            position = windowEnd;
+            return template.iterateFormat(new ByteBufferInputStream(buffer), format, options);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finds the end of the last line, which ends before the given limit.
+     * @return the position after the last new line in the range or the start, when there are no new lines in it
+     */
+    private long lastLineEnd(long start, long limit) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8192);
+        long p = limit;
+        while (p > start) {
+            int n = (int) Math.min(b.capacity(), p - start);
+            b.clear().limit(n);
+            long from = p - n;
+            while (b.hasRemaining()) {
+                if (channel.read(b, from + b.position()) <= 0) {
+                    throw new IOException("Unexpected end of file at position: " + (from + b.position()));
+                }
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                if (b.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            p = from;
+        }
+        return start;
+    }
+
+    /**
+     * Finds the beginning of the first line starting at or after the given position.
+     * @return the position after the next new line or the limit, when there are no more new lines before it
+     */
+    private long lineStart(long from, long limit) throws IOException {
+        if (from <= 0) {
+            return 0;
+        }
+        ByteBuffer b = ByteBuffer.allocate(8192);
+        //Start at the previous byte, in case the new line is right before the position
+        long p = from - 1;
+        while (p < limit) {
+            b.clear();
+            int n = channel.read(b, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (b.get(i) == '\n') {
+                    return Math.min(p + i + 1, limit);
+                }
+            }
+            p += n;
+        }
+        return limit;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int n = Math.min(len, buffer.remaining());
+            if (n == 0) {
+                return -1;
+            }
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
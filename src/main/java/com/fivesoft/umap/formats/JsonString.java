@@ -0,0 +1,83 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.LazyString;
+import com.fivesoft.umap.format.FormatException;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON string value, kept as its raw UTF-8 bytes or chars between the quotes, until it is accessed.<br>
+ * Escape sequences are already validated by the tokenizer, so decoding never fails.
+ */
+final class JsonString extends LazyString {
+
+    private final byte[] bytes;
+    private final char[] chars;
+    private final int offset;
+    private final int length;
+    //Whether the raw value contains escape sequences
+    private final boolean escaped;
+
+    JsonString(byte @NotNull [] bytes, int offset, int length, boolean escaped) {
+        this.bytes = bytes;
+        this.chars = null;
+        this.offset = offset;
+        this.length = length;
+        this.escaped = escaped;
+    }
+
+    JsonString(char @NotNull [] chars, int offset, int length, boolean escaped) {
+        this.bytes = null;
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+        this.escaped = escaped;
+    }
+
+    @NotNull
+    @Override
+    protected String decode() {
+        if (!escaped) {
+            return bytes != null ? new String(bytes, offset, length, StandardCharsets.UTF_8) :
+                    new String(chars, offset, length);
+        }
+        StringBuilder sb = new StringBuilder(length);
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (charAt(i) != '\\') {
+                continue;
+            }
+            appendRun(sb, start, i);
+            int e = charAt(i + 1);
+            if (e == 'u') {
+                try {
+                    sb.append(JsonTokenizer.decodeUnicodeEscape(charAt(i + 2), charAt(i + 3), charAt(i + 4), charAt(i + 5)));
+                } catch (FormatException ex) {
+                    throw new IllegalStateException("Escape sequence should have been validated", ex);
+                }
+                i += 5;
+            } else {
+                sb.append(JsonTokenizer.decodeEscape(e));
+                i++;
+            }
+            start = i + 1;
+        }
+        appendRun(sb, start, end);
+        return sb.toString();
+    }
+
+    private int charAt(int i) {
+        return bytes != null ? bytes[i] & 0xFF : chars[i];
+    }
+
+    private void appendRun(StringBuilder sb, int start, int end) {
+        if (bytes != null) {
+            Utf8JsonTokenizer.appendUtf8(sb, bytes, start, end);
+        } else {
+            sb.append(chars, start, end - start);
+        }
+    }
+
+}
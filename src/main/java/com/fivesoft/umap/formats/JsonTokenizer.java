@@ -0,0 +1,285 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.LazyString;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.ValueToken;
+import com.fivesoft.umap.template.KeyMatcher;
+import com.fivesoft.umap.template.Mapping;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Base class for tokenizers used by the {@link JSONFormat} reader.<br>
+ * Implementations keep their own input buffer with a cursor, and classify characters
+ * through {@link #CHAR_CLASS} lookup table instead of calling {@link Character#isWhitespace(int)}
+ * and {@link java.io.Reader#read()} for every single character.
+ */
+abstract class JsonTokenizer {
+
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Character is a whitespace. Same ASCII set as accepted by {@link Character#isWhitespace(int)}.
+     */
+    static final byte WHITESPACE = 1;
+
+    /**
+     * Character terminates a literal value (number, boolean or null).
+     */
+    static final byte DELIMITER = 2;
+
+    /**
+     * Character interrupts fast scan of a string value. (quote or backslash)
+     */
+    static final byte STRING_SPECIAL = 4;
+
+    /**
+     * Character changes the nesting level or starts a string, while skipping a map or an array.
+     */
+    static final byte SKIP_SPECIAL = 8;
+
+    /**
+     * Classes of ASCII characters. Characters above 127 do not belong to any class.
+     */
+    static final byte[] CHAR_CLASS = new byte[128];
+
+    /**
+     * Values of hexadecimal digits for ASCII characters or -1 when the character is not a hex digit.
+     */
+    static final byte[] HEX_VALUE = new byte[128];
+
+    /**
+     * Maximum number of digits of a number mantissa, which always fits in a long.
+     */
+    static final int MAX_MANTISSA_DIGITS = 18;
+
+    /**
+     * Maximum length of a valid key (see {@link com.fivesoft.umap.data.UMap#VALID_KEY_REGEX}).
+     */
+    static final int MAX_KEY_LENGTH = 64;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final float[] FLOAT_POW10 = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    static {
+        for (char c : new char[]{' ', '\t', '\n', '\r', '\f', '\u000B', '\u001C', '\u001D', '\u001E', '\u001F'}) {
+            CHAR_CLASS[c] |= WHITESPACE | DELIMITER;
+        }
+        for (char c : new char[]{',', ';', '}', ']'}) {
+            CHAR_CLASS[c] |= DELIMITER;
+        }
+        CHAR_CLASS['"'] |= STRING_SPECIAL;
+        CHAR_CLASS['\\'] |= STRING_SPECIAL;
+        for (char c : new char[]{'"', '{', '}', '[', ']'}) {
+            CHAR_CLASS[c] |= SKIP_SPECIAL;
+        }
+
+        Arrays.fill(HEX_VALUE, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUE['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUE['a' + i] = (byte) (10 + i);
+            HEX_VALUE['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    /**
+     * Advances the cursor to the first non-whitespace character and returns it without consuming.
+     * @return the next non-whitespace character or -1 when the end of input is reached
+     * @throws IOException if an I/O error occurs while reading the input
+     */
+    abstract int peek() throws IOException;
+
+    /**
+     * Consumes single character previously returned by {@link #peek()}.
+     */
+    abstract void skip();
+
+    /**
+     * Reads the rest of a string. The opening quote must be already consumed.<br>
+     * Consumes the closing quote and resolves all escape sequences.
+     * @return the decoded string
+     * @throws IOException     if an I/O error occurs while reading the input
+     * @throws FormatException if the string is not terminated or contains invalid escape sequence
+     */
+    @NotNull
+    abstract String readString() throws IOException, FormatException;
+
+    /**
+     * Reads the rest of a string without decoding it, when the whole string is in the buffer.
+     * The opening quote must be already consumed.<br>
+     * On success, the string and its closing quote are consumed, and its escape sequences are validated.
+     * Otherwise, the cursor is not moved, and the string should be read with {@link #readString()}.
+     * @return the undecoded string or null if the string does not fit in the buffer
+     * @throws FormatException if the string contains invalid escape sequence
+     */
+    @Nullable
+    abstract LazyString readLazyString() throws FormatException;
+
+    /**
+     * Reads a literal value (number, boolean or null) starting at the cursor,
+     * until the first delimiter character. The delimiter is not consumed.
+     * @return the literal, may be empty when the cursor is at a delimiter
+     * @throws IOException if an I/O error occurs while reading the input
+     */
+    @NotNull
+    abstract String readLiteral() throws IOException;
+
+    /**
+     * Skips the rest of a string without decoding it. The opening quote must be already consumed.
+     * @throws IOException     if an I/O error occurs while reading the input
+     * @throws FormatException if the string is not terminated
+     */
+    abstract void skipString() throws IOException, FormatException;
+
+    /**
+     * Skips the rest of a map or an array, including all nested values.
+     * The opening bracket must be already consumed. Consumes the matching closing bracket.
+     * @throws IOException     if an I/O error occurs while reading the input
+     * @throws FormatException if the map or array is not terminated
+     */
+    abstract void skipContainer() throws IOException, FormatException;
+
+    /**
+     * Skips a literal value (number, boolean or null) starting at the cursor, until the first delimiter.
+     * @return false if there is no literal at the cursor
+     * @throws IOException if an I/O error occurs while reading the input
+     */
+    abstract boolean skipLiteral() throws IOException;
+
+    /**
+     * Checks whether the key at the cursor is equal to the predicted one.
+     * The opening quote must be already consumed.<br>
+     * On success, the key and its closing quote are consumed. Otherwise, the cursor is not moved.
+     * @param expected the predicted key
+     * @return true if the key at the cursor is the predicted one
+     */
+    abstract boolean matchKey(@NotNull String expected);
+
+    /**
+     * Tries to resolve a key at the cursor directly from the buffer, without creating a string.
+     * The opening quote must be already consumed.<br>
+     * On success, the key and its closing quote are consumed. Otherwise, the cursor is not moved,
+     * and the key should be read with {@link #readString()}.
+     * @param matcher matcher of the template of the map being read
+     * @return the mapping of the key or null if the key is unknown or contains escape sequences
+     * @throws IOException if an I/O error occurs while reading the input
+     */
+    @Nullable
+    abstract Mapping matchKey(@NotNull KeyMatcher matcher) throws IOException;
+
+    /**
+     * Tries to parse a number literal at the cursor directly from the buffer.<br>
+     * On success, the literal is consumed and its value is stored in {@link #longValue}
+     * or {@link #doubleValue}. Otherwise, the cursor is not moved,
+     * and the literal should be read with {@link #readLiteral()}.
+     * @param integral      whether only integral numbers are accepted
+     * @param floatPrecision whether the number is going to be stored as a float
+     * @return {@link ValueToken#TYPE_LONG}, {@link ValueToken#TYPE_DOUBLE}
+     * or {@link ValueToken#TYPE_VALUE} when the literal cannot be parsed directly
+     * @throws IOException if an I/O error occurs while reading the input
+     */
+    abstract int readNumber(boolean integral, boolean floatPrecision) throws IOException;
+
+    /**
+     * Tries to parse <code>true</code> or <code>false</code> literal at the cursor.<br>
+     * On success, the literal is consumed and its value is stored in {@link #booleanValue}.
+     * Otherwise, the cursor is not moved.
+     * @return {@link ValueToken#TYPE_BOOLEAN} or {@link ValueToken#TYPE_VALUE} when there is no boolean literal
+     * @throws IOException if an I/O error occurs while reading the input
+     */
+    abstract int readBoolean() throws IOException;
+
+    //Results of the last successful readNumber() or readBoolean() call
+    long longValue;
+    double doubleValue;
+    boolean booleanValue;
+
+    /**
+     * Consumes and returns the next non-whitespace character.
+     * @return the next non-whitespace character or -1 when the end of input is reached
+     * @throws IOException if an I/O error occurs while reading the input
+     */
+    final int next() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            skip();
+        }
+        return c;
+    }
+
+    static boolean isDelimiter(int c) {
+        return c < 128 && (CHAR_CLASS[c] & DELIMITER) != 0;
+    }
+
+    static boolean isWhitespace(int c) {
+        return c < 128 && (CHAR_CLASS[c] & WHITESPACE) != 0;
+    }
+
+    /**
+     * Decodes four hexadecimal digits of the unicode escape sequence.
+     * @throws FormatException if any of the digits is not a valid hex digit
+     */
+    static char decodeUnicodeEscape(int c1, int c2, int c3, int c4) throws FormatException {
+        int h1 = hexValue(c1), h2 = hexValue(c2), h3 = hexValue(c3), h4 = hexValue(c4);
+        if ((h1 | h2 | h3 | h4) < 0) {
+            throw new FormatException("Invalid unicode escape sequence: \\u" +
+                    (char) c1 + (char) c2 + (char) c3 + (char) c4);
+        }
+        return (char) ((h1 << 12) | (h2 << 8) | (h3 << 4) | h4);
+    }
+
+    /**
+     * Resolves a single-char escape sequence. (For example, 'n' for "\n")
+     */
+    static char decodeEscape(int c) {
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return (char) c;
+        }
+    }
+
+    /**
+     * Computes <code>mantissa * 10^exponent</code> when it can be done exactly with a single
+     * floating point operation, so the result is correctly rounded.
+     * @param floatPrecision whether the result is going to be stored as a float
+     * @return the value or NaN, when the number should be parsed from its string representation
+     */
+    static double toDouble(long mantissa, int exponent, boolean floatPrecision) {
+        if (floatPrecision) {
+            if (mantissa <= (1L << 24) && exponent >= -10 && exponent <= 10) {
+                float f = mantissa;
+                return exponent >= 0 ? f * FLOAT_POW10[exponent] : f / FLOAT_POW10[-exponent];
+            }
+        } else if (mantissa <= (1L << 53) && exponent >= -22 && exponent <= 22) {
+            double d = mantissa;
+            return exponent >= 0 ? d * POW10[exponent] : d / POW10[-exponent];
+        }
+        return Double.NaN;
+    }
+
+    private static int hexValue(int c) {
+        return c >= 0 && c < 128 ? HEX_VALUE[c] : -1;
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.fivesoft.umap.formats;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Positions of structural characters in a JSON document held in memory.<br>
+ * The index is built in a single pass, eight bytes at a time (SWAR), before the document is parsed.
+ * It contains positions of braces, brackets, colons and commas outside of strings,
+ * and positions of opening and closing quotes of strings.
+ * Closing quotes of strings containing escape sequences are marked with {@link #ESCAPED}.<br>
+ * Positions are consumed in increasing order, with {@link #next(int)}.
+ */
+final class StructuralIndex {
+
+    /**
+     * Flag set on positions of closing quotes of strings containing escape sequences.
+     */
+    static final int ESCAPED = Integer.MIN_VALUE;
+
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long CASE_BIT = 0x2020202020202020L;
+
+    private int[] positions;
+    private int size;
+    private int cursor;
+
+    //State of the scan, valid while building the index
+    private boolean inString;
+    private boolean stringEscaped;
+    private int escapedPosition = -1;
+
+    private StructuralIndex(int capacity) {
+        this.positions = new int[capacity];
+    }
+
+    /**
+     * Builds the index of the given range of a UTF-8 encoded JSON document.
+     * @param b    the document
+     * @param from index of the first byte of the document
+     * @param to   index one greater than the last byte of the document
+     * @return the index
+     */
+    @NotNull
+    static StructuralIndex build(byte @NotNull [] b, int from, int to) {
+        StructuralIndex index = new StructuralIndex(Math.max(16, (to - from) >>> 3));
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long w = (long) LONG_VIEW.get(b, i);
+            //'[' and ']' differ from '{' and '}' only by the 0x20 bit
+            long folded = w | CASE_BIT;
+            long candidates = equalBytes(w, '"') | equalBytes(w, '\\') |
+                    equalBytes(folded, '{') | equalBytes(folded, '}') |
+                    equalBytes(w, ':') | equalBytes(w, ',');
+            while (candidates != 0) {
+                int p = i + (Long.numberOfTrailingZeros(candidates) >>> 3);
+                candidates &= candidates - 1;
+                index.accept(b[p], p);
+            }
+        }
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c == '"' || c == '\\' || c == '{' || c == '}' || c == '[' || c == ']' || c == ':' || c == ',') {
+                index.accept(c, i);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Gets the first indexed position not lower than the given one, and skips all positions before it.
+     * @param from the lowest accepted position
+     * @return the position, possibly with {@link #ESCAPED} flag, or -1 if there are no more positions
+     */
+    int next(int from) {
+        final int[] p = positions;
+        int c = cursor;
+        while (c < size && (p[c] & ~ESCAPED) < from) {
+            c++;
+        }
+        cursor = c;
+        return c < size ? p[c] : -1;
+    }
+
+    private void accept(byte c, int p) {
+        if (inString) {
+            if (p == escapedPosition) {
+                return;
+            }
+            if (c == '\\') {
+                escapedPosition = p + 1;
+                stringEscaped = true;
+            } else if (c == '"') {
+                inString = false;
+                add(stringEscaped ? p | ESCAPED : p);
+            }
+        } else if (c != '\\') {
+            if (c == '"') {
+                inString = true;
+                stringEscaped = false;
+            }
+            add(p);
+        }
+    }
+
+    private void add(int p) {
+        if (size == positions.length) {
+            int[] grown = new int[size + (size >>> 1)];
+            System.arraycopy(positions, 0, grown, 0, size);
+            positions = grown;
+        }
+        positions[size++] = p;
+    }
+
+    /**
+     * Finds bytes of the word equal to the given character.
+     * @return word with the highest bit set in each matching byte
+     */
+    private static long equalBytes(long w, char c) {
+        long x = w ^ (c * ONES);
+        return ~(((x & LOW_7_BITS) + LOW_7_BITS) | x | LOW_7_BITS);
+    }
+
+}
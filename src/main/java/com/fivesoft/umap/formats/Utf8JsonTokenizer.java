@@ -0,0 +1,636 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.format.BytesInputStream;
+import com.fivesoft.umap.data.LazyString;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.ValueToken;
+import com.fivesoft.umap.template.KeyMatcher;
+import com.fivesoft.umap.template.Mapping;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * JSON tokenizer scanning raw UTF-8 bytes, without decoding the whole input to chars first.<br>
+ * All structural characters of JSON are ASCII, so they can be matched directly on bytes.
+ * Only string values are decoded, when they are read.<br>
+ * When the source is a {@link BytesInputStream}, its backing array is scanned in place.<br>
+ * Optionally, a {@link StructuralIndex} of input in memory is built first,
+ * so ends of strings and keys are looked up in the index instead of being scanned for.
+ */
+final class Utf8JsonTokenizer extends JsonTokenizer {
+
+    private final InputStream source;
+    //Not null when scanning the backing array of BytesInputStream
+    private final BytesInputStream arraySource;
+    private final byte[] buf;
+    //Whether the whole input is in the buffer
+    private final boolean inMemory;
+    //Whether lazy strings may refer to the buffer, since it's never modified
+    private final boolean retainBuffer;
+    //Not null when the structural index is used
+    private final StructuralIndex index;
+    private int pos;
+    private int limit;
+
+    //Reused for strings crossing the buffer boundary or containing escape sequences
+    private final StringBuilder scratch = new StringBuilder();
+
+    /**
+     * Creates a tokenizer reading the given input.
+     * @param source  the input
+     * @param indexed whether the input should be indexed before parsing, when it's a {@link BytesInputStream}.
+     *                Other streams are read in blocks, so they are never read further than needed.
+     */
+    Utf8JsonTokenizer(@NotNull InputStream source, boolean indexed) {
+        this.source = Objects.requireNonNull(source);
+        if (source instanceof BytesInputStream bis) {
+            this.arraySource = bis;
+            this.buf = bis.getBuffer();
+            this.pos = bis.getPosition();
+            this.limit = bis.getLimit();
+            this.inMemory = true;
+            this.retainBuffer = bis.isOwned();
+        } else {
+            this.arraySource = null;
+            this.buf = new byte[BUFFER_SIZE];
+            this.inMemory = false;
+            this.retainBuffer = false;
+        }
+        this.index = indexed && inMemory ? StructuralIndex.build(buf, pos, limit) : null;
+    }
+
+    /**
+     * Gets the stream this tokenizer reads from.
+     * @return the source stream
+     */
+    @NotNull
+    InputStream getSource() {
+        return source;
+    }
+
+    /**
+     * Moves the position of the source stream to the tokenizer cursor,
+     * when the backing array of {@link BytesInputStream} is scanned in place.
+     */
+    void syncSource() {
+        if (arraySource != null) {
+            arraySource.seek(pos);
+        }
+    }
+
+    @Override
+    int peek() throws IOException {
+        final byte[] b = buf;
+        while (true) {
+            int p = pos;
+            final int l = limit;
+            while (p < l) {
+                byte c = b[p];
+                if (c < 0 || (CHAR_CLASS[c] & WHITESPACE) == 0) {
+                    pos = p;
+                    return c & 0xFF;
+                }
+                p++;
+            }
+            pos = p;
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    void skip() {
+        pos++;
+    }
+
+    @Override
+    @NotNull
+    String readString() throws IOException, FormatException {
+        final byte[] b = buf;
+        int start = pos;
+        int p = start;
+        final int l = limit;
+        //Negative when any non-ASCII byte is found
+        int ascii = 0;
+
+        if (index != null) {
+            //Closing quote is known, unless the string contains escape sequences
+            int end = index.next(start);
+            if (end >= 0) {
+                pos = end + 1;
+                return new String(b, start, end - start, StandardCharsets.UTF_8);
+            }
+        }
+
+        //Fast path, string without escapes, which fits in the buffer
+        while (p < l) {
+            byte c = b[p];
+            ascii |= c;
+            if (c >= 0 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                if (c == '"') {
+                    pos = p + 1;
+                    //Latin-1 decoding of ASCII bytes is a plain copy for compact strings
+                    return new String(b, start, p - start,
+                            ascii >= 0 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+                }
+                break;
+            }
+            p++;
+        }
+
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        pos = start;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new FormatException("Unexpected end of input.");
+            }
+            //Decode run of regular characters at once
+            start = pos;
+            p = start;
+            while (p < limit) {
+                byte c = b[p];
+                if (c >= 0 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                    break;
+                }
+                p++;
+            }
+            if (p >= limit) {
+                //Keep incomplete multibyte sequence for the next block
+                int end = completeSequencesEnd(b, start, p);
+                appendUtf8(sb, b, start, end);
+                pos = end;
+                if (end < p) {
+                    compact();
+                    if (!fillMore()) {
+                        throw new FormatException("Unexpected end of input.");
+                    }
+                }
+                continue;
+            }
+            appendUtf8(sb, b, start, p);
+            pos = p + 1;
+            if (b[p] == '"') {
+                return sb.toString();
+            }
+            //Escape sequence
+            int e = readRaw();
+            if (e == 'u') {
+                int c1 = readRaw(), c2 = readRaw(), c3 = readRaw(), c4 = readRaw();
+                if (c4 == -1) {
+                    throw new FormatException("Unexpected end of input.");
+                }
+                sb.append(decodeUnicodeEscape(c1, c2, c3, c4));
+            } else if (e != -1) {
+                sb.append(decodeEscape(e));
+            } else {
+                throw new FormatException("Unexpected end of input.");
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    LazyString readLazyString() throws FormatException {
+        final byte[] b = buf;
+        final int start = pos;
+        final int l = limit;
+        if (index != null) {
+            //Closing quote is known, unless the string contains escape sequences
+            int end = index.next(start);
+            if (end == -1) {
+                return null;
+            }
+            if ((end & StructuralIndex.ESCAPED) == 0) {
+                pos = end + 1;
+                return lazyString(b, start, end, false);
+            }
+        }
+        int p = start;
+        boolean escaped = false;
+        while (p < l) {
+            byte c = b[p];
+            if (c >= 0 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                if (c == '"') {
+                    pos = p + 1;
+                    return lazyString(b, start, p, escaped);
+                }
+                escaped = true;
+                if (p + 1 < l && b[p + 1] == 'u') {
+                    if (p + 5 >= l) {
+                        return null;
+                    }
+                    //Validate now, so decoding the string later never fails
+                    decodeUnicodeEscape(b[p + 2] & 0xFF, b[p + 3] & 0xFF, b[p + 4] & 0xFF, b[p + 5] & 0xFF);
+                    p += 6;
+                } else {
+                    p += 2;
+                }
+                continue;
+            }
+            p++;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a lazy string of the raw value between the given indexes.<br>
+     * The value is copied, unless the buffer is owned by the source, since the buffer is either reused
+     * for the next block or it's an array of the caller, which may be modified after reading.
+     */
+    private JsonString lazyString(byte[] b, int start, int end, boolean escaped) {
+        return retainBuffer ? new JsonString(b, start, end - start, escaped) :
+                new JsonString(Arrays.copyOfRange(b, start, end), 0, end - start, escaped);
+    }
+
+    @Override
+    @NotNull
+    String readLiteral() throws IOException {
+        final byte[] b = buf;
+        int start = pos;
+        int p = start;
+        while (p < limit && !isDelimiter(b[p] & 0xFF)) {
+            p++;
+        }
+        pos = p;
+        if (p < limit || inMemory) {
+            return new String(b, start, p - start, StandardCharsets.UTF_8);
+        }
+        //Literal crosses the buffer boundary
+        pos = start;
+        compact();
+        p = limit;
+        while (fillMore()) {
+            while (p < limit && !isDelimiter(b[p] & 0xFF)) {
+                p++;
+            }
+            if (p < limit) {
+                break;
+            }
+        }
+        pos = p;
+        return new String(b, 0, p, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    void skipString() throws IOException, FormatException {
+        if (index != null) {
+            int end = index.next(pos);
+            if (end == -1) {
+                throw new FormatException("Unexpected end of input.");
+            }
+            pos = (end & ~StructuralIndex.ESCAPED) + 1;
+            return;
+        }
+        final byte[] b = buf;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new FormatException("Unexpected end of input.");
+            }
+            int p = pos;
+            final int l = limit;
+            boolean escape = false;
+            while (p < l) {
+                byte c = b[p++];
+                if (c >= 0 && (CHAR_CLASS[c] & STRING_SPECIAL) != 0) {
+                    if (c == '"') {
+                        pos = p;
+                        return;
+                    }
+                    //Skip escaped character, possibly in the next block
+                    if (p == l) {
+                        escape = true;
+                        break;
+                    }
+                    p++;
+                }
+            }
+            pos = p;
+            if (escape && readRaw() == -1) {
+                throw new FormatException("Unexpected end of input.");
+            }
+        }
+    }
+
+    @Override
+    void skipContainer() throws IOException, FormatException {
+        if (index != null) {
+            //Jump between structural characters, strings are skipped as a whole
+            int depth = 1;
+            while (depth > 0) {
+                int p = index.next(pos);
+                if (p == -1) {
+                    throw new FormatException("Unexpected end of input.");
+                }
+                p &= ~StructuralIndex.ESCAPED;
+                pos = p + 1;
+                byte c = buf[p];
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                } else if (c == '"') {
+                    skipString();
+                }
+            }
+            return;
+        }
+        final byte[] b = buf;
+        int depth = 1;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new FormatException("Unexpected end of input.");
+            }
+            int p = pos;
+            final int l = limit;
+            boolean string = false;
+            while (p < l) {
+                byte c = b[p++];
+                if (c >= 0 && (CHAR_CLASS[c] & SKIP_SPECIAL) != 0) {
+                    if (c == '"') {
+                        string = true;
+                        break;
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (--depth == 0) {
+                        pos = p;
+                        return;
+                    }
+                }
+            }
+            pos = p;
+            if (string) {
+                skipString();
+            }
+        }
+    }
+
+    @Override
+    boolean skipLiteral() throws IOException {
+        final byte[] b = buf;
+        boolean skipped = false;
+        while (true) {
+            int p = pos;
+            while (p < limit && !isDelimiter(b[p] & 0xFF)) {
+                p++;
+            }
+            skipped |= p > pos;
+            pos = p;
+            if (p < limit || !fill()) {
+                return skipped;
+            }
+        }
+    }
+
+    @Override
+    boolean matchKey(@NotNull String expected) {
+        final byte[] b = buf;
+        final int p = pos;
+        final int end = p + expected.length();
+        //Key chars are never quotes, so a quote right after matching chars closes the key
+        if (end >= limit || b[end] != '"') {
+            return false;
+        }
+        for (int i = p; i < end; i++) {
+            if (b[i] != expected.charAt(i - p)) {
+                return false;
+            }
+        }
+        pos = end + 1;
+        return true;
+    }
+
+    @Override
+    @Nullable
+    Mapping matchKey(@NotNull KeyMatcher matcher) throws IOException {
+        int end = findKeyEnd();
+        if (end < 0) {
+            return null;
+        }
+        Mapping m = matcher.match(buf, pos, end - pos);
+        if (m != null) {
+            pos = end + 1;
+        }
+        return m;
+    }
+
+    @Override
+    int readNumber(boolean integral, boolean floatPrecision) {
+        final byte[] b = buf;
+        final int l = limit;
+        int p = pos;
+        boolean negative = p < l && b[p] == '-';
+        if (negative) {
+            p++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        boolean decimal = false;
+        int d;
+
+        int start = p;
+        while (p < l && (d = b[p] - '0') >= 0 && d <= 9) {
+            mantissa = mantissa * 10 + d;
+            p++;
+        }
+        int digits = p - start;
+        if (digits == 0 || digits > MAX_MANTISSA_DIGITS) {
+            return ValueToken.TYPE_VALUE;
+        }
+        if (p < l && b[p] == '.') {
+            decimal = true;
+            start = ++p;
+            while (p < l && (d = b[p] - '0') >= 0 && d <= 9) {
+                mantissa = mantissa * 10 + d;
+                p++;
+            }
+            if (p == start || digits + p - start > MAX_MANTISSA_DIGITS) {
+                return ValueToken.TYPE_VALUE;
+            }
+            exponent = start - p;
+        }
+        if (p < l && (b[p] == 'e' || b[p] == 'E')) {
+            decimal = true;
+            boolean negativeExponent = false;
+            if (++p < l && (b[p] == '-' || b[p] == '+')) {
+                negativeExponent = b[p++] == '-';
+            }
+            start = p;
+            int e = 0;
+            while (p < l && (d = b[p] - '0') >= 0 && d <= 9) {
+                e = e * 10 + d;
+                p++;
+            }
+            if (p == start || p - start > 3) {
+                return ValueToken.TYPE_VALUE;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        //Literal must be followed by a delimiter, otherwise it is not a plain number
+        if (p < l ? !isDelimiter(b[p] & 0xFF) : !inMemory) {
+            return ValueToken.TYPE_VALUE;
+        }
+
+        if (!decimal) {
+            if (negative && mantissa == 0 && !integral) {
+                return ValueToken.TYPE_VALUE; //Keep negative zero
+            }
+            longValue = negative ? -mantissa : mantissa;
+            pos = p;
+            return ValueToken.TYPE_LONG;
+        }
+        if (integral) {
+            return ValueToken.TYPE_VALUE;
+        }
+        double v = toDouble(mantissa, exponent, floatPrecision);
+        if (Double.isNaN(v)) {
+            return ValueToken.TYPE_VALUE;
+        }
+        doubleValue = negative ? -v : v;
+        pos = p;
+        return ValueToken.TYPE_DOUBLE;
+    }
+
+    @Override
+    int readBoolean() {
+        final byte[] b = buf;
+        final int l = limit;
+        int p = pos;
+        boolean value;
+        if (l - p >= 4 && b[p] == 't' && b[p + 1] == 'r' && b[p + 2] == 'u' && b[p + 3] == 'e') {
+            value = true;
+            p += 4;
+        } else if (l - p >= 5 && b[p] == 'f' && b[p + 1] == 'a' && b[p + 2] == 'l' && b[p + 3] == 's' && b[p + 4] == 'e') {
+            value = false;
+            p += 5;
+        } else {
+            return ValueToken.TYPE_VALUE;
+        }
+        if (p < l ? !isDelimiter(b[p] & 0xFF) : !inMemory) {
+            return ValueToken.TYPE_VALUE;
+        }
+        booleanValue = value;
+        pos = p;
+        return ValueToken.TYPE_BOOLEAN;
+    }
+
+    private int readRaw() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (inMemory) {
+            return false;
+        }
+        int n = source.read(buf, 0, buf.length);
+        pos = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /**
+     * Finds the closing quote of a plain ASCII key starting at the cursor,
+     * making sure the whole key is in the buffer.
+     * @return index of the closing quote or -1 if the key is too long, is not plain ASCII or input ends
+     */
+    private int findKeyEnd() throws IOException {
+        if (index != null) {
+            int end = index.next(pos);
+            return end < 0 || end - pos > MAX_KEY_LENGTH ? -1 : end;
+        }
+        final byte[] b = buf;
+        while (true) {
+            int max = Math.min(limit, pos + MAX_KEY_LENGTH + 1);
+            for (int p = pos; p < max; p++) {
+                byte c = b[p];
+                if (c == '"') {
+                    return p;
+                }
+                if (c == '\\' || c < 0) {
+                    return -1;
+                }
+            }
+            if (max - pos > MAX_KEY_LENGTH) {
+                return -1; //Longer than any valid key
+            }
+            //Key crosses the buffer boundary
+            compact();
+            if (!fillMore()) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Moves bytes from the cursor to the end of the buffer to its beginning.
+     */
+    private void compact() {
+        if (inMemory) {
+            return;
+        }
+        int n = limit - pos;
+        System.arraycopy(buf, pos, buf, 0, n);
+        pos = 0;
+        limit = n;
+    }
+
+    /**
+     * Reads more bytes after the current limit of the buffer, without moving the cursor.
+     */
+    private boolean fillMore() throws IOException {
+        if (inMemory || limit >= buf.length) {
+            return false;
+        }
+        int n = source.read(buf, limit, buf.length - limit);
+        if (n <= 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * Finds the end of the last complete UTF-8 sequence in the given range.
+     */
+    private static int completeSequencesEnd(byte[] b, int start, int end) {
+        //Look back at most 3 bytes for the lead byte of an incomplete sequence
+        for (int i = end - 1; i >= start && i >= end - 3; i--) {
+            int c = b[i] & 0xFF;
+            if (c < 0x80) {
+                return end;
+            }
+            if (c >= 0xC0) {
+                int len = c >= 0xF0 ? 4 : c >= 0xE0 ? 3 : 2;
+                return i + len <= end ? end : i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Decodes UTF-8 bytes from the given range and appends them to the builder.
+     * Malformed sequences are replaced with U+FFFD by the same decoder as strings without escapes,
+     * so overlong forms, surrogates and invalid lead bytes are never decoded.
+     */
+    static void appendUtf8(StringBuilder sb, byte[] b, int start, int end) {
+        int i = start;
+        //ASCII bytes are appended directly, the rest of the run is decoded at once
+        while (i < end && b[i] >= 0) {
+            sb.append((char) b[i++]);
+        }
+        if (i < end) {
+            sb.append(new String(b, i, end - i, StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.fivesoft.umap.formats;
 
 import com.fivesoft.umap.format.*;
+import com.fivesoft.umap.template.KeyEncoding;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -43,6 +44,9 @@ public class XMLFormat implements Format {
 
     private static class XMLFormatWriter extends TextFormatWriter {
 
+        private static final KeyEncoding<char[]> START_TAG = new KeyEncoding<>(k -> ('<' + k + '>').toCharArray());
+        private static final KeyEncoding<char[]> END_TAG = new KeyEncoding<>(k -> ("</" + k + '>').toCharArray());
+
         public XMLFormatWriter(@NotNull String encoding) {
             super(encoding);
         }
@@ -65,9 +69,7 @@ public class XMLFormat implements Format {
             if (valueAssigned) {
                 writeNewLineIfPretty(out, context);
                 writeIndentationIfPretty(out, context);
-                out.write('<');
-                out.write(key);
-                out.write('>');
+                out.write(getEncodedKey(context, key, START_TAG));
             }
         }
 
@@ -75,9 +77,7 @@ public class XMLFormat implements Format {
         public void writeMappingSuffix(@NotNull Writer out, @NotNull WriterContext context, @NotNull String key, boolean optional, boolean valueAssigned,
                                        int index, boolean last) throws IOException, FormatException {
             if (valueAssigned) {
-                out.write("</");
-                out.write(key);
-                out.write('>');
+                out.write(getEncodedKey(context, key, END_TAG));
                 if(last) {
                     writeNewLineIfPretty(out, context);
                 }
@@ -126,17 +126,17 @@ public class XMLFormat implements Format {
 
         @Override
         public void writeValueLong(@NotNull Writer out, @NotNull WriterContext context, long value) throws IOException, FormatException {
-            writeValueString(out, context, Long.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueFloat(@NotNull Writer out, @NotNull WriterContext context, float value) throws IOException, FormatException {
-            writeValueDouble(out, context, value);
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueDouble(@NotNull Writer out, @NotNull WriterContext context, double value) throws IOException, FormatException {
-            writeValueString(out, context, Double.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
@@ -184,7 +184,7 @@ public class XMLFormat implements Format {
         }
 
         @Override
-        public @Nullable String nextKey(@NotNull Reader in, @NotNull ReaderContext context, @NotNull String expectedKey) throws IOException, FormatException {
+        public @Nullable String nextKey(@NotNull Reader in, @NotNull ReaderContext context, @Nullable String expectedKey) throws IOException, FormatException {
             return null;
         }
 
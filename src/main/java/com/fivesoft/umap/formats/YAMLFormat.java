@@ -1,6 +1,7 @@
 package com.fivesoft.umap.formats;
 
 import com.fivesoft.umap.format.*;
+import com.fivesoft.umap.template.KeyEncoding;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -42,6 +43,8 @@ public class YAMLFormat implements Format {
 
     private static class YAMLWriter extends TextFormatWriter {
 
+        private static final KeyEncoding<char[]> KEY = new KeyEncoding<>(k -> (k + ": ").toCharArray());
+
         public YAMLWriter(@NotNull String encoding) {
             super(encoding);
         }
@@ -60,7 +63,7 @@ public class YAMLFormat implements Format {
         public void writeMappingPrefix(@NotNull Writer out, @NotNull WriterContext context, @NotNull String key,
                                        boolean optional, boolean valueAssigned, int index, boolean last) throws IOException, FormatException {
             writeIndentation(out, context, -1);
-            out.write(key + ": ");
+            out.write(getEncodedKey(context, key, KEY));
             if(context.getOptions().pretty){
                 writeSpaces(out, context.getMaxKeyLength() - key.length());
             }
@@ -101,32 +104,32 @@ public class YAMLFormat implements Format {
 
         @Override
         public void writeValueByte(@NotNull Writer out, @NotNull WriterContext context, byte value) throws IOException, FormatException {
-            out.write(Byte.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueShort(@NotNull Writer out, @NotNull WriterContext context, short value) throws IOException, FormatException {
-            out.write(Short.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueInt(@NotNull Writer out, @NotNull WriterContext context, int value) throws IOException, FormatException {
-            out.write(Integer.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueLong(@NotNull Writer out, @NotNull WriterContext context, long value) throws IOException, FormatException {
-            out.write(Long.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueFloat(@NotNull Writer out, @NotNull WriterContext context, float value) throws IOException, FormatException {
-            out.write(Float.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
         public void writeValueDouble(@NotNull Writer out, @NotNull WriterContext context, double value) throws IOException, FormatException {
-            out.write(Double.toString(value));
+            writeNumber(out, value);
         }
 
         @Override
@@ -9,7 +9,12 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ArrayTemplate extends Template {
 
@@ -38,7 +43,65 @@ public class ArrayTemplate extends Template {
                              @NotNull Format format,
                              @Nullable FormatReader.Options options) throws IOException, FormatException {
 
-        return null;
+        options = FormatReader.Options.getOrDefault(options);
+        FormatReader reader = format.createReader(in, options);
+        return FormatReader.readArray(in, reader, this, options);
+    }
+
+    @Override
+    public UArray readFormat(byte @NotNull [] data, @NotNull Format format,
+                             FormatReader.@Nullable Options options) throws FormatException {
+        return (UArray) super.readFormat(data, format, options);
+    }
+
+    @Override
+    public UArray readFormat(@NotNull String data, @NotNull Format format,
+                             FormatReader.@Nullable Options options) throws FormatException {
+        return (UArray) super.readFormat(data, format, options);
+    }
+
+    @Override
+    public UArray readFormat(@NotNull CharSequence data, @NotNull Format format,
+                             FormatReader.@Nullable Options options) throws FormatException {
+        return (UArray) super.readFormat(data, format, options);
+    }
+
+    /**
+     * Lazily reads entries of the array from the input stream, which contains an array of this template.<br>
+     * Each entry is returned as soon as it's read, without building the whole {@link UArray},
+     * so memory usage does not depend on the length of the array. Entries are {@link com.fivesoft.umap.data.UMap},
+     * {@link UArray} or primitive values, depending on the entry template.<br>
+     * Reading errors are thrown by the iterator as {@link java.io.UncheckedIOException}
+     * and {@link com.fivesoft.umap.format.UncheckedFormatException}.
+     * @param in      the input stream to read from
+     * @param format  the format of the array
+     * @param options the reading options or null to use defaults
+     * @return iterator over the entries of the array
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public <T> Iterator<T> iterateFormat(@NotNull InputStream in,
+                                         @NotNull Format format,
+                                         @Nullable FormatReader.Options options) {
+        options = FormatReader.Options.getOrDefault(options);
+        FormatReader reader = format.createReader(in, options);
+        return (Iterator<T>) FormatReader.readEntries(in, reader, this, options);
+    }
+
+    /**
+     * Lazily reads entries of the array from the input stream.<br>
+     * The same as {@link #iterateFormat(InputStream, Format, FormatReader.Options)}, but returns a sequential stream.
+     * @param in      the input stream to read from
+     * @param format  the format of the array
+     * @param options the reading options or null to use defaults
+     * @return stream of the entries of the array
+     */
+    @NotNull
+    public <T> Stream<T> readEntries(@NotNull InputStream in,
+                                     @NotNull Format format,
+                                     @Nullable FormatReader.Options options) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this.<T>iterateFormat(in, format, options),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
     @Override
@@ -0,0 +1,43 @@
+package com.fivesoft.umap.template;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A way, in which format writers encode keys. For example, a JSON key in quotes followed by a colon.<br>
+ * Keys are fixed per {@link MapTemplate}, so each key is encoded once and cached in its {@link Mapping}
+ * (see {@link Mapping#getEncodedKey(KeyEncoding)}).<br>
+ * Every encoding takes a slot in mappings, which use it, so encodings should be kept in static fields.
+ * @param <T> type of encoded keys, for example, <code>char[]</code>
+ */
+public final class KeyEncoding<T> {
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    //Index of the slot in mappings
+    final int id = COUNT.getAndIncrement();
+    @NotNull
+    private final Function<String, T> encoder;
+
+    /**
+     * Creates a new key encoding.
+     * @param encoder encodes a key name. Must always return equal results for the same name.
+     */
+    public KeyEncoding(@NotNull Function<String, T> encoder) {
+        this.encoder = Objects.requireNonNull(encoder);
+    }
+
+    /**
+     * Encodes the key, without caching it.
+     * @param key the key name
+     * @return the encoded key
+     */
+    @NotNull
+    public T encode(@NotNull String key) {
+        return Objects.requireNonNull(encoder.apply(key));
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.fivesoft.umap.template;
+
+import com.fivesoft.umap.data.UMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Resolves keys of a {@link MapTemplate} straight from input buffers, without creating key strings.<br>
+ * Valid keys contain only ASCII characters (see {@link UMap#isValidKey(String)}),
+ * so the same table can match both decoded chars and raw UTF-8 bytes.
+ */
+public final class KeyMatcher {
+
+    private final Mapping[] mappings;
+    private final byte[][] keys;
+    private final int mask;
+
+    KeyMatcher(@NotNull Collection<Mapping> values) {
+        //Keep the table at most half full, so probe sequences stay short
+        int size = Integer.highestOneBit(Math.max(values.size(), 1) * 4 - 1);
+        this.mappings = new Mapping[size];
+        this.keys = new byte[size][];
+        this.mask = size - 1;
+        for (Mapping m : values) {
+            byte[] key = m.getName().getBytes(StandardCharsets.US_ASCII);
+            int i = index(m.getName().hashCode());
+            while (mappings[i] != null) {
+                i = (i + 1) & mask;
+            }
+            mappings[i] = m;
+            keys[i] = key;
+        }
+    }
+
+    /**
+     * Finds a mapping with the key equal to ASCII bytes in the given range.
+     * @param buf    buffer containing the key
+     * @param offset index of the first key byte
+     * @param length length of the key
+     * @return the mapping or null if there is no such key
+     */
+    @Nullable
+    public Mapping match(byte @NotNull [] buf, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        Mapping m;
+        for (int i = index(h); (m = mappings[i]) != null; i = (i + 1) & mask) {
+            byte[] key = keys[i];
+            if (key.length == length && Arrays.equals(key, 0, length, buf, offset, offset + length)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a mapping with the key equal to chars in the given range.
+     * @param buf    buffer containing the key
+     * @param offset index of the first key char
+     * @param length length of the key
+     * @return the mapping or null if there is no such key
+     */
+    @Nullable
+    public Mapping match(char @NotNull [] buf, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        Mapping m;
+        for (int i = index(h); (m = mappings[i]) != null; i = (i + 1) & mask) {
+            byte[] key = keys[i];
+            if (key.length == length && equals(key, buf, offset)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    private int index(int hash) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static boolean equals(byte[] key, char[] buf, int offset) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buf[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
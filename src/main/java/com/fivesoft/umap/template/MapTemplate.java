@@ -15,6 +15,8 @@ import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MapTemplate extends Template
         implements Iterable<Mapping> {
@@ -25,6 +27,10 @@ public class MapTemplate extends Template
     //Cache of the longest key length. May be used for formatting
     private final int maxKeyLength;
     private final long complexity;
+    //Positions of the mappings in the template
+    private final Map<String, Integer> indices;
+    //Resolves keys directly from reader buffers
+    private final KeyMatcher keyMatcher;
 
     //Private constructor. Use Builder instead.
     private MapTemplate(
@@ -66,6 +72,11 @@ public class MapTemplate extends Template
         );
         this.maxKeyLength = max.get();
         this.complexity = complexity.get();
+        this.indices = new HashMap<>();
+        for (String key : this.mappings.keySet()) {
+            indices.put(key, indices.size());
+        }
+        this.keyMatcher = new KeyMatcher(this.mappings.values());
     }
 
     /**
@@ -89,6 +100,16 @@ public class MapTemplate extends Template
         return maxKeyLength;
     }
 
+    /**
+     * Gets a matcher resolving keys of this template straight from input buffers.
+     *
+     * @return the key matcher of this template
+     */
+    @NotNull
+    public KeyMatcher getKeyMatcher() {
+        return keyMatcher;
+    }
+
     /**
      * Gets the complexity of the template.<br>
      * Complexity is the sum of all template complexities in the map.
@@ -130,6 +151,18 @@ public class MapTemplate extends Template
         return getMappings().get(key);
     }
 
+    /**
+     * Gets the position of the mapping with the specified key,
+     * in the order of {@link #getMappings()}.
+     *
+     * @param key of the mapping
+     * @return the position of the mapping or -1 if there is no such key
+     */
+    public int indexOf(@NotNull String key) {
+        Integer index = indices.get(key);
+        return index == null ? -1 : index;
+    }
+
     /**
      * Checks if the template contains a template with the specified key.
      *
@@ -162,6 +195,48 @@ public class MapTemplate extends Template
         return FormatReader.readFormat(in, reader, this, options);
     }
 
+    /**
+     * Lazily reads all maps from the input stream, which contains a sequence of maps of this template.
+     * For example, records of a JSON Lines file.<br>
+     * Maps are read one at a time, when requested by the iterator, so memory usage does not depend on
+     * the number of maps in the input stream. Reading errors are thrown by the iterator
+     * as {@link java.io.UncheckedIOException} and {@link com.fivesoft.umap.format.UncheckedFormatException}.<br>
+     * The format must support sequences (see {@link FormatReader#hasNextRoot(InputStream)}).
+     * @param in      the input stream to read from
+     * @param format  the format of the maps
+     * @param options the reading options or null to use defaults
+     * @return iterator over the maps of the input stream
+     */
+    @NotNull
+    public Iterator<UMap> iterateFormat(@NotNull InputStream in,
+                                        @NotNull Format format,
+                                        @Nullable FormatReader.Options options) {
+        options = FormatReader.Options.getOrDefault(options);
+        FormatReader reader = format.createReader(in, options);
+        return FormatReader.readSequence(in, reader, this, options);
+    }
+
+    /**
+     * Lazily reads all maps from the input stream, which contains a sequence of maps of this template.<br>
+     * The same as {@link #iterateFormat(InputStream, Format, FormatReader.Options)}, but returns a sequential stream.
+     * @param in      the input stream to read from
+     * @param format  the format of the maps
+     * @param options the reading options or null to use defaults
+     * @return stream of the maps of the input stream
+     */
+    @NotNull
+    public Stream<UMap> readAll(@NotNull InputStream in,
+                                @NotNull Format format,
+                                @Nullable FormatReader.Options options) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterateFormat(in, format, options),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @NotNull
+    public Stream<UMap> readAll(@NotNull InputStream in, @NotNull Format format) {
+        return readAll(in, format, null);
+    }
+
     @Override
     public UMap readFormat(byte @NotNull [] data, @NotNull Format format,
                            FormatReader.@Nullable Options options) throws FormatException {
@@ -174,6 +249,12 @@ public class MapTemplate extends Template
         return (UMap) super.readFormat(data, format, options);
     }
 
+    @Override
+    public UMap readFormat(@NotNull CharSequence data, @NotNull Format format,
+                           FormatReader.@Nullable Options options) throws FormatException {
+        return (UMap) super.readFormat(data, format, options);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -392,7 +473,8 @@ public class MapTemplate extends Template
         public boolean hasNext() {
             if(next != null)
                 return true;
-            if(iterator.hasNext()){
+            //Skip all mappings above the detail level, not only the first one
+            while(iterator.hasNext()){
                 Mapping temp = iterator.next();
                 boolean ok = temp.getKey().getDetailLevel() <= maxDetailLevel;
                 if(ok){
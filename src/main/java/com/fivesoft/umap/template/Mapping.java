@@ -3,6 +3,7 @@ package com.fivesoft.umap.template;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -19,6 +20,8 @@ public final class Mapping {
     private final @NotNull Key key;
     private final @NotNull Template template;
     private final @Nullable Object defaultValue;
+    //Keys encoded by format writers, indexed by ids of their encodings
+    private volatile Object[] encodedKeys = new Object[0];
 
     /**
      * Creates a new mapping. The key and template must not be null.
@@ -111,6 +114,29 @@ public final class Mapping {
         return key.getName();
     }
 
+    /**
+     * Gets the key of this mapping encoded with the given encoding.<br>
+     * The key is encoded on the first call and cached in this mapping.
+     * @param encoding the encoding
+     * @return the encoded key
+     */
+    @NotNull
+    public <T> T getEncodedKey(@NotNull KeyEncoding<T> encoding) {
+        Object[] e = encodedKeys;
+        int id = encoding.id;
+        Object v;
+        if (id < e.length && (v = e[id]) != null) {
+            //noinspection unchecked
+            return (T) v;
+        }
+        T encoded = encoding.encode(getName());
+        //Concurrent updates may lose each other's keys, which are then simply encoded again
+        Object[] updated = Arrays.copyOf(e, Math.max(e.length, id + 1));
+        updated[id] = encoded;
+        encodedKeys = updated;
+        return encoded;
+    }
+
     /**
      * Delegate method to {@link Template#getComplexity()}
      * @return the complexity of the template
@@ -96,7 +96,7 @@ public final class PrimitiveTemplate extends Template {
 
         if(objType.equals(String.class)) {
             //Normalize value
-            value = ((String) value).replaceAll("\\s+", ""); //Remove all whitespaces
+            value = removeWhitespaces((String) value);
             if(type.isEnum()) {
                 try {
                     //noinspection unchecked,rawtypes
@@ -145,6 +145,16 @@ public final class PrimitiveTemplate extends Template {
         return parseValue(value, null);
     }
 
+    private static String removeWhitespaces(String s) {
+        //Most values contain no whitespaces, so avoid running the regex for them
+        for (int i = 0, length = s.length(); i < length; i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return s.replaceAll("\\s+", "");
+            }
+        }
+        return s;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1,12 +1,13 @@
 package com.fivesoft.umap.template;
 
+import com.fivesoft.umap.format.BytesInputStream;
+import com.fivesoft.umap.format.CharSequenceInputStream;
 import com.fivesoft.umap.format.Format;
 import com.fivesoft.umap.format.FormatException;
 import com.fivesoft.umap.format.FormatReader;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Objects;
@@ -21,7 +22,7 @@ public abstract class Template {
                                    @NotNull Format format,
                                    @Nullable FormatReader.Options options) throws FormatException {
         try {
-            return readFormat(new ByteArrayInputStream(Objects.requireNonNull(data)),
+            return readFormat(new BytesInputStream(Objects.requireNonNull(data)),
                     format, options);
         } catch (IOException e) {
             //This should never happen
@@ -32,8 +33,29 @@ public abstract class Template {
     public Object readFormat(@NotNull String data,
                                    @NotNull Format format,
                                    @Nullable FormatReader.Options options) throws FormatException {
-        return readFormat(Objects.requireNonNull(data).getBytes(),
-                format, options);
+        return readFormat((CharSequence) data, format, options);
+    }
+
+    /**
+     * Reads an object of this template from the given characters.<br>
+     * Text formats parse the characters directly, without encoding them to bytes,
+     * so the encoding of the options is not used. Other formats read the characters encoded with the default charset.
+     * @param data    the characters to read
+     * @param format  the format of the data
+     * @param options the reading options or null to use defaults
+     * @return the read object
+     * @throws FormatException if the data is not in the expected format
+     */
+    public Object readFormat(@NotNull CharSequence data,
+                             @NotNull Format format,
+                             @Nullable FormatReader.Options options) throws FormatException {
+        try {
+            return readFormat(new CharSequenceInputStream(Objects.requireNonNull(data)),
+                    format, options);
+        } catch (IOException e) {
+            //This should never happen
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -0,0 +1,173 @@
+package com.fivesoft.umap.format;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.formats.BinaryFormat;
+import com.fivesoft.umap.formats.JSONFormat;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelOutputStreamTest {
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("text", String.class)
+            .build();
+
+    //More than all buffers of a stream hold, so they are flushed and reused
+    private static final int LARGE = ChannelOutputStream.MAX_BUFFERS * ChannelOutputStream.BUFFER_SIZE * 2 + 12345;
+
+    @Test
+    void writesMoreThanAllBuffersHold() throws Exception {
+        byte[] data = new byte[LARGE];
+        new SplittableRandom(20).nextBytes(data);
+        for (boolean gathering : new boolean[]{false, true}) {
+            //Channels writing only a part of the buffers at a time
+            TestChannel channel = gathering ? new GatheringChannel(100_000) : new TestChannel(30_000);
+            try (ChannelOutputStream out = new ChannelOutputStream(channel)) {
+                SplittableRandom random = new SplittableRandom(gathering ? 1 : 2);
+                int p = 0;
+                while (p < data.length) {
+                    if (random.nextInt(10) == 0) {
+                        out.write(data[p++]);
+                    } else {
+                        int n = Math.min(data.length - p, random.nextInt(200_000));
+                        out.write(data, p, n);
+                        p += n;
+                    }
+                    if (random.nextInt(50) == 0) {
+                        out.flush();
+                    }
+                }
+            }
+            assertArrayEquals(data, channel.out.toByteArray(), "gathering=" + gathering);
+            assertTrue(channel.isOpen());
+            assertEquals(gathering, channel.gatheringWrites > 0);
+        }
+    }
+
+    @Test
+    void formatsToChannelAsToStream() throws Exception {
+        UMap map = new UMap.Builder(TEMPLATE).set("id", 1L).set("text", "x\u00e9\"".repeat(LARGE / 3)).build();
+        for (Format format : new Format[]{new JSONFormat(), new BinaryFormat()}) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            map.format(expected, null, format, 0);
+            for (TestChannel channel : new TestChannel[]{new TestChannel(Integer.MAX_VALUE), new GatheringChannel(70_000)}) {
+                map.format(channel, null, format, 0);
+                assertArrayEquals(expected.toByteArray(), channel.out.toByteArray());
+                //The channel is not closed
+                assertTrue(channel.isOpen());
+            }
+        }
+    }
+
+    @Test
+    void formatsToByteBuffer() throws Exception {
+        UMap map = new UMap.Builder(TEMPLATE).set("id", 7L).set("text", "abc").build();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        map.format(expected, null, new JSONFormat(), 0);
+        byte[] e = expected.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.allocate(e.length + 10);
+        buffer.position(5);
+        map.format(buffer, null, new JSONFormat(), 0);
+        assertEquals(5 + e.length, buffer.position());
+        assertArrayEquals(e, Arrays.copyOfRange(buffer.array(), 5, 5 + e.length));
+
+        //Doesn't fit, the position is restored
+        ByteBuffer small = ByteBuffer.allocateDirect(e.length + 3);
+        small.position(4);
+        assertThrows(BufferOverflowException.class, () -> map.format(small, null, new JSONFormat(), 0));
+        assertEquals(4, small.position());
+    }
+
+    @Test
+    void nonBlockingChannelsAreRejected() throws IOException {
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            assertThrows(IllegalBlockingModeException.class, () -> new ChannelOutputStream(pipe.sink()));
+            UMap map = new UMap.Builder(TEMPLATE).set("id", 1L).set("text", "").build();
+            assertThrows(IllegalBlockingModeException.class, () -> map.format(pipe.sink(), null, new JSONFormat(), 0));
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    /**
+     * Collects written bytes, writing at most the given number of bytes per call.
+     */
+    private static class TestChannel implements WritableByteChannel {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int maxWrite;
+        int gatheringWrites;
+        boolean open = true;
+
+        TestChannel(int maxWrite) {
+            this.maxWrite = maxWrite;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = Math.min(src.remaining(), maxWrite);
+            byte[] b = new byte[n];
+            src.get(b);
+            out.write(b, 0, n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+    }
+
+    private static final class GatheringChannel extends TestChannel implements GatheringByteChannel {
+
+        GatheringChannel(int maxWrite) {
+            super(maxWrite);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            gatheringWrites++;
+            long written = 0;
+            for (int i = offset; i < offset + length && written < maxWrite; i++) {
+                ByteBuffer src = srcs[i];
+                int n = (int) Math.min(src.remaining(), maxWrite - written);
+                byte[] b = new byte[n];
+                src.get(b);
+                out.write(b, 0, n);
+                written += n;
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.fivesoft.umap.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberFormatterTest {
+
+    private static final int OFFSET = 3;
+
+    @Test
+    void formatsLongsAsLongToString() {
+        long[] values = {0, 1, -1, 9, 10, -10, 99, 100, 1234567890123L, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1};
+        for (long value : values) {
+            assertEquals(Long.toString(value), formatLong(value));
+        }
+        SplittableRandom random = new SplittableRandom(18);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            assertEquals(Long.toString(value), formatLong(value));
+        }
+    }
+
+    @Test
+    void formatsKnownDoubles() {
+        assertEquals("0.0", formatDouble(0.0));
+        assertEquals("-0.0", formatDouble(-0.0));
+        assertEquals("1.0", formatDouble(1.0));
+        assertEquals("-1.5", formatDouble(-1.5));
+        assertEquals("0.1", formatDouble(0.1));
+        assertEquals("0.30000000000000004", formatDouble(0.1 + 0.2));
+        assertEquals("100.0", formatDouble(100.0));
+        assertEquals("9999999.0", formatDouble(9999999.0));
+        assertEquals("1.0E7", formatDouble(1.0E7));
+        assertEquals("0.001", formatDouble(0.001));
+        assertEquals("1.0E-4", formatDouble(1.0E-4));
+        //Older JDKs print 2.0E-3 as "0.0020" and 1.0E23 as "1.0000000000000001E23"
+        assertEquals("0.002", formatDouble(2.0E-3));
+        assertEquals("1.0E23", formatDouble(1.0E23));
+        assertEquals("1.7976931348623157E308", formatDouble(Double.MAX_VALUE));
+        assertEquals("2.2250738585072014E-308", formatDouble(Double.MIN_NORMAL));
+        assertEquals("4.9E-324", formatDouble(Double.MIN_VALUE));
+        assertEquals("NaN", formatDouble(Double.NaN));
+        assertEquals("Infinity", formatDouble(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity", formatDouble(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    void formatsKnownFloats() {
+        assertEquals("0.0", formatFloat(0.0f));
+        assertEquals("-0.0", formatFloat(-0.0f));
+        assertEquals("1.1", formatFloat(1.1f));
+        assertEquals("0.1", formatFloat(0.1f));
+        assertEquals("1.6777216E7", formatFloat(16777216f));
+        assertEquals("9999999.0", formatFloat(9999999f));
+        assertEquals("1.0E10", formatFloat(1.0E10f));
+        assertEquals("3.4028235E38", formatFloat(Float.MAX_VALUE));
+        //Older JDKs print "1.17549435E-38"
+        assertEquals("1.1754944E-38", formatFloat(Float.MIN_NORMAL));
+        assertEquals("1.4E-45", formatFloat(Float.MIN_VALUE));
+        assertEquals("NaN", formatFloat(Float.NaN));
+        assertEquals("-Infinity", formatFloat(Float.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    void randomDoublesRoundTrip() {
+        SplittableRandom random = new SplittableRandom(26);
+        for (int i = 0; i < 200_000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (!Double.isFinite(value)) {
+                continue;
+            }
+            String s = formatDouble(value);
+            String jdk = Double.toString(value);
+            assertEquals(value, Double.parseDouble(s), s);
+            assertTrue(s.length() <= jdk.length(), s + " is longer than " + jdk);
+            assertTrue(s.length() <= NumberFormatter.MAX_LENGTH, s);
+            assertEquals(jdk.indexOf('E') >= 0, s.indexOf('E') >= 0, s + " has another layout than " + jdk);
+        }
+    }
+
+    @Test
+    void randomFloatsRoundTrip() {
+        SplittableRandom random = new SplittableRandom(24);
+        for (int i = 0; i < 200_000; i++) {
+            float value = Float.intBitsToFloat(random.nextInt());
+            if (!Float.isFinite(value)) {
+                continue;
+            }
+            String s = formatFloat(value);
+            String jdk = Float.toString(value);
+            assertEquals(value, Float.parseFloat(s), s);
+            assertTrue(s.length() <= jdk.length(), s + " is longer than " + jdk);
+            assertEquals(jdk.indexOf('E') >= 0, s.indexOf('E') >= 0, s + " has another layout than " + jdk);
+        }
+    }
+
+    private static String formatLong(long value) {
+        char[] buf = new char[OFFSET + NumberFormatter.MAX_LENGTH];
+        return new String(buf, OFFSET, NumberFormatter.formatLong(value, buf, OFFSET) - OFFSET);
+    }
+
+    private static String formatDouble(double value) {
+        char[] buf = new char[OFFSET + NumberFormatter.MAX_LENGTH];
+        return new String(buf, OFFSET, NumberFormatter.formatDouble(value, buf, OFFSET) - OFFSET);
+    }
+
+    private static String formatFloat(float value) {
+        char[] buf = new char[OFFSET + NumberFormatter.MAX_LENGTH];
+        return new String(buf, OFFSET, NumberFormatter.formatFloat(value, buf, OFFSET) - OFFSET);
+    }
+
+}
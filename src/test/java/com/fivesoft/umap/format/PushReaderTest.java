@@ -0,0 +1,159 @@
+package com.fivesoft.umap.format;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.formats.BinaryFormat;
+import com.fivesoft.umap.formats.JSONFormat;
+import com.fivesoft.umap.formats.XMLFormat;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PushReaderTest {
+
+    private static final MapTemplate INNER = new MapTemplate.Builder()
+            .addRequired("s", String.class)
+            .build();
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Integer.class)
+            .addRequired("text", String.class)
+            .addOptional("note", String.class)
+            .addRequired("inner", INNER)
+            .addRequired("list", INNER.asArray())
+            .build();
+
+    private static final int MAPS = 12;
+
+    @Test
+    void framesJsonSplitAtEveryByte() throws Exception {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (int k = 0; k < MAPS; k++) {
+            map(k).format(input, new FormatWriter.Options(k % 2 == 0), new JSONFormat(), 10);
+            //Maps may be separated by whitespace
+            input.write(" \n\t".substring(0, k % 4).getBytes(StandardCharsets.UTF_8));
+        }
+        assertFramed(new JSONFormat(), input.toByteArray());
+    }
+
+    @Test
+    void framesJsonSeparatedByAnyWhitespace() throws Exception {
+        //The same whitespace is skipped by readFormat
+        String separators = " \t\n\r\f\u000B\u001C\u001D\u001E\u001F";
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (int k = 0; k < MAPS; k++) {
+            input.write(separators.substring(k % separators.length()).getBytes(StandardCharsets.UTF_8));
+            byte[] map = json(map(k)).getBytes(StandardCharsets.UTF_8);
+            input.write(map);
+            assertEquals(json(map(k)), json(TEMPLATE.readFormat(
+                    (separators + json(map(k)) + separators).getBytes(StandardCharsets.UTF_8), new JSONFormat(), null)));
+        }
+        assertFramed(new JSONFormat(), input.toByteArray());
+    }
+
+    @Test
+    void framesBinarySplitAtEveryByte() throws Exception {
+        for (BinaryFormat format : binaryFormats()) {
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            for (int k = 0; k < MAPS; k++) {
+                map(k).format(input, null, format, 10);
+            }
+            assertFramed(format, input.toByteArray());
+        }
+    }
+
+    @Test
+    void incompleteLastMapFails() throws Exception {
+        List<Format> formats = new ArrayList<>();
+        formats.add(new JSONFormat());
+        formats.addAll(binaryFormats());
+        for (Format format : formats) {
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            map(0).format(input, null, format, 10);
+            map(1).format(input, null, format, 10);
+            byte[] b = input.toByteArray();
+            List<UMap> maps = new ArrayList<>();
+            PushReader reader = new PushReader(format, TEMPLATE, null, maps::add);
+            reader.feed(ByteBuffer.wrap(b, 0, b.length - 1));
+            assertEquals(1, maps.size(), format.getName());
+            assertThrows(FormatException.class, reader::endOfInput, format.getName());
+            assertThrows(IllegalStateException.class, () -> reader.feed(ByteBuffer.wrap(b)), format.getName());
+        }
+    }
+
+    @Test
+    void unsupportedFormatFails() {
+        assertThrows(FormatException.class, () -> new PushReader(new XMLFormat(), TEMPLATE, null, map -> {}));
+    }
+
+    private static List<BinaryFormat> binaryFormats() {
+        List<BinaryFormat> formats = new ArrayList<>();
+        for (int mode = 0; mode < 8; mode++) {
+            formats.add(new BinaryFormat((mode & 1) != 0, (mode & 2) != 0, (mode & 4) != 0));
+        }
+        return formats;
+    }
+
+    /**
+     * Feeds the input in chunks of many sizes, from single bytes to the whole input.
+     */
+    private static void assertFramed(Format format, byte[] input) throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int k = 0; k < MAPS; k++) {
+            expected.add(json(map(k)));
+        }
+        for (int chunk = 1; chunk <= 200; chunk = chunk < 40 ? chunk + 1 : chunk * 2) {
+            assertEquals(expected, push(format, input, chunk), format.getName() + " chunk=" + chunk);
+        }
+        assertEquals(expected, push(format, input, input.length), format.getName());
+    }
+
+    private static List<String> push(Format format, byte[] input, int chunk) throws Exception {
+        List<String> maps = new ArrayList<>();
+        PushReader reader = new PushReader(format, TEMPLATE, null, map -> {
+            try {
+                maps.add(json(map));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        for (int p = 0; p < input.length; p += chunk) {
+            ByteBuffer b = ByteBuffer.wrap(input, p, Math.min(chunk, input.length - p));
+            reader.feed(b);
+            assertFalse(b.hasRemaining());
+        }
+        reader.endOfInput();
+        return maps;
+    }
+
+    private static UMap map(int k) throws Exception {
+        UArray.Builder list = new UArray.Builder(INNER.asArray());
+        for (int j = 0; j < k % 4; j++) {
+            list.add(new UMap.Builder(INNER).set("s", "]}" + j).build());
+        }
+        //Brackets and quotes inside strings must not end the map
+        UMap.Builder b = new UMap.Builder(TEMPLATE)
+                .set("id", k)
+                .set("text", "{\"k\\\": " + k + "}\u00e9" + "x".repeat(k * 7))
+                .set("inner", new UMap.Builder(INNER).set("s", "\\").build())
+                .set("list", list.build());
+        if (k % 3 != 0) {
+            b.set("note", "[" + k);
+        }
+        return b.build();
+    }
+
+    private static String json(UMap map) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.format(out, null, new JSONFormat(), 10);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+}
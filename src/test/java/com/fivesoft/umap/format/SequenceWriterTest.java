@@ -0,0 +1,170 @@
+package com.fivesoft.umap.format;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.formats.BinaryFormat;
+import com.fivesoft.umap.formats.JSONFormat;
+import com.fivesoft.umap.template.ArrayTemplate;
+import com.fivesoft.umap.template.MapTemplate;
+import com.fivesoft.umap.template.PrimitiveTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequenceWriterTest {
+
+    private static final MapTemplate INNER = new MapTemplate.Builder()
+            .addRequired("v", Long.class)
+            .build();
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addOptional("s", String.class)
+            .addRequired("inner", INNER)
+            .addRequired("bio", String.class, 1)
+            .build();
+
+    private static final ArrayTemplate ARRAY = new ArrayTemplate(TEMPLATE);
+
+    @Test
+    void writesTheSameAsFormattingTheArray() throws Exception {
+        for (int count : new int[]{0, 1, 5}) {
+            List<UMap> maps = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                maps.add(map(i));
+            }
+            UArray.Builder b = new UArray.Builder(ARRAY);
+            maps.forEach(b::add);
+            UArray array = b.build();
+            for (Format format : formats()) {
+                for (FormatWriter.Options options : options()) {
+                    for (int detailLevel : new int[]{0, Integer.MAX_VALUE}) {
+                        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                        array.format(expected, options, format, detailLevel);
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        try (SequenceWriter w = new SequenceWriter(out, format, ARRAY, options, detailLevel, count)) {
+                            for (UMap m : maps) {
+                                w.write(m);
+                            }
+                            assertEquals(count, w.getCount());
+                        }
+                        assertArrayEquals(expected.toByteArray(), out.toByteArray(), format.getName() + " count=" + count);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void writesJsonOfUnknownLength() throws Exception {
+        for (FormatWriter.Options options : options()) {
+            UArray.Builder b = new UArray.Builder(ARRAY);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (SequenceWriter w = new SequenceWriter(out, new JSONFormat(), ARRAY, options)) {
+                for (int i = 0; i < 3; i++) {
+                    //Builders are accepted as well
+                    UMap.Builder mb = builder(i);
+                    w.write(mb);
+                    b.add(mb.build());
+                }
+            }
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            b.build().format(expected, options, new JSONFormat(), Integer.MAX_VALUE);
+            assertEquals(expected.toString(), out.toString());
+        }
+    }
+
+    @Test
+    void writesPrimitiveEntries() throws Exception {
+        ArrayTemplate numbers = new ArrayTemplate(new PrimitiveTemplate(Long.class, null));
+        UArray array = new UArray.Builder(numbers).add(1L).add(-2L).add(3L).build();
+        for (Format format : formats()) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            array.format(expected, null, format, Integer.MAX_VALUE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (SequenceWriter w = new SequenceWriter(out, format, numbers, null, Integer.MAX_VALUE, 3)) {
+                w.write(1L);
+                w.write(-2L);
+                w.write(3L);
+            }
+            assertArrayEquals(expected.toByteArray(), out.toByteArray(), format.getName());
+        }
+    }
+
+    @Test
+    void writingMoreThanDeclaredFails() throws Exception {
+        for (Format format : formats()) {
+            SequenceWriter w = new SequenceWriter(new ByteArrayOutputStream(), format, ARRAY, null, 0, 1);
+            w.write(map(0));
+            assertThrows(IllegalStateException.class, () -> w.write(map(1)));
+            w.close();
+            assertThrows(IllegalStateException.class, () -> w.write(map(1)));
+        }
+    }
+
+    @Test
+    void closingBeforeAllDeclaredEntriesFails() throws Exception {
+        for (Format format : formats()) {
+            SequenceWriter w = new SequenceWriter(new ByteArrayOutputStream(), format, ARRAY, null, 0, 3);
+            w.write(map(0));
+            assertThrows(FormatException.class, w::close);
+            //Closed anyway
+            assertThrows(IllegalStateException.class, () -> w.write(map(1)));
+        }
+    }
+
+    @Test
+    void unknownLengthFailsWhenFormatRequiresIt() {
+        for (Format format : formats()) {
+            if (format instanceof BinaryFormat) {
+                assertThrows(FormatException.class,
+                        () -> new SequenceWriter(new ByteArrayOutputStream(), format, ARRAY, null));
+            }
+        }
+    }
+
+    @Test
+    void entriesNotMatchingTemplateFail() throws Exception {
+        SequenceWriter w = new SequenceWriter(new ByteArrayOutputStream(), new JSONFormat(), ARRAY, null);
+        FieldException e = assertThrows(FieldException.class, () -> w.write(new UMap.Builder(INNER).set("v", 1L)));
+        assertEquals(FieldException.Reason.VALUE_TYPE_MISMATCH, e.reason);
+        assertThrows(FieldException.class, () -> w.write(new UMap.Builder(INNER).set("v", 1L).build()));
+        assertThrows(FieldException.class, () -> w.write("text"));
+        assertEquals(0, w.getCount());
+        w.close();
+    }
+
+    private static List<Format> formats() {
+        List<Format> formats = new ArrayList<>();
+        formats.add(new JSONFormat());
+        for (int mode = 0; mode < 8; mode++) {
+            formats.add(new BinaryFormat((mode & 1) != 0, (mode & 2) != 0, (mode & 4) != 0));
+        }
+        return formats;
+    }
+
+    private static FormatWriter.Options[] options() {
+        return new FormatWriter.Options[]{new FormatWriter.Options(false), new FormatWriter.Options(true, 2)};
+    }
+
+    private static UMap map(int i) {
+        return builder(i).build();
+    }
+
+    private static UMap.Builder builder(int i) {
+        UMap.Builder b = new UMap.Builder(TEMPLATE)
+                .set("id", (long) i)
+                .set("inner", new UMap.Builder(INNER).set("v", i * 10L).build())
+                .set("bio", "[" + i + "]");
+        if (i % 2 == 0) {
+            b.set("s", "s" + i);
+        }
+        return b;
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.fivesoft.umap.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Output of {@link Utf8StreamWriter} must be the same as of {@link OutputStreamWriter} with UTF-8.
+ */
+class Utf8StreamWriterTest {
+
+    private static final String PAIR = "\ud83d\ude00";
+
+    @Test
+    void surrogatePairsSplitAcrossWrites() throws Exception {
+        String s = "a" + PAIR + "\u00e9" + PAIR + PAIR + "\u20ac" + PAIR;
+        for (int split = 0; split <= s.length(); split++) {
+            for (int method = 0; method < 3; method++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Utf8StreamWriter w = new Utf8StreamWriter(out);
+                write(w, s, 0, split, method);
+                write(w, s, split, s.length(), method);
+                w.flush();
+                assertArrayEquals(s.getBytes(StandardCharsets.UTF_8), out.toByteArray(), "split=" + split + " method=" + method);
+            }
+        }
+    }
+
+    @Test
+    void pairCompletedAfterFlush() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8StreamWriter w = new Utf8StreamWriter(out);
+        w.write(PAIR.charAt(0));
+        w.flush();
+        w.write(PAIR.charAt(1));
+        w.flush();
+        assertArrayEquals(PAIR.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    void loneSurrogatesAreReplaced() throws Exception {
+        String[] strings = {
+                "\ud83d", "\ude00", "a\ud83db", "a\ude00b", "\ude00\ud83d", "\ud83d\ud83d\ude00", "\ud83d" + PAIR + "\ude00"
+        };
+        for (String s : strings) {
+            byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(expected, reference(s));
+            for (int method = 0; method < 3; method++) {
+                for (int split = 0; split <= s.length(); split++) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    Utf8StreamWriter w = new Utf8StreamWriter(out);
+                    write(w, s, 0, split, method);
+                    write(w, s, split, s.length(), method);
+                    //A high surrogate at the end is replaced on close
+                    w.close();
+                    assertArrayEquals(expected, out.toByteArray(), s + " split=" + split + " method=" + method);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pendingHighSurrogateBeforeEncodedBytes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8StreamWriter w = new Utf8StreamWriter(out);
+        w.write("a\ud83d");
+        w.writeBytes("\"b\":".getBytes(StandardCharsets.UTF_8));
+        w.write('\ude00');
+        w.flush();
+        assertEquals("a?\"b\":?", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void matchesOutputStreamWriter() throws Exception {
+        SplittableRandom random = new SplittableRandom(17);
+        char[] alphabet = {'a', 'z', '"', '\n', '\u007f', '\u0080', '\u07ff', '\u0800', '\u20ac', '\uffff',
+                '\ud800', '\udbff', '\udc00', '\udfff'};
+        for (int i = 0; i < 200; i++) {
+            //Some strings are longer than the buffer
+            char[] chars = new char[random.nextInt(i % 10 == 0 ? 40000 : 100)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String s = new String(chars);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Utf8StreamWriter w = new Utf8StreamWriter(out);
+            int p = 0;
+            while (p < s.length()) {
+                int next = Math.min(s.length(), p + 1 + random.nextInt(50));
+                write(w, s, p, next, random.nextInt(3));
+                p = next;
+            }
+            w.close();
+            assertArrayEquals(reference(s), out.toByteArray(), s);
+        }
+    }
+
+    private static void write(Writer w, String s, int from, int to, int method) throws Exception {
+        switch (method) {
+            case 0 -> w.write(s, from, to - from);
+            case 1 -> w.write(s.toCharArray(), from, to - from);
+            default -> {
+                for (int i = from; i < to; i++) {
+                    w.write(s.charAt(i));
+                }
+            }
+        }
+    }
+
+    private static byte[] reference(String s) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            w.write(s);
+        }
+        return out.toByteArray();
+    }
+
+}
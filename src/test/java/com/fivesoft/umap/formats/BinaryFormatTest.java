@@ -0,0 +1,371 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.BytesInputStream;
+import com.fivesoft.umap.format.Format;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.format.PushReader;
+import com.fivesoft.umap.template.ArrayTemplate;
+import com.fivesoft.umap.template.Key;
+import com.fivesoft.umap.template.MapTemplate;
+import com.fivesoft.umap.template.PrimitiveTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryFormatTest {
+
+    private static final MapTemplate INNER = new MapTemplate.Builder()
+            .addRequired("i", Integer.class)
+            .addRequired("s", String.class)
+            .build();
+
+    private static final ArrayTemplate INTS = new ArrayTemplate(new PrimitiveTemplate(Integer.class, null));
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("name", String.class)
+            .addOptional("note", String.class)
+            .addOptional("dflt", Integer.class, 7)
+            .addRequired("f", Float.class)
+            .addRequired("d", Double.class)
+            .addRequired("c", Character.class)
+            .addRequired("b", Boolean.class)
+            .addRequired("by", Byte.class)
+            .addRequired("sh", Short.class)
+            .addRequired("one", INNER)
+            .addRequired("nums", INTS)
+            .add(new Key("big", 5, false), INNER.asArray(), null)
+            .build();
+
+    @Test
+    void roundTrips() throws Exception {
+        for (BinaryFormat format : formats()) {
+            for (int k = 0; k < 20; k++) {
+                byte[] b = bytes(map(k), format, 10);
+                if (format.isCompact() || format.isSized() || format.isIndexed()) {
+                    assertEquals(header(format), b[0], name(format));
+                }
+                assertArrayEquals(b, bytes(TEMPLATE.readFormat(b, format, null), format, 10), name(format));
+                //Values cross the boundaries of the reads
+                UMap streamed = TEMPLATE.readFormat(slowStream(b, 5), format, null);
+                assertArrayEquals(b, bytes(streamed, format, 10), name(format));
+                assertEquals(json(map(k), 10), json(streamed, 10), name(format));
+            }
+        }
+    }
+
+    @Test
+    void readsSequencesOfMaps() throws Exception {
+        for (BinaryFormat format : formats()) {
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            for (int k = 0; k < 30; k++) {
+                all.write(bytes(map(k), format, 10));
+            }
+            Iterator<UMap> it = TEMPLATE.iterateFormat(slowStream(all.toByteArray(), 333), format, null);
+            for (int k = 0; k < 30; k++) {
+                assertTrue(it.hasNext(), name(format));
+                assertEquals(json(map(k), 10), json(it.next(), 10), name(format));
+            }
+            assertFalse(it.hasNext(), name(format));
+        }
+    }
+
+    @Test
+    void consecutiveReadsOfOneStream() throws Exception {
+        for (BinaryFormat format : formats()) {
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            int[] ends = new int[3];
+            for (int k = 0; k < ends.length; k++) {
+                all.write(bytes(map(k * 7), format, 10));
+                ends[k] = all.size();
+            }
+            byte[] b = all.toByteArray();
+            BytesInputStream bytesStream = new BytesInputStream(b);
+            for (InputStream in : new InputStream[]{new ByteArrayInputStream(b), slowStream(b, 3), bytesStream}) {
+                //Every map is read by a separate call, so by a new reader, which must not read past its map
+                for (int k = 0; k < ends.length; k++) {
+                    assertEquals(json(map(k * 7), 10), json(TEMPLATE.readFormat(in, format, null), 10), name(format));
+                    if (in == bytesStream) {
+                        assertEquals(ends[k], bytesStream.getPosition(), name(format));
+                    }
+                }
+                assertEquals(-1, in.read(), name(format));
+            }
+        }
+    }
+
+    @Test
+    void compactNumbersAreSmaller() throws Exception {
+        for (int k = 0; k < 20; k++) {
+            assertTrue(bytes(map(k), new BinaryFormat(true), 10).length < bytes(map(k), new BinaryFormat(), 10).length);
+        }
+    }
+
+    @Test
+    void compactReaderRejectsMissingHeader() throws Exception {
+        byte[] plain = bytes(map(2), new BinaryFormat(), 10);
+        assertThrows(FormatException.class, () -> TEMPLATE.readFormat(plain, new BinaryFormat(true), null));
+    }
+
+    @Test
+    void nestedArraysKeepPositionsPerDepth() throws Exception {
+        //Arrays nested deeper than the initial slots of the context, ending at every depth
+        ArrayTemplate deep = INTS;
+        for (int d = 0; d < 11; d++) {
+            deep = new ArrayTemplate(deep);
+        }
+        MapTemplate row = new MapTemplate.Builder()
+                .addRequired("cells", INTS)
+                .addRequired("one", INNER)
+                .build();
+        MapTemplate t = new MapTemplate.Builder()
+                .addRequired("deep", deep)
+                .addRequired("grid", new ArrayTemplate(row.asArray()))
+                .addRequired("after", INTS)
+                .build();
+        SplittableRandom random = new SplittableRandom(23);
+        for (BinaryFormat format : formats()) {
+            for (int k = 0; k < 30; k++) {
+                UArray.Builder grid = new UArray.Builder((ArrayTemplate) t.get("grid").getTemplate());
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    UArray.Builder rows = new UArray.Builder(row.asArray());
+                    for (int j = random.nextInt(4); j > 0; j--) {
+                        rows.add(new UMap.Builder(row)
+                                .set("cells", ints(random))
+                                .set("one", new UMap.Builder(INNER).set("i", j).set("s", "r" + j).build())
+                                .build());
+                    }
+                    grid.add(rows.build());
+                }
+                UMap m = new UMap.Builder(t)
+                        .set("deep", nested(deep, random))
+                        .set("grid", grid.build())
+                        .set("after", ints(random))
+                        .build();
+                byte[] b = bytes(m, format, 10);
+                assertEquals(json(m, 10), json(t.readFormat(b, format, null), 10), name(format));
+                assertEquals(json(m, 10), json(t.readFormat(slowStream(b, 1), format, null), 10), name(format));
+            }
+        }
+    }
+
+    @Test
+    void readsUpToMaxDetailLevel() throws Exception {
+        for (BinaryFormat format : formats()) {
+            byte[] b = bytes(map(4), format, 10);
+            UMap low = TEMPLATE.readFormat(new ByteArrayInputStream(b), format,
+                    new FormatReader.Options("UTF-8", false, 0));
+            assertFalse(low.containsKey("big"), name(format));
+            assertEquals(0, low.getMaxDetailLevel(), name(format));
+            assertEquals("n4", low.getRequired("name"), name(format));
+            //Sized arrays are skipped at once, also when the stream returns less than asked for
+            assertEquals(json(low, 10), json(TEMPLATE.readFormat(slowStream(b, 7), format,
+                    new FormatReader.Options("UTF-8", false, 0)), 10), name(format));
+            //A map read below the full detail level is written as it was read
+            assertArrayEquals(bytes(map(4), format, 0), bytes(low, format, 10), name(format));
+        }
+    }
+
+    @Test
+    void hugeStringLengthFailsWithoutAllocating() throws Exception {
+        MapTemplate t = new MapTemplate.Builder().addRequired("s", String.class).build();
+        UMap m = new UMap.Builder(t).set("s", "abc").build();
+        for (BinaryFormat format : formats()) {
+            byte[] b = bytes(m, format, 10);
+            int value = indexOf(b, "abc".getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream corrupted = new ByteArrayOutputStream();
+            if (format.isCompact()) {
+                //The length is a single byte varint
+                corrupted.write(b, 0, value - 1);
+                corrupted.write(new byte[]{(byte) 0xF8, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+            } else {
+                corrupted.write(b, 0, value - 4);
+                corrupted.write(new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF8});
+            }
+            corrupted.write(b, value, b.length - value);
+            byte[] c = corrupted.toByteArray();
+            assertThrows(FormatException.class, () -> t.readFormat(new ByteArrayInputStream(c), format, null),
+                    name(format));
+            assertThrows(FormatException.class, () -> t.readFormat(c, format, null), name(format));
+            assertThrows(FormatException.class, () -> {
+                PushReader reader = new PushReader(format, t, null, map -> {});
+                reader.feed(ByteBuffer.wrap(c));
+                reader.endOfInput();
+            }, name(format));
+        }
+    }
+
+    @Test
+    void viewsIndexedMaps() throws Exception {
+        for (BinaryFormat format : formats()) {
+            if (!format.isIndexed()) {
+                continue;
+            }
+            for (int k = 0; k < 12; k++) {
+                UMap m = map(k);
+                int level = k % 2 == 0 ? 10 : 0;
+                byte[] b = bytes(m, format, level);
+                //The map is placed at an offset of a larger buffer
+                ByteBuffer buffer = k % 3 == 0 ? ByteBuffer.allocateDirect(b.length + 20) : ByteBuffer.allocate(b.length + 20);
+                buffer.position(7);
+                buffer.put(b);
+                buffer.position(7);
+                UMap view = format.view(buffer, TEMPLATE);
+                assertEquals(7, buffer.position(), name(format));
+
+                assertEquals(m.<Long>getRequired("id"), view.getRequired("id"), name(format));
+                assertEquals(m.<String>getRequired("name"), view.getRequired("name"), name(format));
+                assertEquals(m.<String>getOptional("note"), view.getOptional("note"), name(format));
+                assertEquals(m.<Integer>getOptional("dflt"), view.getOptional("dflt"), name(format));
+                UMap one = view.getRequired("one");
+                assertEquals(k, (int) one.<Integer>getRequired("i"), name(format));
+                assertEquals(json(m.getRequired("nums"), level), json(view.getRequired("nums"), level), name(format));
+                if (level == 0) {
+                    assertThrows(IllegalArgumentException.class, () -> view.getRequired("big"), name(format));
+                    assertFalse(view.containsKey("big"), name(format));
+                }
+
+                assertEquals(json(m, level), json(view, level), name(format));
+                assertArrayEquals(b, bytes(view, format, 10), name(format));
+                int count = 0;
+                for (Map.Entry<String, Object> e : view) {
+                    assertTrue(view.containsKey(e.getKey()), e.getKey());
+                    count++;
+                }
+                assertEquals(count, view.size(), name(format));
+            }
+        }
+    }
+
+    @Test
+    void viewRejectsOtherLayouts() throws Exception {
+        byte[] b = bytes(map(1), new BinaryFormat(true, false, true), 10);
+        assertThrows(IllegalStateException.class, () -> new BinaryFormat(true).view(ByteBuffer.wrap(b), TEMPLATE));
+        assertThrows(FormatException.class, () -> new BinaryFormat(false, false, true).view(ByteBuffer.wrap(b), TEMPLATE));
+        assertThrows(FormatException.class, () -> new BinaryFormat(true, false, true)
+                .view(ByteBuffer.wrap(b, 0, 6), TEMPLATE));
+    }
+
+    private static List<BinaryFormat> formats() {
+        List<BinaryFormat> formats = new ArrayList<>();
+        for (int mode = 0; mode < 8; mode++) {
+            formats.add(new BinaryFormat((mode & 1) != 0, (mode & 2) != 0, (mode & 4) != 0));
+        }
+        return formats;
+    }
+
+    private static UMap map(int k) throws Exception {
+        UArray.Builder big = new UArray.Builder(INNER.asArray());
+        for (int j = 0; j < k * 3; j++) {
+            big.add(new UMap.Builder(INNER).set("i", j - 5).set("s", "v\u00e9".repeat(j % 50)).build());
+        }
+        UArray.Builder nums = new UArray.Builder(INTS);
+        for (int j = 0; j < k; j++) {
+            nums.add(j * 1_000_003 - 70_000);
+        }
+        UMap.Builder b = new UMap.Builder(TEMPLATE)
+                .set("id", k * -123_456_789_012L)
+                .set("name", "n" + k)
+                .set("f", k / 3f)
+                .set("d", -k / 7.0)
+                .set("c", (char) ('a' + k))
+                .set("b", k % 2 == 0)
+                .set("by", (byte) k)
+                .set("sh", (short) -k)
+                .set("one", new UMap.Builder(INNER).set("i", k).set("s", "x" + k).build())
+                .set("nums", nums.build())
+                .set("big", big.build());
+        if (k % 3 == 0) {
+            b.set("note", "note" + k);
+        }
+        if (k % 5 == 0) {
+            b.set("dflt", k);
+        }
+        return b.build();
+    }
+
+    private static UArray ints(SplittableRandom random) {
+        UArray.Builder b = new UArray.Builder(INTS);
+        for (int i = random.nextInt(4); i > 0; i--) {
+            b.add(random.nextInt());
+        }
+        return b.build();
+    }
+
+    private static UArray nested(ArrayTemplate template, SplittableRandom random) {
+        if (template == INTS) {
+            return ints(random);
+        }
+        UArray.Builder b = new UArray.Builder(template);
+        //Mostly a single entry, so the deepest arrays are reached
+        for (int i = random.nextInt(5) == 0 ? random.nextInt(3) : 1; i > 0; i--) {
+            b.add(nested((ArrayTemplate) template.getEntryTemplate(), random));
+        }
+        return b.build();
+    }
+
+    private static String name(BinaryFormat format) {
+        return "compact=" + format.isCompact() + " sized=" + format.isSized() + " indexed=" + format.isIndexed();
+    }
+
+    private static byte header(BinaryFormat format) {
+        return (byte) ((format.isCompact() ? BinaryFormat.HEADER_COMPACT : 0) |
+                (format.isSized() ? BinaryFormat.HEADER_SIZED : 0) |
+                (format.isIndexed() ? BinaryFormat.HEADER_INDEXED : 0));
+    }
+
+    private static byte[] bytes(UMap map, Format format, int detailLevel) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.format(out, null, format, detailLevel);
+        return out.toByteArray();
+    }
+
+    private static String json(Object value, int detailLevel) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (value instanceof UMap m) {
+            m.format(out, null, new JSONFormat(), detailLevel);
+        } else {
+            ((UArray) value).format(out, null, new JSONFormat(), detailLevel);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] data, byte[] part) {
+        outer:
+        for (int i = 0; i + part.length <= data.length; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (data[i + j] != part[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("Not found");
+    }
+
+    private static InputStream slowStream(byte[] data, int maxRead) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, maxRead));
+            }
+        };
+    }
+
+}
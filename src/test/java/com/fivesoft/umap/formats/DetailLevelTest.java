@@ -0,0 +1,139 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.format.Format;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.format.FormatWriter;
+import com.fivesoft.umap.template.ArrayTemplate;
+import com.fivesoft.umap.template.Key;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Maps read with a limited detail level skip values of keys above it.
+ */
+class DetailLevelTest {
+
+    private static final MapTemplate META = new MapTemplate.Builder()
+            .addRequired("created", Long.class)
+            .build();
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addOptional("name", String.class)
+            .addRequired("bio", String.class, 1)
+            .add("nick", 1, true, String.class, "none")
+            .add(new Key("meta", 2, false), META, null)
+            .addArray("tags", 1, false, META)
+            .addRequired("age", Long.class)
+            .build();
+
+    private static final UMap MAP = new UMap.Builder(TEMPLATE)
+            .set("id", 1L)
+            .set("name", "n")
+            .set("bio", "{\"[b]\"}")
+            .set("nick", "k")
+            .set("meta", new UMap.Builder(META).set("created", 5L).build())
+            .set("tags", new UArray.Builder(new ArrayTemplate(META))
+                    .add(new UMap.Builder(META).set("created", 6L).build()).build())
+            .set("age", 30L)
+            .build();
+
+    @Test
+    void readsOnlyKeysUpToTheLevel() throws Exception {
+        for (Format format : formats()) {
+            byte[] data = write(MAP, format, Integer.MAX_VALUE);
+            for (int level = 0; level < 3; level++) {
+                UMap m = read(data, format, level);
+                String name = format.getClass().getSimpleName() + " " + level;
+                assertEquals(level, m.getMaxDetailLevel(), name);
+                assertEquals(1L, (long) m.<Long>getRequired("id"), name);
+                assertEquals("n", m.getOptional("name"), name);
+                //Keys after the skipped ones are still read
+                assertEquals(30L, (long) m.<Long>getRequired("age"), name);
+                assertEquals(level >= 1, m.containsKey("bio"), name);
+                assertEquals(level >= 1, m.containsKey("tags"), name);
+                assertEquals(level >= 2, m.containsKey("meta"), name);
+                if (level >= 1) {
+                    assertEquals("{\"[b]\"}", m.getRequired("bio"), name);
+                    assertEquals("k", m.getOptional("nick"), name);
+                }
+                if (level >= 2) {
+                    assertEquals(5L, (long) m.<UMap>getRequired("meta").<Long>getRequired("created"), name);
+                }
+            }
+        }
+    }
+
+    @Test
+    void omittedKeysHaveNoValues() throws Exception {
+        for (Format format : formats()) {
+            UMap m = read(write(MAP, format, Integer.MAX_VALUE), format, 0);
+            String name = format.getClass().getSimpleName();
+            assertThrows(IllegalArgumentException.class, () -> m.getRequired("bio"), name);
+            assertThrows(IllegalArgumentException.class, () -> m.getRequired("meta"), name);
+            //Optional keys above the level read as their default values
+            assertEquals("none", m.getOptional("nick"), name);
+            assertFalse(m.containsKey("nick"), name);
+            assertFalse(m.containsKey("bio"), name);
+            assertTrue(m.containsKey("id"), name);
+            //Unknown keys are still rejected
+            assertThrows(IllegalArgumentException.class, () -> m.getRequired("unknown"), name);
+            assertFalse(m.containsKey("unknown"), name);
+        }
+    }
+
+    @Test
+    void limitedMapsAreWrittenUpToTheirOwnLevel() throws Exception {
+        for (Format format : formats()) {
+            UMap limited = read(write(MAP, format, Integer.MAX_VALUE), format, 0);
+            String name = format.getClass().getSimpleName();
+            //Writing it with a higher level gives the same output, as writing the full map with its level
+            byte[] expected = write(MAP, format, 0);
+            assertArrayEquals(expected, write(limited, format, Integer.MAX_VALUE), name);
+            assertArrayEquals(expected, write(limited, format, 1), name);
+        }
+        //Binary format doesn't store keys, so only the JSON output is read back
+        UMap again = read(write(MAP, new JSONFormat(), 0), new JSONFormat(), 0);
+        assertEquals(30L, (long) again.<Long>getRequired("age"));
+        //Values above the level are missing, so the output can't be read at a higher level
+        byte[] json = write(read(write(MAP, new JSONFormat(), 2), new JSONFormat(), 0), new JSONFormat(), 2);
+        assertEquals("{\"age\":30,\"id\":1,\"name\":\"n\"}", new String(json, StandardCharsets.UTF_8));
+        assertThrows(FieldException.class, () -> read(json, new JSONFormat(), 2));
+    }
+
+    @Test
+    void limitedBuildersDontRequireKeysAboveTheLevel() {
+        UMap m = new UMap.Builder(TEMPLATE, false, false, 0).set("id", 1L).set("age", 2L).build();
+        assertEquals(0, m.getMaxDetailLevel());
+        assertFalse(m.containsKey("bio"));
+        assertThrows(IllegalArgumentException.class, () -> m.getRequired("bio"));
+        assertEquals(1L, (long) m.<Long>getRequired("id"));
+    }
+
+    private static Format[] formats() {
+        return new Format[]{new JSONFormat(), new BinaryFormat()};
+    }
+
+    private static byte[] write(UMap map, Format format, int detailLevel) throws IOException, FormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.format(out, new FormatWriter.Options(false, 0), format, detailLevel);
+        return out.toByteArray();
+    }
+
+    private static UMap read(byte[] data, Format format, int detailLevel) throws IOException, FormatException {
+        return TEMPLATE.readFormat(new ByteArrayInputStream(data), format,
+                new FormatReader.Options("UTF-8", false, detailLevel));
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.FormatWriter;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Output of {@link JsonEscaper} must be the same as of the escaping it replaced.
+ */
+class JsonEscaperTest {
+
+    @Test
+    void escapesLikeBefore() throws Exception {
+        for (String s : samples()) {
+            assertEquals(encodeString(s), JsonEscaper.escape(s), s);
+            StringWriter w = new StringWriter();
+            JsonEscaper.write(w, s);
+            assertEquals(encodeString(s), w.toString(), s);
+        }
+    }
+
+    @Test
+    void escapesEveryControlChar() {
+        for (char c = 0; c < 0x20; c++) {
+            String escaped = JsonEscaper.escape(String.valueOf(c));
+            assertEquals(encodeString(String.valueOf(c)), escaped);
+            assertEquals('\\', escaped.charAt(0));
+        }
+        assertEquals("\\u0000\\u001f\\u000b", JsonEscaper.escape("\u0000\u001f\u000b"));
+        assertEquals("\\\"\\\\\\/", JsonEscaper.escape("\"\\/"));
+        //DEL and non-ASCII chars are not escaped
+        assertEquals("\u007f\u0080\u2028\ud83d\ude00", JsonEscaper.escape("\u007f\u0080\u2028\ud83d\ude00"));
+    }
+
+    @Test
+    void writesEscapedValues() throws Exception {
+        MapTemplate template = new MapTemplate.Builder().addRequired("v", String.class).build();
+        for (String s : samples()) {
+            UMap map = new UMap.Builder(template).set("v", s).build();
+            for (String encoding : new String[]{"UTF-8", "UTF-16"}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                map.format(out, new FormatWriter.Options(encoding, false), new JSONFormat(), 0);
+                assertEquals("{\"v\":\"" + encodeString(s) + "\"}", out.toString(encoding), s);
+            }
+        }
+    }
+
+    private static List<String> samples() {
+        List<String> samples = new ArrayList<>(List.of(
+                "", "plain", "\"", "\\", "/", "\"start", "end\"", "\\\\mid//dle\"\"",
+                "\n", "a\tb\bc\nd\re\ff", "\u0000", "\u0001\u001f", "x\u0007", "\u000by",
+                "za\u017c\u00f3\u0142\u0107 g\u0119\u015bl\u0105 ja\u017a\u0144", "\u20ac\"\u20ac", "\ud83d\ude00/", "\u2028\u2029", "\u007f"
+        ));
+        SplittableRandom random = new SplittableRandom(15);
+        //Code points, so surrogate pairs are not split
+        int[] alphabet = "ab\"\\/\n\t\u0000\u001f\u00e9\u20ac\ud83d\ude00 ".codePoints().toArray();
+        for (int i = 0; i < 500; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(40); j > 0; j--) {
+                sb.appendCodePoint(alphabet[random.nextInt(alphabet.length)]);
+            }
+            samples.add(sb.toString());
+        }
+        return samples;
+    }
+
+    /**
+     * Escaping of the JSON writer, before it was replaced by {@link JsonEscaper}.
+     */
+    private static String encodeString(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0, length = s.length(); i < length; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append('\\').append(c);
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonKeysTest {
+
+    //Keys are prefixes of each other
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("a", Integer.class)
+            .addRequired("ab", Integer.class)
+            .addRequired("abc", Integer.class)
+            .addOptional("b", Integer.class)
+            .build();
+
+    @Test
+    void resolvesKeysWhichArePrefixesOfOtherKeys() throws Exception {
+        UMap m = read("{\"abc\":3,\"a\":1,\"b\":4,\"ab\":2}");
+        assertValues(m, 4);
+    }
+
+    @Test
+    void resolvesEscapedKeys() throws Exception {
+        //Escaped keys are decoded before they are matched
+        UMap m = read("{\"\\u0061\":1,\"a\\u0062\":2,\"ab\\u0063\":3,\"\\u0062\":4}");
+        assertValues(m, 4);
+    }
+
+    @Test
+    void resolvesKeysCrossingBufferBoundaries() throws Exception {
+        byte[] json = "{\"a\":1,\"ab\":2,\"abc\":3,\"b\":4}".getBytes(StandardCharsets.UTF_8);
+        for (int maxRead = 1; maxRead < 6; maxRead++) {
+            assertValues(TEMPLATE.readFormat(slowStream(json, maxRead), new JSONFormat(), null), 4);
+        }
+    }
+
+    @Test
+    void readsKeysInEveryOrder() throws Exception {
+        //The predicted key is the next one of the template, which may be a prefix of the actual key or the other way round
+        String[] entries = {"\"a\":1", "\"ab\":2", "\"abc\":3", "\"b\":4"};
+        for (int[] order : permutations(entries.length)) {
+            StringBuilder all = new StringBuilder("{");
+            StringBuilder required = new StringBuilder("{");
+            for (int i : order) {
+                all.append(all.length() > 1 ? "," : "").append(entries[i]);
+                if (i != 3) {
+                    required.append(required.length() > 1 ? "," : "").append(entries[i]);
+                }
+            }
+            assertValues(read(all.append('}').toString()), 4);
+            assertValues(read(required.append('}').toString()), null);
+        }
+    }
+
+    @Test
+    void duplicatedKeysFail() {
+        //After the first "a", the predicted key is "ab"
+        assertThrows(FieldException.class, () -> read("{\"a\":1,\"a\":1,\"ab\":2,\"abc\":3}"));
+        assertThrows(FieldException.class, () -> read("{\"a\":1,\"ab\":2,\"abc\":3,\"abc\":3}"));
+    }
+
+    @Test
+    void predictsKeysOfNestedMaps() throws Exception {
+        MapTemplate outer = new MapTemplate.Builder()
+                .addRequired("a", Integer.class)
+                .addRequired("inner", TEMPLATE)
+                .addRequired("ab", Integer.class)
+                .build();
+        String json = "{\"a\":0,\"inner\":{\"a\":1,\"ab\":2,\"abc\":3},\"ab\":5}";
+        for (UMap m : new UMap[]{
+                outer.readFormat(json.getBytes(StandardCharsets.UTF_8), new JSONFormat(), null),
+                outer.readFormat(json.getBytes(StandardCharsets.UTF_16), new JSONFormat(),
+                        new FormatReader.Options("UTF-16", false))}) {
+            assertEquals(0, (int) m.<Integer>getRequired("a"));
+            assertValues(m.getRequired("inner"), null);
+            assertEquals(5, (int) m.<Integer>getRequired("ab"));
+        }
+    }
+
+    private static void assertValues(UMap m, Integer b) {
+        assertEquals(1, (int) m.<Integer>getRequired("a"));
+        assertEquals(2, (int) m.<Integer>getRequired("ab"));
+        assertEquals(3, (int) m.<Integer>getRequired("abc"));
+        assertEquals(b, m.getOptional("b"));
+    }
+
+    /**
+     * Reads the document through both tokenizers and checks they give the same map.
+     */
+    private static UMap read(String json) throws FormatException {
+        UMap utf8 = TEMPLATE.readFormat(json.getBytes(StandardCharsets.UTF_8), new JSONFormat(), null);
+        UMap chars = TEMPLATE.readFormat(json.getBytes(StandardCharsets.UTF_16), new JSONFormat(),
+                new FormatReader.Options("UTF-16", false));
+        for (String key : new String[]{"a", "ab", "abc"}) {
+            assertEquals(utf8.<Integer>getRequired(key), chars.getRequired(key), key);
+        }
+        assertEquals(utf8.<Integer>getOptional("b"), chars.getOptional("b"));
+        return utf8;
+    }
+
+    private static List<int[]> permutations(int n) {
+        List<int[]> result = new ArrayList<>();
+        permute(new int[n], 0, new boolean[n], result);
+        return result;
+    }
+
+    private static void permute(int[] current, int index, boolean[] used, List<int[]> result) {
+        if (index == current.length) {
+            result.add(current.clone());
+            return;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (!used[i]) {
+                used[i] = true;
+                current[index] = i;
+                permute(current, index + 1, used, result);
+                used[i] = false;
+            }
+        }
+    }
+
+    private static InputStream slowStream(byte[] data, int maxRead) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, maxRead));
+            }
+        };
+    }
+
+}
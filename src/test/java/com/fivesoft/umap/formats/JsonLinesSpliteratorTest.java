@@ -0,0 +1,156 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonLinesSpliteratorTest {
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("text", String.class)
+            .build();
+
+    @Test
+    void readsRangeLargerThanWindowInOrder() throws IOException {
+        Path file = writeLines(5000, false);
+        try {
+            List<Long> ids = read(file, 256, false);
+            assertEquals(5000, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals((long) i, (long) ids.get(i));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void readsSplitRangesInParallel() throws IOException {
+        //Large enough to be split, every range is still read in small windows
+        Path file = writeLines(60000, true);
+        try {
+            assertTrue(Files.size(file) > JsonLinesSpliterator.MIN_SPLIT * 2);
+            List<Long> ids = read(file, 4096, true);
+            assertEquals(60000, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals((long) i, (long) ids.get(i));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void windowEndingExactlyAtNewLine() throws IOException {
+        Path file = Files.createTempFile("umap", ".jsonl");
+        try {
+            String line = "{\"id\":1,\"text\":\"abc\"}\n";
+            Files.writeString(file, line + line + line, StandardCharsets.UTF_8);
+            assertEquals(3, read(file, line.length(), false).size());
+            assertEquals(3, read(file, line.length() * 2L - 1, false).size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void lineLongerThanWindowFails() throws IOException {
+        Path file = Files.createTempFile("umap", ".jsonl");
+        try {
+            Files.writeString(file, "{\"id\":1,\"text\":\"" + "x".repeat(300) + "\"}\n{\"id\":2,\"text\":\"\"}\n",
+                    StandardCharsets.UTF_8);
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> read(file, 100, false));
+            assertTrue(e.getMessage().contains("Line is longer than 100 bytes"), e.getMessage());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void readArrayParallelKeepsFileOrder() throws IOException {
+        Path file = writeLines(60000, false);
+        try {
+            UArray array = new JSONLinesFormat().readArrayParallel(file, TEMPLATE, null);
+            assertEquals(60000, array.size());
+            for (int i = 0; i < array.size(); i++) {
+                assertEquals((long) i, (long) array.<UMap>get(i).<Long>getRequired("id"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void readsLastLineWithoutNewLine() throws IOException {
+        for (int count : new int[]{1, 2, 60000}) {
+            Path file = writeLines(count, false);
+            try (Stream<UMap> maps = new JSONLinesFormat().readParallel(file, TEMPLATE, null)) {
+                Set<Long> ids = maps.map(m -> m.<Long>getRequired("id")).collect(Collectors.toSet());
+                assertEquals(count, ids.size());
+                assertTrue(ids.contains(count - 1L));
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void closingStreamClosesChannel() throws IOException {
+        Path file = writeLines(10, true);
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            Stream<UMap> maps = new JSONLinesFormat().streamChannel(channel, TEMPLATE, null);
+            assertEquals(10, maps.count());
+            assertTrue(channel.isOpen());
+            maps.close();
+            assertFalse(channel.isOpen());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<Long> read(Path file, long maxWindow, boolean parallel) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            JsonLinesSpliterator spliterator = new JsonLinesSpliterator(channel, TEMPLATE, new JSONLinesFormat(),
+                    FormatReader.Options.getOrDefault(null), 0, channel.size(), maxWindow);
+            return StreamSupport.stream(spliterator, parallel)
+                    .map(m -> m.<Long>getRequired("id"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Path writeLines(int count, boolean trailingNewLine) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append("{\"id\":").append(i).append(",\"text\":\"").append("y".repeat(i % 40)).append("\"}");
+        }
+        if (trailingNewLine) {
+            sb.append('\n');
+        }
+        Path file = Files.createTempFile("umap", ".jsonl");
+        Files.writeString(file, sb, StandardCharsets.UTF_8);
+        return file;
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.format.FormatWriter;
+import com.fivesoft.umap.format.UncheckedFormatException;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonLinesTest {
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addOptional("s", String.class)
+            .build();
+
+    @Test
+    void emptyInputHasNoMaps() {
+        for (String input : new String[]{"", "\n", " \t\r\n\n  "}) {
+            Iterator<UMap> it = TEMPLATE.iterateFormat(stream(input), new JSONLinesFormat(), null);
+            assertFalse(it.hasNext());
+            assertThrows(NoSuchElementException.class, it::next);
+        }
+    }
+
+    @Test
+    void readsLinesWithAndWithoutTrailingNewLine() {
+        assertEquals(List.of(1L), ids("{\"id\":1}"));
+        assertEquals(List.of(1L), ids("{\"id\":1}\n"));
+        assertEquals(List.of(1L, 2L), ids("{\"id\":1}\r\n{\"id\":2}"));
+        //Blank lines and trailing whitespace are skipped
+        assertEquals(List.of(1L, 2L, 3L), ids("\n{\"id\":1}  \n\n\t{\"id\":2}\n{\"id\":3}\n \n\t"));
+    }
+
+    @Test
+    void readsWrittenMaps() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long i = 0; i < 1000; i++) {
+            new UMap.Builder(TEMPLATE).set("id", i).set("s", "line\n" + i).build()
+                    .format(out, new FormatWriter.Options(false), new JSONLinesFormat(), 0);
+        }
+        List<UMap> maps = TEMPLATE.readAll(new ByteArrayInputStream(out.toByteArray()), new JSONLinesFormat())
+                .collect(Collectors.toList());
+        assertEquals(1000, maps.size());
+        for (int i = 0; i < maps.size(); i++) {
+            assertEquals((long) i, (long) maps.get(i).<Long>getRequired("id"));
+            assertEquals("line\n" + i, maps.get(i).getOptional("s"));
+        }
+    }
+
+    @Test
+    void errorsAreThrownByTheIterator() {
+        Iterator<UMap> it = TEMPLATE.iterateFormat(stream("{\"id\":1}\n{\"id\":2\n"), new JSONLinesFormat(), null);
+        assertEquals(1L, (long) it.next().<Long>getRequired("id"));
+        assertThrows(UncheckedFormatException.class, it::next);
+
+        assertThrows(UncheckedFormatException.class, () -> ids("{\"id\":1}\n[1]\n"));
+        assertThrows(UncheckedFormatException.class, () -> ids("{\"id\":1}\nx\n"));
+        //Field errors are unchecked already
+        assertThrows(FieldException.class, () -> ids("{\"id\":1}\n{\"id\":\"x\"}\n"));
+    }
+
+    private static List<Long> ids(String input) {
+        return TEMPLATE.readAll(stream(input), new JSONLinesFormat())
+                .map(m -> m.<Long>getRequired("id"))
+                .collect(Collectors.toList());
+    }
+
+    private static InputStream stream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
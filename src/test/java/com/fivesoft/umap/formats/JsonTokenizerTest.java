@@ -0,0 +1,258 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.BytesInputStream;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.format.FormatWriter;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads the same documents through every input path of {@link JSONFormat}, so all tokenizers are covered.
+ */
+class JsonTokenizerTest {
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("s", String.class)
+            .addOptional("o", String.class)
+            .build();
+
+    private interface Path {
+        UMap read(byte[] json) throws IOException, FormatException;
+    }
+
+    /**
+     * Paths reading UTF-8 bytes.
+     */
+    private static Map<String, Path> bytePaths() {
+        Map<String, Path> paths = new LinkedHashMap<>();
+        JSONFormat format = new JSONFormat();
+        paths.put("bytes", json -> TEMPLATE.readFormat(json, format, null));
+        //Reads at most 3 bytes at a time, so tokens cross the buffer boundary
+        paths.put("stream", json -> TEMPLATE.readFormat(slowStream(json, 3), format, null));
+        paths.put("indexed", json -> TEMPLATE.readFormat(new BytesInputStream(json), format,
+                new JSONFormat.ReaderOptions(true)));
+        //Streams are not indexed, but read in blocks as usual
+        paths.put("indexed stream", json -> TEMPLATE.readFormat(slowStream(json, 5), format,
+                new JSONFormat.ReaderOptions(true)));
+        //String fields are decoded on first access
+        JSONFormat.ReaderOptions lazy = new JSONFormat.ReaderOptions("UTF-8", false, Integer.MAX_VALUE, false, true);
+        JSONFormat.ReaderOptions lazyIndexed = new JSONFormat.ReaderOptions("UTF-8", false, Integer.MAX_VALUE, true, true);
+        paths.put("lazy", json -> TEMPLATE.readFormat(json, format, lazy));
+        paths.put("lazy indexed", json -> TEMPLATE.readFormat(json, format, lazyIndexed));
+        paths.put("lazy stream", json -> TEMPLATE.readFormat(slowStream(json, 3), format, lazy));
+        return paths;
+    }
+
+    private static Map<String, Path> allPaths() {
+        Map<String, Path> paths = bytePaths();
+        JSONFormat format = new JSONFormat();
+        //Other encodings are decoded to chars first
+        paths.put("utf-16", json -> TEMPLATE.readFormat(
+                new String(json, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_16), format,
+                new FormatReader.Options("UTF-16", false)));
+        paths.put("utf-16 stream", json -> TEMPLATE.readFormat(
+                slowStream(new String(json, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_16), 5), format,
+                new FormatReader.Options("UTF-16", false)));
+        //Characters are parsed without encoding them to bytes
+        paths.put("string", json -> TEMPLATE.readFormat(new String(json, StandardCharsets.UTF_8), format, null));
+        paths.put("char sequence", json -> TEMPLATE.readFormat(
+                CharBuffer.wrap(new String(json, StandardCharsets.UTF_8)), format, null));
+        return paths;
+    }
+
+    @Test
+    void readsEscapeSequences() throws Exception {
+        String json = "{\"id\":1,\"s\":\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\\u00e9\\u20AC\\ud83d\\ude00\",\"o\":\"\\u0000x\"}";
+        for (Map.Entry<String, Path> e : allPaths().entrySet()) {
+            UMap m = e.getValue().read(json.getBytes(StandardCharsets.UTF_8));
+            assertEquals("a\"b\\c/d\b\f\n\r\t\u00e9\u20ac\ud83d\ude00", m.getRequired("s"), e.getKey());
+            assertEquals("\u0000x", m.getOptional("o"), e.getKey());
+        }
+    }
+
+    @Test
+    void readsUnknownEscapesLiterally() throws Exception {
+        String json = "{\"id\":1,\"s\":\"a\\x\\'\"}";
+        for (Map.Entry<String, Path> e : allPaths().entrySet()) {
+            assertEquals("ax'", e.getValue().read(json.getBytes(StandardCharsets.UTF_8)).getRequired("s"), e.getKey());
+        }
+    }
+
+    @Test
+    void readsUnescapedUnicode() throws Exception {
+        //Longer than the read buffers
+        String value = "z\u00e9\u20ac\ud83d\ude00".repeat(2000);
+        String json = "{\"id\":-9223372036854775808,\"s\":\"" + value + "\",\"o\":null}";
+        for (Map.Entry<String, Path> e : allPaths().entrySet()) {
+            UMap m = e.getValue().read(json.getBytes(StandardCharsets.UTF_8));
+            assertEquals(Long.MIN_VALUE, (long) m.<Long>getRequired("id"), e.getKey());
+            assertEquals(value, m.getRequired("s"), e.getKey());
+            assertNull(m.getOptional("o"), e.getKey());
+        }
+    }
+
+    @Test
+    void readsWhitespaceBetweenTokens() throws Exception {
+        String json = " \t\r\n{ \"id\" :\n2 ,\r\n\t\"s\" : \"x\" , \"o\" :\"y\" }\n";
+        for (Map.Entry<String, Path> e : allPaths().entrySet()) {
+            UMap m = e.getValue().read(json.getBytes(StandardCharsets.UTF_8));
+            assertEquals(2L, (long) m.<Long>getRequired("id"), e.getKey());
+            assertEquals("x", m.getRequired("s"), e.getKey());
+            assertEquals("y", m.getOptional("o"), e.getKey());
+        }
+    }
+
+    @Test
+    void readsEscapedQuotesAndBackslashesAtEveryOffset() throws Exception {
+        //The structural index finds escaped quotes eight bytes at a time, so runs of backslashes cross its blocks
+        String[] runs = {"\\\"", "\\\\", "\\\\\\\"", "\\\\\\\\\\\"x\\\\"};
+        String[] decoded = {"\"", "\\", "\\\"", "\\\\\"x\\"};
+        for (int pad = 0; pad < 17; pad++) {
+            for (int i = 0; i < runs.length; i++) {
+                String json = "{\"id\":1,\"s\":\"" + "x".repeat(pad) + runs[i] + "\",\"o\":\"" + runs[i] + "y\"}";
+                for (Map.Entry<String, Path> e : allPaths().entrySet()) {
+                    UMap m = e.getValue().read(json.getBytes(StandardCharsets.UTF_8));
+                    assertEquals("x".repeat(pad) + decoded[i], m.getRequired("s"), e.getKey() + " " + json);
+                    assertEquals(decoded[i] + "y", m.getOptional("o"), e.getKey() + " " + json);
+                }
+            }
+        }
+    }
+
+    @Test
+    void indexedStreamIsNotReadPastRootValue() throws Exception {
+        byte[] json = "{\"id\":1,\"s\":\"x\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] input = Arrays.copyOf(json, json.length + (1 << 20));
+        Arrays.fill(input, json.length, input.length, (byte) ' ');
+        ByteArrayInputStream in = new ByteArrayInputStream(input);
+        //Not a BytesInputStream, so it's not loaded to memory to be indexed
+        UMap m = TEMPLATE.readFormat(new FilterInputStream(in) {}, new JSONFormat(), new JSONFormat.ReaderOptions(true));
+        assertEquals("x", m.getRequired("s"));
+        assertTrue(in.available() > input.length - (64 << 10), "Read " + (input.length - in.available()) + " bytes");
+    }
+
+    @Test
+    void lazyStringsDontReferToTheCallersArray() throws Exception {
+        for (boolean indexed : new boolean[]{false, true}) {
+            JSONFormat.ReaderOptions options = new JSONFormat.ReaderOptions("UTF-8", false, Integer.MAX_VALUE, indexed, true);
+            byte[] json = "{\"id\":1,\"s\":\"plain\",\"o\":\"e\\u0073c\"}".getBytes(StandardCharsets.UTF_8);
+            UMap m = TEMPLATE.readFormat(new BytesInputStream(json), new JSONFormat(), options);
+            //The caller may reuse the array before the values are accessed
+            Arrays.fill(json, (byte) 'x');
+            assertEquals("plain", m.getRequired("s"));
+            assertEquals("esc", m.getOptional("o"));
+        }
+    }
+
+    @Test
+    void readsCharSequencesCopied() throws Exception {
+        JSONFormat.ReaderOptions lazy = new JSONFormat.ReaderOptions("UTF-8", false, Integer.MAX_VALUE, false, true);
+        StringBuilder json = new StringBuilder("{\"id\":1,\"s\":\"plain\",\"o\":\"e\\u0073c\"}");
+        UMap m = TEMPLATE.readFormat(json, new JSONFormat(), lazy);
+        //The characters may be modified before the values are accessed
+        json.setLength(0);
+        json.append("x".repeat(40));
+        assertEquals("plain", m.getRequired("s"));
+        assertEquals("esc", m.getOptional("o"));
+
+        //Only the given range of the sequence is read
+        String text = "{\"id\":2,\"s\":\"z\"}";
+        m = TEMPLATE.readFormat(CharBuffer.wrap("xx" + text + "yy", 2, 2 + text.length()), new JSONFormat(), null);
+        assertEquals(2L, (long) m.<Long>getRequired("id"));
+    }
+
+    @Test
+    void writtenStringsReadBack() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0; c < 0x800; c++) {
+            if (!Character.isSurrogate(c)) {
+                sb.append(c);
+            }
+        }
+        sb.append("\ud83d\ude00\"\\");
+        UMap map = new UMap.Builder(TEMPLATE).set("id", 7L).set("s", sb.toString()).set("o", "\u2028\u2029").build();
+        for (boolean pretty : new boolean[]{false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            map.format(out, new FormatWriter.Options(pretty, 2), new JSONFormat(), 10);
+            for (Map.Entry<String, Path> e : allPaths().entrySet()) {
+                UMap m = e.getValue().read(out.toByteArray());
+                assertEquals(sb.toString(), m.getRequired("s"), e.getKey());
+                assertEquals("\u2028\u2029", m.getOptional("o"), e.getKey());
+            }
+        }
+    }
+
+    @Test
+    void invalidUtf8IsReplacedTheSameWayWithAndWithoutEscapes() throws Exception {
+        int[][] sequences = {
+                {0xF8, 0x80, 0x80}, //Invalid lead byte
+                {0xFF},
+                {0xC0, 0xAF}, //Overlong '/'
+                {0xE0, 0x80, 0xAF},
+                {0xED, 0xA0, 0x80}, //Encoded surrogate
+                {0xF4, 0x90, 0x80, 0x80}, //Above U+10FFFF
+                {0xE2, 0x82}, //Truncated
+                {0x80}, //Lone continuation byte
+                {0xE2, 0x82, 0xAC}, //Valid, for comparison
+        };
+        for (int[] sequence : sequences) {
+            byte[] raw = new byte[sequence.length];
+            for (int i = 0; i < raw.length; i++) {
+                raw[i] = (byte) sequence[i];
+            }
+            String decoded = new String(raw, StandardCharsets.UTF_8);
+            for (String prefix : new String[]{"", "\\n", "a\\u0041"}) {
+                String expected = prefix.replace("\\n", "\n").replace("\\u0041", "A") + decoded + "x";
+                ByteArrayOutputStream json = new ByteArrayOutputStream();
+                json.write(("{\"id\":1,\"s\":\"" + prefix).getBytes(StandardCharsets.UTF_8));
+                json.write(raw);
+                json.write("x\"}".getBytes(StandardCharsets.UTF_8));
+                for (Map.Entry<String, Path> e : bytePaths().entrySet()) {
+                    assertEquals(expected, e.getValue().read(json.toByteArray()).getRequired("s"),
+                            e.getKey() + " " + prefix);
+                }
+            }
+        }
+    }
+
+    @Test
+    void malformedStringsFail() {
+        String[] documents = {
+                "{\"id\":1,\"s\":\"\\u12g4\"}",
+                "{\"id\":1,\"s\":\"unterminated",
+                "{\"id\":1,\"s\":\"\\u12",
+        };
+        for (String json : documents) {
+            for (Map.Entry<String, Path> e : allPaths().entrySet()) {
+                assertThrows(FormatException.class, () -> e.getValue().read(json.getBytes(StandardCharsets.UTF_8)),
+                        e.getKey() + ": " + json);
+            }
+        }
+    }
+
+    private static InputStream slowStream(byte[] data, int maxRead) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, maxRead));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Numbers and booleans are parsed into primitive token slots, with a fallback to the string literal path.
+ * Both must give the same results, so values are compared with the JDK parsers.
+ */
+class JsonValuesTest {
+
+    @Test
+    void readsIntegersWithinTheRangeOfTheType() throws Exception {
+        assertEquals(Long.MAX_VALUE, read(Long.class, "9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, read(Long.class, "-9223372036854775808"));
+        assertEquals(0L, read(Long.class, "-0"));
+        assertEquals(Integer.MIN_VALUE, read(Integer.class, "-2147483648"));
+        assertEquals((short) 32767, read(Short.class, "32767"));
+        assertEquals((byte) -128, read(Byte.class, "-128"));
+        //Quoted numbers are parsed as well
+        assertEquals(7L, read(Long.class, "\"7\""));
+
+        for (String overflow : new String[]{"9223372036854775808", "-9223372036854775809", "12345678901234567890123"}) {
+            assertThrows(FieldException.class, () -> read(Long.class, overflow), overflow);
+        }
+        assertThrows(FieldException.class, () -> read(Integer.class, "2147483648"));
+        assertThrows(FieldException.class, () -> read(Short.class, "32768"));
+        assertThrows(FieldException.class, () -> read(Byte.class, "128"));
+        for (String decimal : new String[]{"1.0", "1e2", "1.", "-", "1e"}) {
+            assertThrows(FieldException.class, () -> read(Long.class, decimal), decimal);
+        }
+    }
+
+    @Test
+    void readsDoublesAsDoubleParseDouble() throws Exception {
+        String[] literals = {"0", "-0", "1.5", "-2.5e3", "1e22", "1e23", "1E-22", "0.1", "0.30000000000000004",
+                "9223372036854775807", "9223372036854775808", "12345678901234567890123", "123456789012345678901.5",
+                "1.7976931348623157e308", "4.9e-324", "2e-324", "1e-400", "2.5E-1000", "1e0010", "1."};
+        for (String literal : literals) {
+            assertEquals(Double.parseDouble(literal), read(Double.class, literal), literal);
+        }
+        for (String infinite : new String[]{"1.8e308", "1E1000", "-1E1000"}) {
+            assertThrows(FieldException.class, () -> read(Double.class, infinite), infinite);
+        }
+    }
+
+    @Test
+    void readsFloatsAsFloatParseFloat() throws Exception {
+        String[] literals = {"0", "-0", "1.1", "0.1", "16777217", "3.4028235e38", "1.4e-45", "1e-50",
+                "0.30000000000000004", "9223372036854775808", "123456789012345678901.5", "2.5E-1000", "1e0010"};
+        for (String literal : literals) {
+            assertEquals(Float.parseFloat(literal), read(Float.class, literal), literal);
+        }
+        for (String infinite : new String[]{"3.5e38", "1.7976931348623157e308", "1E1000"}) {
+            assertThrows(FieldException.class, () -> read(Float.class, infinite), infinite);
+        }
+    }
+
+    @Test
+    void randomDecimalsMatchJdkParsers() throws Exception {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 20_000; i++) {
+            //Short mantissas and small exponents take the fast path, others fall back to the JDK parsers
+            StringBuilder sb = new StringBuilder();
+            if (random.nextBoolean()) {
+                sb.append('-');
+            }
+            int digits = 1 + random.nextInt(random.nextBoolean() ? 16 : 25);
+            for (int d = 0; d < digits; d++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                sb.insert(sb.length() - random.nextInt(digits), '.');
+            }
+            if (random.nextBoolean()) {
+                sb.append(random.nextBoolean() ? 'e' : 'E').append(random.nextInt(-330, 330));
+            }
+            String literal = sb.toString();
+            if (literal.startsWith(".") || literal.startsWith("-.")) {
+                continue;
+            }
+            double d = Double.parseDouble(literal);
+            if (Double.isFinite(d)) {
+                assertEquals(d, read(Double.class, literal), literal);
+            }
+            float f = Float.parseFloat(literal);
+            if (Float.isFinite(f)) {
+                assertEquals(f, read(Float.class, literal), literal);
+            }
+        }
+    }
+
+    @Test
+    void readsBooleans() throws Exception {
+        assertEquals(true, read(Boolean.class, "true"));
+        assertEquals(false, read(Boolean.class, "false"));
+        assertThrows(FieldException.class, () -> read(Boolean.class, "null"));
+    }
+
+    @Test
+    void keepsLiteralsOfStringFields() throws Exception {
+        //Numbers are not reformatted, when the template expects a string
+        for (String literal : new String[]{"-0", "1e0010", "12345678901234567890123", "1.50", "true"}) {
+            assertEquals(literal, read(String.class, literal));
+        }
+    }
+
+    @Test
+    void acceptsFiniteFloats() throws Exception {
+        assertTrue(UMap.isSupportedObject(1.5f));
+        assertTrue(UMap.isSupportedObject(Float.MAX_VALUE));
+        assertFalse(UMap.isSupportedObject(Float.NaN));
+        assertFalse(UMap.isSupportedObject(Float.NEGATIVE_INFINITY));
+        MapTemplate t = new MapTemplate.Builder().addRequired("v", Float.class).build();
+        assertEquals(0.25f, (float) new UMap.Builder(t).set("v", 0.25f).build().<Float>getRequired("v"));
+    }
+
+    /**
+     * Reads the literal as the value of a field of the given type, through both tokenizers.
+     */
+    private static Object read(Class<?> type, String literal) throws FormatException {
+        MapTemplate t = new MapTemplate.Builder().addRequired("v", type).build();
+        String json = "{\"v\":" + literal + "}";
+        Object utf8 = t.readFormat(json.getBytes(StandardCharsets.UTF_8), new JSONFormat(), null).getRequired("v");
+        Object chars = t.readFormat(json.getBytes(StandardCharsets.UTF_16), new JSONFormat(),
+                new FormatReader.Options("UTF-16", false)).getRequired("v");
+        assertEquals(utf8, chars, literal);
+        assertEquals(type, utf8.getClass(), literal);
+        return utf8;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UArray;
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.UncheckedFormatException;
+import com.fivesoft.umap.template.ArrayTemplate;
+import com.fivesoft.umap.template.MapTemplate;
+import com.fivesoft.umap.template.PrimitiveTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RootArrayTest {
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .build();
+
+    private static final ArrayTemplate MAPS = new ArrayTemplate(TEMPLATE);
+
+    @Test
+    void readsEmptyArrays() throws Exception {
+        for (String input : new String[]{"[]", " [ ] ", "\n[\n]\n\t"}) {
+            assertEquals(0, MAPS.readFormat(stream(input), new JSONFormat(), null).size());
+            assertFalse(MAPS.iterateFormat(stream(input), new JSONFormat(), null).hasNext());
+        }
+    }
+
+    @Test
+    void readsEntriesFollowedByWhitespace() throws Exception {
+        String input = " [{\"id\":1} ,\n{\"id\":2}]\n \t";
+        UArray array = MAPS.readFormat(stream(input), new JSONFormat(), null);
+        assertEquals(2, array.size());
+        assertEquals(List.of(1L, 2L), entries(MAPS, input).stream()
+                .map(m -> ((UMap) m).<Long>getRequired("id"))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void readsPrimitiveAndNestedEntries() {
+        assertEquals(List.of(1L, 2L, 3L), entries(new ArrayTemplate(new PrimitiveTemplate(Long.class, null)), "[1, 2 ,3]"));
+        assertEquals(List.of("a", "b]", "[\"c"),
+                entries(new ArrayTemplate(new PrimitiveTemplate(String.class, null)), "[\"a\",\"b]\",\"[\\\"c\"]"));
+        List<Object> nested = entries(new ArrayTemplate(new ArrayTemplate(new PrimitiveTemplate(Long.class, null))),
+                "[[1],[2,3],[]]");
+        assertEquals(3, nested.size());
+        assertEquals(2, ((UArray) nested.get(1)).size());
+        assertEquals(0, ((UArray) nested.get(2)).size());
+    }
+
+    @Test
+    void rejectsInputWithoutRootArray() {
+        for (String input : new String[]{"", "  \n", "{\"id\":1}"}) {
+            FormatException e = assertThrows(FormatException.class,
+                    () -> MAPS.readFormat(stream(input), new JSONFormat(), null));
+            assertEquals("Missing root array bracket.", e.getMessage());
+            UncheckedFormatException u = assertThrows(UncheckedFormatException.class, () -> entries(MAPS, input));
+            assertEquals("Missing root array bracket.", u.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void errorsAreThrownByTheIterator() {
+        Iterator<Object> it = MAPS.iterateFormat(stream("[{\"id\":1},"), new JSONFormat(), null);
+        assertEquals(1L, (long) ((UMap) it.next()).<Long>getRequired("id"));
+        assertThrows(UncheckedFormatException.class, it::next);
+        assertThrows(FieldException.class, () -> entries(MAPS, "[{\"id\":1},{\"id\":\"x\"}]"));
+    }
+
+    private static List<Object> entries(ArrayTemplate template, String input) {
+        return template.readEntries(stream(input), new JSONFormat(), null).collect(Collectors.toList());
+    }
+
+    private static InputStream stream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
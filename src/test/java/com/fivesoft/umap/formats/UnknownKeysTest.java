@@ -0,0 +1,146 @@
+package com.fivesoft.umap.formats;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.exception.FieldException;
+import com.fivesoft.umap.format.BytesInputStream;
+import com.fivesoft.umap.format.FormatException;
+import com.fivesoft.umap.format.FormatReader;
+import com.fivesoft.umap.format.ReaderContext;
+import com.fivesoft.umap.template.MapTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Values of keys missing from the template are skipped without being parsed.
+ */
+class UnknownKeysTest {
+
+    private static final MapTemplate INNER = new MapTemplate.Builder()
+            .addRequired("v", Long.class)
+            .build();
+
+    private static final MapTemplate TEMPLATE = new MapTemplate.Builder()
+            .addRequired("id", Long.class)
+            .addRequired("inner", INNER)
+            .addOptional("name", String.class)
+            .build();
+
+    private interface Path {
+        UMap read(String json, boolean ignoreUnknownKeys) throws IOException, FormatException;
+    }
+
+    private static Map<String, Path> paths() {
+        Map<String, Path> paths = new LinkedHashMap<>();
+        JSONFormat format = new JSONFormat();
+        paths.put("bytes", (json, ignore) -> TEMPLATE.readFormat(utf8(json), format, new FormatReader.Options(ignore)));
+        //Reads at most 3 bytes at a time, so skipped values cross the buffer boundary
+        paths.put("stream", (json, ignore) -> TEMPLATE.readFormat(slowStream(utf8(json)), format,
+                new FormatReader.Options(ignore)));
+        paths.put("indexed", (json, ignore) -> TEMPLATE.readFormat(new BytesInputStream(utf8(json)), format,
+                new JSONFormat.ReaderOptions(ignore, true)));
+        paths.put("utf-16", (json, ignore) -> TEMPLATE.readFormat(json.getBytes(StandardCharsets.UTF_16), format,
+                new FormatReader.Options("UTF-16", ignore)));
+        return paths;
+    }
+
+    @Test
+    void unknownKeysFailByDefault() {
+        String json = "{\"id\":1,\"extra\":2,\"inner\":{\"v\":3}}";
+        for (Map.Entry<String, Path> e : paths().entrySet()) {
+            FieldException ex = assertThrows(FieldException.class, () -> e.getValue().read(json, false), e.getKey());
+            assertEquals(FieldException.Reason.UNKNOWN_KEY, ex.reason, e.getKey());
+        }
+        //Keys of nested maps are checked as well
+        String nested = "{\"id\":1,\"inner\":{\"v\":3,\"extra\":4}}";
+        for (Map.Entry<String, Path> e : paths().entrySet()) {
+            FieldException ex = assertThrows(FieldException.class, () -> e.getValue().read(nested, false), e.getKey());
+            assertEquals(FieldException.Reason.UNKNOWN_KEY, ex.reason, e.getKey());
+        }
+    }
+
+    @Test
+    void skipsNestedValuesWithBracketsInStrings() throws Exception {
+        String[] unknown = {
+                "1",
+                "-2.5e3",
+                "true",
+                "null",
+                "\"plain\"",
+                "\"}]{[,:\"",
+                "\"\\\"}\\\\\"",
+                "\"\\\\\"",
+                "\"\\u007d\\\"]\"",
+                "{}",
+                "[]",
+                "{\"a\":{\"b\":[1,{\"c\":\"}\"}],\"d\":\"]\\\"[\"},\"e\":[[[]]]}",
+                "[\"]\",\"[\",{\"}\":\"{\"},[\"\\\\\",\"\\\"]\"]]",
+                " { \"a\" : [ 1 , \"x\" ] } ",
+        };
+        for (String value : unknown) {
+            //Unknown keys before, between and after the known ones
+            String[] documents = {
+                    "{\"x\":" + value + ",\"id\":1,\"inner\":{\"v\":2},\"name\":\"n\"}",
+                    "{\"id\":1,\"x\":" + value + ",\"inner\":{\"y\":" + value + ",\"v\":2},\"name\":\"n\"}",
+                    "{\"id\":1,\"inner\":{\"v\":2,\"y\":" + value + "},\"name\":\"n\",\"x\":" + value + "}",
+                    "{\"id\":1,\"inner\":{\"v\":2},\"x\":" + value + ",\"y\":" + value + "}",
+            };
+            for (String json : documents) {
+                for (Map.Entry<String, Path> e : paths().entrySet()) {
+                    UMap m = e.getValue().read(json, true);
+                    assertEquals(1L, (long) m.<Long>getRequired("id"), e.getKey() + " " + json);
+                    assertEquals(2L, (long) m.<UMap>getRequired("inner").<Long>getRequired("v"), e.getKey() + " " + json);
+                    if (json.contains("\"name\"")) {
+                        assertEquals("n", m.getOptional("name"), e.getKey() + " " + json);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void malformedSkippedValuesFail() {
+        String[] documents = {
+                "{\"id\":1,\"x\":{\"a\":1",
+                "{\"id\":1,\"x\":[1,2",
+                "{\"id\":1,\"x\":\"unterminated",
+                "{\"id\":1,\"x\":\"\\\"",
+        };
+        for (String json : documents) {
+            for (Map.Entry<String, Path> e : paths().entrySet()) {
+                assertThrows(FormatException.class, () -> e.getValue().read(json, true), e.getKey() + " " + json);
+            }
+        }
+    }
+
+    @Test
+    void binaryFormatHasNoUnknownKeys() throws Exception {
+        //Keys are not stored, so the reader is never asked to skip a key missing from the template
+        InputStream in = new ByteArrayInputStream(new byte[16]);
+        FormatReader reader = new BinaryFormat().createReader(in);
+        FormatReader.Options options = new FormatReader.Options(true);
+        assertThrows(FormatException.class, () -> reader.skipValue(in, new ReaderContext(options), null));
+    }
+
+    private static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InputStream slowStream(byte[] data) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.fivesoft.umap.template;
+
+import com.fivesoft.umap.data.UMap;
+import com.fivesoft.umap.format.Format;
+import com.fivesoft.umap.format.FormatWriter;
+import com.fivesoft.umap.formats.JSONFormat;
+import com.fivesoft.umap.formats.XMLFormat;
+import com.fivesoft.umap.formats.YAMLFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyEncodingTest {
+
+    @Test
+    void keysAreEncodedOncePerEncoding() {
+        AtomicInteger calls = new AtomicInteger();
+        KeyEncoding<String> quoted = new KeyEncoding<>(k -> {
+            calls.incrementAndGet();
+            return '"' + k + '"';
+        });
+        KeyEncoding<String> upper = new KeyEncoding<>(String::toUpperCase);
+        Mapping m = new MapTemplate.Builder().addRequired("key", String.class).build().get("key");
+        String encoded = m.getEncodedKey(quoted);
+        assertEquals("\"key\"", encoded);
+        assertSame(encoded, m.getEncodedKey(quoted));
+        //Every encoding has its own slot
+        assertEquals("KEY", m.getEncodedKey(upper));
+        assertSame(encoded, m.getEncodedKey(quoted));
+        assertEquals(1, calls.get());
+        //Encoding without a mapping is not cached
+        quoted.encode("key");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void writersSharingTemplateUseTheirOwnKeys() throws Exception {
+        MapTemplate template = template();
+        UMap map = map(template);
+        //Output of a template, which didn't cache any keys yet
+        List<String> expected = new ArrayList<>();
+        for (Writing w : writings()) {
+            expected.add(w.write(map(template())));
+        }
+        for (int round = 0; round < 3; round++) {
+            List<Writing> writings = writings();
+            for (int i = 0; i < writings.size(); i++) {
+                assertEquals(expected.get(i), writings.get(i).write(map), writings.get(i).toString());
+            }
+        }
+        assertEquals("{\"id\":1,\"inner\":{\"name\":\"x\"},\"name\":\"n\"}", writings().get(0).write(map));
+        assertTrue(writings().get(2).write(map).contains("\"inner\": {"));
+    }
+
+    @Test
+    void writersSharingTemplateConcurrently() throws Exception {
+        MapTemplate template = template();
+        UMap map = map(template);
+        List<String> expected = new ArrayList<>();
+        for (Writing w : writings()) {
+            expected.add(w.write(map(template())));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    List<Writing> writings = writings();
+                    for (int i = 0; i < 200; i++) {
+                        int w = (i + offset) % writings.size();
+                        assertEquals(expected.get(w), writings.get(w).write(map));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface Writing {
+        String write(UMap map) throws Exception;
+    }
+
+    /**
+     * Writings of every key encoding of the text formats.
+     */
+    private static List<Writing> writings() {
+        List<Writing> writings = new ArrayList<>();
+        for (boolean pretty : new boolean[]{false, true}) {
+            for (String encoding : new String[]{"UTF-8", "UTF-16"}) {
+                writings.add(format(new JSONFormat(), new FormatWriter.Options(encoding, pretty, 2)));
+            }
+        }
+        writings.add(format(new XMLFormat(), null));
+        writings.add(format(new YAMLFormat(), null));
+        return writings;
+    }
+
+    private static Writing format(Format format, FormatWriter.Options options) {
+        String encoding = options != null ? options.encoding : "UTF-8";
+        return new Writing() {
+            @Override
+            public String write(UMap map) throws Exception {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                map.format(out, options, format, 10);
+                return out.toString(encoding);
+            }
+
+            @Override
+            public String toString() {
+                return format.getName() + " " + encoding + (options != null && options.pretty ? " pretty" : "");
+            }
+        };
+    }
+
+    private static MapTemplate template() {
+        return new MapTemplate.Builder()
+                .addRequired("id", Long.class)
+                .addRequired("name", String.class)
+                .addRequired("inner", new MapTemplate.Builder().addRequired("name", String.class).build())
+                .build();
+    }
+
+    private static UMap map(MapTemplate template) {
+        MapTemplate inner = (MapTemplate) template.get("inner").getTemplate();
+        return new UMap.Builder(template)
+                .set("id", 1L)
+                .set("name", "n")
+                .set("inner", new UMap.Builder(inner).set("name", "x").build())
+                .build();
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.fivesoft.umap.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyMatcherTest {
+
+    @Test
+    void matchesEveryKey() {
+        List<String> names = new ArrayList<>();
+        MapTemplate.Builder b = new MapTemplate.Builder();
+        for (int i = 0; i < 300; i++) {
+            //Many keys are prefixes of other keys
+            String name = "k" + Integer.toString(i, 7);
+            names.add(name);
+            b.addRequired(name, Integer.class);
+        }
+        MapTemplate t = b.build();
+        KeyMatcher matcher = t.getKeyMatcher();
+        for (String name : names) {
+            assertSame(t.get(name), matchBytes(matcher, name), name);
+            assertSame(t.get(name), matchChars(matcher, name), name);
+        }
+    }
+
+    @Test
+    void doesNotMatchPrefixesOrExtensions() {
+        MapTemplate t = new MapTemplate.Builder()
+                .addRequired("ab", Integer.class)
+                .addRequired("abc", Integer.class)
+                .build();
+        KeyMatcher matcher = t.getKeyMatcher();
+        for (String name : new String[]{"", "a", "abd", "abcd", "ba", "AB"}) {
+            assertNull(matchBytes(matcher, name), name);
+            assertNull(matchChars(matcher, name), name);
+        }
+        assertSame(t.get("ab"), matchBytes(matcher, "ab"));
+        assertSame(t.get("abc"), matchChars(matcher, "abc"));
+    }
+
+    @Test
+    void doesNotMatchNonAsciiChars() {
+        MapTemplate t = new MapTemplate.Builder().addRequired("ab", Integer.class).build();
+        //Low bytes of the chars are equal to the key
+        assertNull(matchChars(t.getKeyMatcher(), "a\u0162"));
+        assertNull(matchChars(t.getKeyMatcher(), "\u0161b"));
+        assertNull(matchBytes(t.getKeyMatcher(), "a\u00e9"));
+    }
+
+    @Test
+    void emptyTemplateMatchesNothing() {
+        KeyMatcher matcher = new MapTemplate.Builder().build().getKeyMatcher();
+        assertNull(matchBytes(matcher, "a"));
+        assertNull(matchChars(matcher, ""));
+    }
+
+    /**
+     * Matches the key placed in the middle of a larger buffer.
+     */
+    private static Mapping matchBytes(KeyMatcher matcher, String key) {
+        byte[] bytes = ("{\"" + key + "\":").getBytes(StandardCharsets.UTF_8);
+        return matcher.match(bytes, 2, bytes.length - 4);
+    }
+
+    private static Mapping matchChars(KeyMatcher matcher, String key) {
+        char[] chars = ("{\"" + key + "\":").toCharArray();
+        return matcher.match(chars, 2, chars.length - 4);
+    }
+
+}